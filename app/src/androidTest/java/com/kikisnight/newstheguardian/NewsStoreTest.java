@@ -0,0 +1,113 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the local store of articles on a device, on a database kept in memory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsStoreTest {
+
+    /** Number of stored articles the searches have to stay fast with */
+    private static final int ARTICLES = 20000;
+
+    /** Slowest acceptable local search, in milliseconds */
+    private static final long MAX_SEARCH_MILLIS = 20;
+
+    private static final String[] WORDS = {"budget", "energy", "police", "shares", "football",
+            "review", "talks", "trade", "election", "climate", "market", "health", "school",
+            "transport", "housing", "music", "film", "science", "space", "weather"};
+
+    private static final String[] SECTIONS = {"Politics", "Technology", "Sport", "World",
+            "Business", "Culture"};
+
+    private NewsDbHelper dbHelper;
+    private NewsStore store;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        dbHelper = new NewsDbHelper(context, null);
+        store = new NewsStore(dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void searchMatchesEveryWordAsPrefix() throws Exception {
+        List<News> news = new ArrayList<>();
+        news.add(new News("Energy prices rise", "Business", 2000, "https://g.co/1", null));
+        news.add(new News("Police review", "Politics", 3000, "https://g.co/2",
+                "The energy regulator was asked"));
+        news.add(new News("Football results", "Sport", 1000, "https://g.co/3", null));
+        store.save(news);
+
+        List<News> found = store.search("ener", 10);
+        assertEquals(2, found.size());
+        // Newest first
+        assertEquals("https://g.co/2", found.get(0).getUrl());
+        assertEquals("https://g.co/1", found.get(1).getUrl());
+
+        assertEquals(1, store.search("energy police", 10).size());
+        assertEquals(1, store.search("sport", 10).size());
+        assertTrue(store.search("cricket", 10).isEmpty());
+        assertEquals(3, store.search(null, 10).size());
+    }
+
+    @Test
+    public void savingAgainUpdatesTheStoredArticle() throws Exception {
+        List<News> news = new ArrayList<>();
+        news.add(new News("Old title", "World", 1000, "https://g.co/1", "Trail"));
+        store.save(news);
+
+        news.set(0, new News("New title", "World", 1000, "https://g.co/1", null));
+        store.save(news);
+
+        assertTrue(store.search("old", 10).isEmpty());
+        List<News> found = store.search("new", 10);
+        assertEquals(1, found.size());
+        // A missing trail text keeps the stored one
+        assertEquals("Trail", found.get(0).getTrailText());
+    }
+
+    @Test
+    public void searchStaysFastWithManyArticles() throws Exception {
+        List<News> news = new ArrayList<>(ARTICLES);
+        for (int i = 0; i < ARTICLES; i++) {
+            String title = WORDS[i % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length] + " "
+                    + WORDS[(i / 13) % WORDS.length] + " " + i;
+            news.add(new News(title, SECTIONS[i % SECTIONS.length], 1000L * i,
+                    "https://www.theguardian.com/article/" + i, "Trail text " + title));
+        }
+        store.save(news);
+
+        String[] keywords = {"budget", "foot", "energy police", "sci", "weather market"};
+        // Warm up the statements and the page cache
+        for (String keyword : keywords) {
+            store.search(keyword, 20);
+        }
+        for (String keyword : keywords) {
+            long start = System.nanoTime();
+            List<News> found = store.search(keyword, 20);
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            assertFalse(keyword, found.isEmpty());
+            assertTrue(keyword + " took " + elapsedMillis + " ms",
+                    elapsedMillis < MAX_SEARCH_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.kikisnight.newstheguardian;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Helper methods for the bodies of the articles shown by the {@link ReaderActivity}: they are
+ * stripped of what a {@link android.widget.TextView} cannot show and stored compressed.
+ */
+public final class ArticleBodies {
+
+    /** Elements of the body that are only media, embeds or scripts, removed with their content */
+    private static final Pattern MEDIA_ELEMENTS = Pattern.compile(
+            "<(figure|aside|iframe|script|video|audio)\\b.*?</\\1\\s*>|<img\\b[^>]*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /** Charset of the stored bodies */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ArticleBodies}
+     * object.
+     */
+    private ArticleBodies() {
+    }
+
+    /**
+     * Returns the id of the article in The Guardian API, which is the path of its URL, or null
+     * if it is not a The Guardian article.
+     */
+    static String articleId(String url) {
+        String compactUrl = News.compactUrl(url);
+        if (compactUrl == null || compactUrl.contains("://")) {
+            return null;
+        }
+        return compactUrl;
+    }
+
+    /**
+     * Returns the HTML body without the images, embeds and scripts, which would only show as
+     * placeholders in the reader.
+     */
+    static String clean(String html) {
+        return MEDIA_ELEMENTS.matcher(html).replaceAll("").trim();
+    }
+
+    /**
+     * Returns the body compressed with deflate. Text bodies shrink to about a third.
+     */
+    static byte[] compress(String body) {
+        byte[] input = body.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 3 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the body compressed by {@link #compress(String)}, or null if it is corrupted.
+     */
+    static String decompress(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished()
+                        && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Truncated data
+                    return null;
+                }
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ArticleBodyFetcher} fetches the bodies of the articles into the {@link NewsStore}, so
+ * the {@link ReaderActivity} opens them at once and without any connectivity. The bodies of the
+ * first articles of the feed are prefetched in the background, in a single request.
+ */
+public final class ArticleBodyFetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ArticleBodyFetcher.class.getName();
+
+    /** URLs of the bodies being prefetched, so they are not requested twice at once */
+    private static final Set<String> sPrefetching = new HashSet<>();
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link ArticleBodyFetcher} object.
+     */
+    private ArticleBodyFetcher() {
+    }
+
+    /**
+     * Fetches in the background the bodies of the first articles of the list that are not
+     * stored yet.
+     *
+     * @param context of the app
+     * @param news is the feed, the first articles are the ones most likely to be read
+     */
+    public static void prefetch(Context context, List<News> news) {
+        // On a slow network the bodies would hold up the feed and its thumbnails
+        if (NetworkQualityEstimator.getInstance().getQuality()
+                == NetworkQualityEstimator.Quality.SLOW) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final List<String> urls = firstUrls(news,
+                appContext.getResources().getInteger(R.integer.reader_prefetch_articles));
+        if (urls.isEmpty()) {
+            return;
+        }
+        // The reader is not open yet, the loads of the feed go first
+        NewsExecutor.getInstance().submit(NewsExecutor.Priority.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                prefetchNow(appContext, urls, null);
+            }
+        });
+    }
+
+    /**
+     * Fetches the bodies of the articles with the URLs that are not stored yet.
+     * This must be called on a background thread.
+     *
+     * @return false if the bodies could not be fetched or stored
+     */
+    static boolean prefetchNow(Context context, List<String> urls,
+                               CancellationToken cancellation) {
+        NewsStore store = NewsStore.getInstance(context);
+        List<String> missing = new ArrayList<>();
+        try {
+            Set<String> stored = store.getUrlsWithBody(urls);
+            synchronized (sPrefetching) {
+                for (String url : urls) {
+                    if (!stored.contains(url) && sPrefetching.add(url)) {
+                        missing.add(url);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem reading the stored bodies.", e);
+            return false;
+        }
+        if (missing.isEmpty()) {
+            return true;
+        }
+
+        try {
+            Map<String, String> bodies = fetch(missing, cancellation);
+            if (bodies == null) {
+                return false;
+            }
+            store.saveBodies(bodies);
+            return true;
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem storing the bodies.", e);
+            return false;
+        } finally {
+            synchronized (sPrefetching) {
+                sPrefetching.removeAll(missing);
+            }
+        }
+    }
+
+    /**
+     * Returns the body of the article with the URL from the store, or fetches and stores it,
+     * or returns null if it is not available.
+     * This must be called on a background thread.
+     */
+    public static String getBody(Context context, String url, boolean connected,
+                                 CancellationToken cancellation) {
+        NewsStore store = NewsStore.getInstance(context);
+        try {
+            String body = store.getBody(url);
+            if (body != null || !connected) {
+                return body;
+            }
+            Map<String, String> bodies = fetch(Collections.singletonList(url), cancellation);
+            if (bodies == null) {
+                return null;
+            }
+            store.saveBodies(bodies);
+            return bodies.get(url);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem reading the body of " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * Requests the bodies of the The Guardian articles with the URLs, the other ones are left
+     * out. Returns them by URL, or null if the request failed.
+     */
+    private static Map<String, String> fetch(List<String> urls,
+                                             CancellationToken cancellation) {
+        List<String> articleIds = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            String articleId = ArticleBodies.articleId(url);
+            if (articleId != null) {
+                articleIds.add(articleId);
+            }
+        }
+        if (articleIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return QueryUtils.fetchArticleBodies(NewsRequestUrls.buildBodies(articleIds),
+                cancellation);
+    }
+
+    /**
+     * Returns the URLs of the first articles of the list, at most count of them.
+     */
+    static List<String> firstUrls(List<News> news, int count) {
+        List<String> urls = new ArrayList<>(Math.min(count, news.size()));
+        for (int i = 0; i < news.size() && urls.size() < count; i++) {
+            String url = news.get(i).getUrl();
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,67 @@
+package com.kikisnight.newstheguardian;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CancellationToken} cancels every request of a load at once. Unlike
+ * {@link android.os.CancellationSignal}, which holds a single listener, it aborts any number of
+ * requests running at the same time, such as the queries of several sections.
+ */
+public final class CancellationToken {
+
+    private final List<Runnable> abortActions = new ArrayList<>();
+    private boolean canceled;
+
+    /**
+     * Marks the token as canceled and aborts the requests running with it. This may block
+     * while the connections are closed, so it should not be called on the main thread.
+     */
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (canceled) {
+                return;
+            }
+            canceled = true;
+            actions = new ArrayList<>(abortActions);
+            abortActions.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Throws an {@link InterruptedIOException} if the token was canceled, so the request
+     * fails like any other interrupted one.
+     */
+    public void throwIfCanceled() throws InterruptedIOException {
+        if (isCanceled()) {
+            throw new InterruptedIOException("Canceled");
+        }
+    }
+
+    /**
+     * Runs the action when the token is canceled, until it is removed. The action runs at
+     * once if the token is already canceled.
+     */
+    void addAbortAction(Runnable action) {
+        synchronized (this) {
+            if (!canceled) {
+                abortActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    synchronized void removeAbortAction(Runnable action) {
+        abortActions.remove(action);
+    }
+}
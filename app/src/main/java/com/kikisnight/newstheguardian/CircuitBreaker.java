@@ -0,0 +1,103 @@
+package com.kikisnight.newstheguardian;
+
+/**
+ * {@link CircuitBreaker} stops sending requests to a server that keeps failing. After a number
+ * of failures in a row it opens, and every request fails at once without reaching the network,
+ * so the callers serve what they cached. Once the open time has passed a single request probes
+ * the server: the circuit closes if it succeeds and opens again otherwise.
+ *
+ * <p>Times are given as returned by {@link System#nanoTime()}.
+ */
+final class CircuitBreaker {
+
+    /**
+     * State of the circuit.
+     */
+    enum State {
+        /** Requests go through */
+        CLOSED,
+        /** Requests fail at once */
+        OPEN,
+        /** A single request probes the server */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean probeInFlight;
+
+    /**
+     * Constructs a new {@link CircuitBreaker}.
+     *
+     * @param failureThreshold is the number of failures in a row opening the circuit
+     * @param openNanos is the time the circuit stays open before a request probes the server
+     */
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Returns true if a request can be sent. In the half-open state only the first caller is
+     * allowed, and must then report {@link #onSuccess()}, {@link #onFailure(long, long)} or
+     * {@link #onAbandoned()}.
+     */
+    synchronized boolean allowRequest(long now) {
+        if (state == State.OPEN && now - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reports a request the server answered, which closes the circuit.
+     */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * Reports a request the server failed, after its retries.
+     *
+     * @param now is the current time
+     * @param retryAfterNanos is the time the server asked to wait, or 0, the circuit opens at
+     *  once for at least that long
+     */
+    synchronized void onFailure(long now, long retryAfterNanos) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold
+                || retryAfterNanos > 0) {
+            state = State.OPEN;
+            openUntilNanos = now + Math.max(openNanos, retryAfterNanos);
+        }
+        probeInFlight = false;
+    }
+
+    /**
+     * Reports a request that was canceled, which tells nothing of the server.
+     */
+    synchronized void onAbandoned() {
+        probeInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
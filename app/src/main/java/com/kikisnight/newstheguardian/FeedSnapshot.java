@@ -0,0 +1,239 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link FeedSnapshot} saves the head of the feed last shown in a small binary file, so the
+ * next cold start shows it before its first frame instead of waiting for the store or the
+ * network. The file starts with a magic number and a format version, then the names of the
+ * sections, then the compact fields of every article. It is read by mapping it in memory,
+ * and a snapshot of another version, of another query or too old is ignored.
+ */
+public final class FeedSnapshot {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = FeedSnapshot.class.getName();
+
+    /** Name of the snapshot file inside the app files directory */
+    private static final String FILE_NAME = "feed.snapshot";
+
+    /** First bytes of every snapshot, "NTGS" */
+    static final int MAGIC = 0x4E544753;
+
+    /** Version of the binary format, snapshots written with another version are ignored */
+    static final int FORMAT_VERSION = 1;
+
+    /** Length written in place of a null string, and index of a missing section */
+    private static final int NULL_LENGTH = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link FeedSnapshot}
+     * object.
+     */
+    private FeedSnapshot() {
+    }
+
+    /**
+     * Returns the file of the snapshot of the app.
+     */
+    public static File fileOf(Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Writes the news as the snapshot of the query, replacing the previous one only once the
+     * new one is complete. Returns false if it could not be written.
+     *
+     * @param file is where the snapshot is written
+     * @param query identifies the feed of the news, the snapshot is only read for it
+     * @param savedAt is the time in milliseconds (from the Epoch) of the snapshot
+     * @param news are the news to write, in the order they are shown
+     */
+    public static boolean write(File file, String query, long savedAt, List<News> news) {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create the snapshot directory " + directory);
+            return false;
+        }
+
+        // Every section name is written once, the articles refer to it by its index
+        Map<Integer, Integer> sectionIndexes = new HashMap<>();
+        List<String> sectionNames = new ArrayList<>();
+        int[] articleSectionIndexes = new int[news.size()];
+        for (int i = 0; i < news.size(); i++) {
+            int sectionId = news.get(i).getSectionId();
+            Integer sectionIndex = sectionIndexes.get(sectionId);
+            if (sectionIndex == null) {
+                String name = NewsSections.nameOf(sectionId);
+                sectionIndex = name == null ? NULL_LENGTH : sectionNames.size();
+                if (name != null) {
+                    sectionNames.add(name);
+                }
+                sectionIndexes.put(sectionId, sectionIndex);
+            }
+            articleSectionIndexes[i] = sectionIndex;
+        }
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(savedAt);
+            writeString(output, query);
+            output.writeInt(sectionNames.size());
+            for (String name : sectionNames) {
+                writeString(output, name);
+            }
+            output.writeInt(news.size());
+            for (int i = 0; i < news.size(); i++) {
+                News item = news.get(i);
+                writeString(output, item.getTitle());
+                output.writeInt(articleSectionIndexes[i]);
+                output.writeLong(item.getPublicationTime());
+                writeString(output, item.getCompactUrl());
+                writeString(output, item.getTrailText());
+                writeString(output, item.getCompactThumbnailUrl());
+            }
+            output.close();
+            output = null;
+
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the feed snapshot.", e);
+            temporaryFile.delete();
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // Nothing else to do, the snapshot is left out
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the news of the snapshot of the query, or null if there is none, it was saved
+     * more than maxAgeMillis before now, or it can not be read. A damaged snapshot is deleted.
+     *
+     * @param file is where the snapshot was written
+     * @param query identifies the feed wanted, as given to {@link #write}
+     * @param now is the current time in milliseconds (from the Epoch)
+     * @param maxAgeMillis is the age over which the snapshot is too old to be shown
+     */
+    public static NewsList read(File file, String query, long now, long maxAgeMillis) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            long savedAt = buffer.getLong();
+            if (now - savedAt > maxAgeMillis || !query.equals(readString(buffer))) {
+                return null;
+            }
+
+            // The section ids are only valid in the process that gave them
+            int sectionCount = readCount(buffer);
+            int[] sectionIds = new int[sectionCount];
+            for (int i = 0; i < sectionCount; i++) {
+                sectionIds[i] = NewsSections.idOf(readString(buffer));
+            }
+
+            int count = readCount(buffer);
+            NewsList news = new NewsList(Math.max(count, 1));
+            for (int i = 0; i < count; i++) {
+                String title = readString(buffer);
+                int sectionIndex = buffer.getInt();
+                if (sectionIndex < NULL_LENGTH || sectionIndex >= sectionCount) {
+                    throw new IOException("Invalid section " + sectionIndex);
+                }
+                int sectionId = sectionIndex == NULL_LENGTH
+                        ? NewsSections.NO_SECTION : sectionIds[sectionIndex];
+                long time = buffer.getLong();
+                news.add(new News(title, sectionId, time, readString(buffer),
+                        readString(buffer), readString(buffer)));
+            }
+            return news;
+        } catch (IOException | BufferUnderflowException e) {
+            Log.e(LOG_TAG, "Problem reading the feed snapshot.", e);
+            file.delete();
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // The snapshot was read, closing it does not change that
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads a number of items, each taking at least four bytes of what is left.
+     */
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+}
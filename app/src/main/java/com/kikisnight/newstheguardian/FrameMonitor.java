@@ -0,0 +1,326 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.Choreographer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameMonitor} measures the time between the frames drawn while the feed scrolls.
+ * The main thread work of the feed is added to the frame it delays, so a slow frame is blamed
+ * on binding rows, laying them out or delivering news from the loader, whichever took the
+ * longest. Every scroll ends with a report of its frame time percentiles, shown in the
+ * overlay of the feed, logged and appended to a log file.
+ *
+ * <p>This is used on the main thread only.
+ */
+public final class FrameMonitor implements Choreographer.FrameCallback {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = FrameMonitor.class.getName();
+
+    /** Name of the log file of the scroll reports inside the app files directory */
+    private static final String LOG_FILE_NAME = "frames.log";
+
+    /** Size over which the log file is started again, so it never fills the storage */
+    static final long MAX_LOG_BYTES = 256 * 1024;
+
+    /** Time of a frame at 60 frames per second */
+    static final long FRAME_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    /** A frame this long missed at least one vsync, the user sees the scroll stutter */
+    static final long SLOW_FRAME_NANOS = FRAME_BUDGET_NANOS * 3 / 2;
+
+    /** A frame this long freezes the screen */
+    static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+
+    /** A phase taking less of a slow frame is not blamed for it */
+    static final long MIN_BLAMED_NANOS = FRAME_BUDGET_NANOS / 4;
+
+    /** Number of the last frames whose times are kept for the percentiles */
+    static final int HISTORY_FRAMES = 1024;
+
+    /**
+     * What a slow frame is blamed on.
+     */
+    public enum Phase {
+        /** Binding the rows of the feed */
+        BIND(Metrics.FRAME_SLOW_BIND),
+        /** Laying out and scrolling the rows, without binding them */
+        LAYOUT(Metrics.FRAME_SLOW_LAYOUT),
+        /** Adding the news delivered by the loader to the feed */
+        DELIVERY(Metrics.FRAME_SLOW_DELIVERY),
+        /** Anything else, drawing, garbage collection or another thread taking the CPU */
+        OTHER(Metrics.FRAME_SLOW_OTHER);
+
+        final Metrics.Counter slowFrames;
+
+        Phase(Metrics.Counter slowFrames) {
+            this.slowFrames = slowFrames;
+        }
+    }
+
+    private static FrameMonitor sInstance;
+
+    /** Where the scroll reports are appended, or null to only log them */
+    private final File logFile;
+
+    /** Times of the last frames, the frame n being at n % HISTORY_FRAMES */
+    private final long[] frameNanos = new long[HISTORY_FRAMES];
+    private long frameCount;
+
+    /** Main thread work of each phase since the last frame */
+    private final long[] workNanos = new long[Phase.values().length];
+
+    /** Frames of the current or last scroll, and how many of them were slow by phase */
+    private int scrollFrames;
+    private final int[] scrollSlowFrames = new int[Phase.values().length];
+    private int scrollFrozenFrames;
+
+    /** True from the start of a scroll to its end */
+    private boolean running;
+
+    /** Time of the last frame of the scroll, 0 before its first one */
+    private long lastFrameTimeNanos;
+
+    /** True while the overlay of the feed shows the reports */
+    private boolean overlayShown;
+
+    /**
+     * Returns the monitor shared by the whole app.
+     */
+    public static synchronized FrameMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FrameMonitor(logFileOf(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the log file of the scroll reports of the app.
+     */
+    public static File logFileOf(Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), LOG_FILE_NAME);
+    }
+
+    /**
+     * Constructs a new {@link FrameMonitor}.
+     *
+     * @param logFile is where the scroll reports are appended, or null
+     */
+    FrameMonitor(File logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Starts measuring the frames of a scroll, if not measuring already.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        startScroll();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stops measuring the frames at the end of a scroll and reports them. Returns the report,
+     * or null if no scroll was being measured.
+     */
+    public String stop() {
+        if (!running) {
+            return null;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        return endScroll();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        if (lastFrameTimeNanos != 0) {
+            recordFrame(frameTimeNanos - lastFrameTimeNanos);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Adds main thread work of the phase to the next frame, which it delays. Only counted
+     * while a scroll is measured, so it can be called whenever the work is done.
+     */
+    public void addWork(Phase phase, long nanos) {
+        if (running) {
+            workNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    public boolean isOverlayShown() {
+        return overlayShown;
+    }
+
+    public void setOverlayShown(boolean overlayShown) {
+        this.overlayShown = overlayShown;
+    }
+
+    /**
+     * Starts a scroll without waiting for the frames of the {@link Choreographer}.
+     */
+    void startScroll() {
+        running = true;
+        lastFrameTimeNanos = 0;
+        scrollFrames = 0;
+        Arrays.fill(scrollSlowFrames, 0);
+        scrollFrozenFrames = 0;
+        Arrays.fill(workNanos, 0);
+    }
+
+    /**
+     * Ends the scroll, then logs its report and appends it to the log file in the background.
+     * Returns the report.
+     */
+    String endScroll() {
+        running = false;
+        final String report = toString();
+        if (scrollFrames > 0) {
+            Log.i(LOG_TAG, report);
+            if (logFile != null) {
+                final String line = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
+                        .format(new Date()) + " " + report + "\n";
+                NewsExecutor.getInstance().submit(NewsExecutor.Priority.BACKGROUND,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                appendToLog(logFile, line);
+                            }
+                        });
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Records the time of a frame, blaming it on the phase that did the most work since the
+     * previous frame if it is slow.
+     */
+    void recordFrame(long nanos) {
+        frameNanos[(int) (frameCount++ % HISTORY_FRAMES)] = nanos;
+        scrollFrames++;
+        Metrics.FRAME_NANOS.record(nanos);
+
+        if (nanos > SLOW_FRAME_NANOS) {
+            Phase phase = blame();
+            scrollSlowFrames[phase.ordinal()]++;
+            phase.slowFrames.increment();
+            if (nanos > FROZEN_FRAME_NANOS) {
+                scrollFrozenFrames++;
+                Metrics.FRAME_FROZEN.increment();
+            }
+        }
+        Arrays.fill(workNanos, 0);
+    }
+
+    /**
+     * Returns the phase that did the most work since the previous frame, or
+     * {@link Phase#OTHER} if none took long enough to make the frame slow.
+     */
+    private Phase blame() {
+        // The rows bound while laying out are counted by both, the layout only keeps the rest
+        long bindNanos = workNanos[Phase.BIND.ordinal()];
+        long layoutNanos = Math.max(0, workNanos[Phase.LAYOUT.ordinal()] - bindNanos);
+        long deliveryNanos = workNanos[Phase.DELIVERY.ordinal()];
+
+        Phase blamed = Phase.OTHER;
+        long blamedNanos = MIN_BLAMED_NANOS - 1;
+        if (bindNanos > blamedNanos) {
+            blamed = Phase.BIND;
+            blamedNanos = bindNanos;
+        }
+        if (layoutNanos > blamedNanos) {
+            blamed = Phase.LAYOUT;
+            blamedNanos = layoutNanos;
+        }
+        if (deliveryNanos > blamedNanos) {
+            blamed = Phase.DELIVERY;
+        }
+        return blamed;
+    }
+
+    /**
+     * Returns the given percentile of the times of the frames of the current or last scroll,
+     * of its last {@link #HISTORY_FRAMES} frames for a longer one, or 0 without any frame.
+     *
+     * @param percentile between 0 and 100
+     */
+    long getPercentile(double percentile) {
+        int count = Math.min(scrollFrames, HISTORY_FRAMES);
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = frameNanos[(int) ((frameCount - 1 - i) % HISTORY_FRAMES)];
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(count * percentile / 100);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    int getSlowFrames(Phase phase) {
+        return scrollSlowFrames[phase.ordinal()];
+    }
+
+    /**
+     * Appends the line to the log file, started again once it is too big. Returns false if it
+     * could not be written.
+     */
+    static boolean appendToLog(File file, String line) {
+        boolean append = file.length() < MAX_LOG_BYTES;
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(file, append);
+            output.write(line.getBytes(Charset.forName("UTF-8")));
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the frames log.", e);
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the frames log.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the report of the current or last scroll.
+     */
+    @Override
+    public String toString() {
+        int slowFrames = 0;
+        for (int count : scrollSlowFrames) {
+            slowFrames += count;
+        }
+        return String.format(Locale.US, "frames=%d p50=%s p95=%s p99=%s slow=%d"
+                        + " (bind %d, layout %d, delivery %d, other %d) frozen=%d",
+                scrollFrames, Metrics.Unit.NANOS.format(getPercentile(50)),
+                Metrics.Unit.NANOS.format(getPercentile(95)),
+                Metrics.Unit.NANOS.format(getPercentile(99)), slowFrames,
+                getSlowFrames(Phase.BIND), getSlowFrames(Phase.LAYOUT),
+                getSlowFrames(Phase.DELIVERY), getSlowFrames(Phase.OTHER), scrollFrozenFrames);
+    }
+}
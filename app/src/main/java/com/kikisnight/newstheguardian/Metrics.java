@@ -0,0 +1,299 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link Metrics} holds the counters and the histograms of the hot paths of the app, for the
+ * whole process. Recording a value only takes a few atomic operations and never allocates,
+ * so it can stay on in release builds and be read from the debug screen or a dump file.
+ */
+public final class Metrics {
+
+    /** Time to open the connection of a request, host lookup, TCP and TLS included */
+    public static final Histogram HTTP_CONNECT_NANOS = histogram("http.connect", Unit.NANOS);
+    /** Time between sending a request and receiving the headers of its response */
+    public static final Histogram HTTP_TTFB_NANOS = histogram("http.ttfb", Unit.NANOS);
+    /** Time spent waiting for the bytes of a response body */
+    public static final Histogram HTTP_BODY_READ_NANOS = histogram("http.body_read", Unit.NANOS);
+    /** Bytes of a response body, before decompression */
+    public static final Histogram HTTP_BODY_BYTES = histogram("http.body_bytes", Unit.BYTES);
+    /** Requests answered with 304 Not Modified */
+    public static final Counter HTTP_NOT_MODIFIED = counter("http.not_modified");
+    /** Requests that failed or were canceled */
+    public static final Counter HTTP_FAILURES = counter("http.failures");
+    /** Attempts sent again after a transient failure */
+    public static final Counter HTTP_RETRIES = counter("http.retries");
+    /** Requests failed at once because their circuit was open */
+    public static final Counter HTTP_CIRCUIT_OPEN = counter("http.circuit_open");
+    /** Cached results served because the server failed */
+    public static final Counter HTTP_STALE_SERVED = counter("http.stale_served");
+    /** Queries answered together by a single batched request */
+    public static final Counter HTTP_BATCHED_QUERIES = counter("http.batched_queries");
+    /** Time a request waited for the rate limit of its host */
+    public static final Histogram HTTP_THROTTLE_NANOS = histogram("http.throttle", Unit.NANOS);
+
+    /** Time spent parsing a response, without the time waiting for its bytes */
+    public static final Histogram PARSE_NANOS = histogram("parse.time", Unit.NANOS);
+    /** Articles of a parsed response */
+    public static final Histogram PARSE_ARTICLES = histogram("parse.articles", Unit.COUNT);
+
+    /** Time between a load being requested and its first result being delivered */
+    public static final Histogram LOADER_FIRST_DELIVERY_NANOS =
+            histogram("loader.first_delivery", Unit.NANOS);
+    /** Time between a load being requested and its complete result being delivered */
+    public static final Histogram LOADER_DELIVERY_NANOS =
+            histogram("loader.delivery", Unit.NANOS);
+
+    /** Time to read the snapshot of the feed saved by the previous run */
+    public static final Histogram SNAPSHOT_READ_NANOS = histogram("snapshot.read", Unit.NANOS);
+    /** Time between the creation of the feed screen and its first news being shown */
+    public static final Histogram FIRST_CONTENT_NANOS =
+            histogram("startup.first_content", Unit.NANOS);
+
+    /** Articles hidden behind another article of the same story */
+    public static final Counter FEED_CLUSTERED_ARTICLES = counter("feed.clustered_articles");
+
+    /** Time to bind a row of the feed */
+    public static final Histogram BIND_NANOS = histogram("adapter.bind", Unit.NANOS);
+
+    /** Time between two frames drawn while the feed scrolls */
+    public static final Histogram FRAME_NANOS = histogram("frame.time", Unit.NANOS);
+    /** Slow frames of the feed mostly spent binding rows */
+    public static final Counter FRAME_SLOW_BIND = counter("frame.slow_bind");
+    /** Slow frames of the feed mostly spent laying out rows */
+    public static final Counter FRAME_SLOW_LAYOUT = counter("frame.slow_layout");
+    /** Slow frames of the feed mostly spent adding the news delivered by the loader */
+    public static final Counter FRAME_SLOW_DELIVERY = counter("frame.slow_delivery");
+    /** Slow frames of the feed spent on anything else */
+    public static final Counter FRAME_SLOW_OTHER = counter("frame.slow_other");
+    /** Frames of the feed long enough to freeze the screen */
+    public static final Counter FRAME_FROZEN = counter("frame.frozen");
+
+    /** Time between an article being opened in the reader and its body being shown */
+    public static final Histogram READER_OPEN_NANOS = histogram("reader.open", Unit.NANOS);
+
+    /** Time to decode a downsampled thumbnail */
+    public static final Histogram IMAGE_DECODE_NANOS = histogram("image.decode", Unit.NANOS);
+    /** Thumbnails shown from the memory cache */
+    public static final Counter IMAGE_MEMORY_HITS = counter("image.memory_hits");
+    /** Thumbnails read from the disk cache */
+    public static final Counter IMAGE_DISK_HITS = counter("image.disk_hits");
+    /** Thumbnails downloaded */
+    public static final Counter IMAGE_DOWNLOADS = counter("image.downloads");
+
+    private static Map<String, Counter> sCounters;
+    private static Map<String, Histogram> sHistograms;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics}
+     * object.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter of the name, creating it the first time.
+     */
+    public static synchronized Counter counter(String name) {
+        if (sCounters == null) {
+            sCounters = new TreeMap<>();
+        }
+        Counter counter = sCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            sCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram of the name, creating it the first time with the given unit.
+     */
+    public static synchronized Histogram histogram(String name, Unit unit) {
+        if (sHistograms == null) {
+            sHistograms = new TreeMap<>();
+        }
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(unit);
+            sHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Resets every counter and histogram to zero.
+     */
+    public static synchronized void reset() {
+        for (Counter counter : sCounters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Returns every counter and histogram as text, one per line.
+     */
+    public static synchronized String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Map.Entry<String, Counter> counter : sCounters.entrySet()) {
+            dump.append(String.format(Locale.US, "%-22s %d%n",
+                    counter.getKey(), counter.getValue().get()));
+        }
+        for (Map.Entry<String, Histogram> histogram : sHistograms.entrySet()) {
+            dump.append(String.format(Locale.US, "%-22s %s%n",
+                    histogram.getKey(), histogram.getValue()));
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Unit of the values of a {@link Histogram}, used to print them.
+     */
+    public enum Unit {
+        NANOS, BYTES, COUNT;
+
+        String format(long value) {
+            switch (this) {
+                case NANOS:
+                    return value >= TimeUnit.MILLISECONDS.toNanos(1)
+                            ? String.format(Locale.US, "%.1fms", value / 1e6)
+                            : String.format(Locale.US, "%dus", value / 1000);
+                case BYTES:
+                    return value >= 1024
+                            ? String.format(Locale.US, "%.1fKB", value / 1024.0)
+                            : value + "B";
+                default:
+                    return String.valueOf(value);
+            }
+        }
+    }
+
+    /**
+     * {@link Counter} is a number that only grows, until it is reset.
+     */
+    public static final class Counter {
+
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    /**
+     * {@link Histogram} counts values in buckets growing by powers of two, so any value from
+     * zero to {@link Long#MAX_VALUE} is recorded in constant time and memory. Percentiles are
+     * estimated within a factor of two, which is enough to tell a slow path from a fast one.
+     */
+    public static final class Histogram {
+
+        /** Bucket i holds the values whose highest one bit is bit i - 1, bucket 0 holds 0 */
+        private static final int BUCKETS = 64;
+
+        private final Unit unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(Unit unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * Records the value, negative values are recorded as 0.
+         */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+                currentMax = max.get();
+            }
+        }
+
+        /**
+         * Records the time elapsed since the start, as returned by {@link System#nanoTime()}.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMean() {
+            long recorded = count.get();
+            return recorded == 0 ? 0 : sum.get() / recorded;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the values, which is at most twice
+         * the exact one, or 0 if nothing was recorded.
+         *
+         * @param percentile between 0 and 100
+         */
+        public long getPercentile(double percentile) {
+            long recorded = count.get();
+            if (recorded == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(recorded * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= Math.max(rank, 1)) {
+                    long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                    return Math.min(upperBound, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d mean=%s p50=%s p90=%s p99=%s max=%s",
+                    getCount(), unit.format(getMean()), unit.format(getPercentile(50)),
+                    unit.format(getPercentile(90)), unit.format(getPercentile(99)),
+                    unit.format(getMax()));
+        }
+    }
+}
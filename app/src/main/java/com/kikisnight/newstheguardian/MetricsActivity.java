@@ -0,0 +1,129 @@
+package com.kikisnight.newstheguardian;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * {@link MetricsActivity} is a debug screen showing the {@link Metrics} of the process, the
+ * state of the {@link NewsQueryCache}, the {@link NewsSyncStats} and the frames of the last
+ * scroll of the feed. They can be exported to a text file, to compare two builds or two
+ * networks, and the frames can be shown over the feed while scrolling it.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = MetricsActivity.class.getName();
+
+    private TextView metricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        metricsTextView = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        metricsTextView.setText(buildReport());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        menu.findItem(R.id.action_frame_overlay)
+                .setChecked(FrameMonitor.getInstance(this).isOverlayShown());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_export_metrics) {
+            exportReport(buildReport());
+            return true;
+        }
+        if (id == R.id.action_reset_metrics) {
+            Metrics.reset();
+            metricsTextView.setText(buildReport());
+            return true;
+        }
+        if (id == R.id.action_frame_overlay) {
+            item.setChecked(!item.isChecked());
+            FrameMonitor.getInstance(this).setOverlayShown(item.isChecked());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private String buildReport() {
+        return Metrics.dump()
+                + "\nnetwork: " + NetworkQualityEstimator.getInstance()
+                + "\nquery cache: " + NewsQueryCache.getInstance()
+                + "\nsync: " + new NewsSyncStats(this)
+                + "\nlast scroll: " + FrameMonitor.getInstance(this)
+                + "\nframes log: " + FrameMonitor.logFileOf(this) + "\n";
+    }
+
+    /**
+     * Writes the report to a file of the app, off the main thread, and tells where it is.
+     */
+    private void exportReport(final String report) {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            // The external storage is not mounted
+            directory = getFilesDir();
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        final File file = new File(directory, "metrics-" + timestamp + ".txt");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final boolean exported = writeReport(file, report);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        String message = exported
+                                ? getString(R.string.metrics_exported, file.getAbsolutePath())
+                                : getString(R.string.metrics_export_failed);
+                        Toast.makeText(MetricsActivity.this, message, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        }, "MetricsExport").start();
+    }
+
+    private static boolean writeReport(File file, String report) {
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(file);
+            output.write(report.getBytes(Charset.forName("UTF-8")));
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem exporting the metrics.", e);
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the metrics file.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.kikisnight.newstheguardian;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultiSectionFetcher} fetches the news of several section (or tag) queries at the same
+ * time on a bounded pool of threads, so the whole feed takes as long as the slowest query
+ * instead of the sum of all of them. The results are merged into one feed in the order asked
+ * to the server, without the articles found by more than one query twice, and every partial
+ * feed is reported as soon as one more query completes.
+ */
+public final class MultiSectionFetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = MultiSectionFetcher.class.getName();
+
+    /** Default number of queries running at the same time */
+    private static final int DEFAULT_THREADS = 4;
+
+    /** Default time every query has to complete */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Receives the merged feed every time one more query completes.
+     */
+    public interface Listener {
+        /**
+         * Called on the fetching thread with the news merged so far.
+         *
+         * @param news is the merged feed of the completed queries
+         * @param completed is the number of queries that completed
+         * @param total is the number of queries
+         */
+        void onPartialResult(List<News> news, int completed, int total);
+    }
+
+    /** Parameter of a query URL holding the order of its results */
+    private static final String PARAMETER_ORDER_BY = "order-by=";
+
+    /**
+     * Order of the results of the queries, as asked to the server, which the merged feed
+     * keeps.
+     */
+    public enum Order {
+        /** Newest news first, the news without a date last */
+        NEWEST,
+        /** Oldest news first, the news without a date last */
+        OLDEST,
+        /** The order of the server, the n-th news of every query before the next ones */
+        RELEVANCE;
+
+        /**
+         * Returns the order asked by the order-by parameter of the URL, newest first when
+         * it has none.
+         */
+        public static Order of(String requestUrl) {
+            int start = requestUrl.indexOf(PARAMETER_ORDER_BY);
+            if (start < 0 || (start > 0 && requestUrl.charAt(start - 1) != '?'
+                    && requestUrl.charAt(start - 1) != '&')) {
+                return NEWEST;
+            }
+            start += PARAMETER_ORDER_BY.length();
+            int end = requestUrl.indexOf('&', start);
+            String orderBy = requestUrl.substring(start, end < 0 ? requestUrl.length() : end);
+            if ("newest".equals(orderBy)) {
+                return NEWEST;
+            }
+            return "oldest".equals(orderBy) ? OLDEST : RELEVANCE;
+        }
+    }
+
+    private static MultiSectionFetcher sInstance;
+
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    /**
+     * Returns the fetcher shared by the whole app.
+     */
+    public static synchronized MultiSectionFetcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new MultiSectionFetcher(newExecutor(DEFAULT_THREADS),
+                    DEFAULT_TIMEOUT_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns a pool of at most the given number of threads, which are released when idle.
+     */
+    public static ExecutorService newExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Constructs a new {@link MultiSectionFetcher}.
+     *
+     * @param executor runs the queries
+     * @param timeoutMillis is the time each query has to complete before it is abandoned
+     */
+    public MultiSectionFetcher(ExecutorService executor, long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Fetches every URL concurrently and returns the merged feed. Queries that fail or do not
+     * complete in time are left out of it.
+     *
+     * @param requestUrls are the URLs of the queries
+     * @param fetcher fetches the news of one URL
+     * @param listener is told about each partial feed, or null
+     */
+    public List<News> fetchAll(List<String> requestUrls, final NewsQueryCache.Fetcher fetcher,
+                               Listener listener) {
+        CompletionService<List<News>> completionService =
+                new ExecutorCompletionService<>(executor);
+        List<Future<List<News>>> futures = new ArrayList<>(requestUrls.size());
+        for (final String requestUrl : requestUrls) {
+            futures.add(completionService.submit(new Callable<List<News>>() {
+                @Override
+                public List<News> call() {
+                    return fetcher.fetch(requestUrl);
+                }
+            }));
+        }
+
+        // Every query started at the same time, so they all share the same deadline
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Order order = requestUrls.isEmpty() ? Order.NEWEST : Order.of(requestUrls.get(0));
+        // The results by query, in the order of the queries whatever order they complete in
+        List<List<News>> results = new ArrayList<>(requestUrls.size());
+        for (int i = 0; i < requestUrls.size(); i++) {
+            results.add(Collections.<News>emptyList());
+        }
+        List<News> merged = Collections.emptyList();
+        int completed = 0;
+        try {
+            while (completed < requestUrls.size()) {
+                Future<List<News>> future = completionService.poll(
+                        deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    Log.e(LOG_TAG, (requestUrls.size() - completed) + " queries timed out");
+                    break;
+                }
+                completed++;
+                try {
+                    List<News> news = future.get();
+                    if (news != null) {
+                        results.set(futures.indexOf(future), news);
+                        merged = merge(order, results);
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem fetching one of the sections", e.getCause());
+                }
+                if (listener != null) {
+                    listener.onPartialResult(merged, completed, requestUrls.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Abandon the queries that did not complete in time
+            for (Future<List<News>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges the news of several queries into one feed like {@link #fetchAll(List,
+     * NewsQueryCache.Fetcher, Listener)} does. Each result is in the order of the server, so
+     * they are merged by taking the first of their next news every time, without sorting
+     * them again, and an article found by several queries is kept where it comes first.
+     *
+     * @param order is the order of the results, which the feed keeps
+     * @param results are the results of the queries, in the order of the queries
+     */
+    static List<News> merge(Order order, Collection<List<News>> results) {
+        List<List<News>> lists = new ArrayList<>(results);
+        int[] next = new int[lists.size()];
+        int total = 0;
+        for (List<News> news : lists) {
+            total += news.size();
+        }
+
+        NewsList merged = new NewsList(Math.max(total, 1));
+        Set<String> keys = new HashSet<>(total * 2);
+        for (int count = 0; count < total; count++) {
+            // The query whose next news comes first, the first query on a tie
+            int first = -1;
+            for (int i = 0; i < lists.size(); i++) {
+                if (next[i] < lists.get(i).size() && (first < 0
+                        || comesBefore(order, lists.get(i).get(next[i]), next[i],
+                        lists.get(first).get(next[first]), next[first]))) {
+                    first = i;
+                }
+            }
+            News item = lists.get(first).get(next[first]++);
+            String key = item.getCompactUrl() != null ? item.getCompactUrl() : item.getTitle();
+            if (keys.add(key)) {
+                merged.add(item);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns true if the news at the given index of its result comes strictly before the
+     * other news at its own index in the order.
+     */
+    private static boolean comesBefore(Order order, News news, int index, News other,
+                                       int otherIndex) {
+        long time = news.getPublicationTime();
+        long otherTime = other.getPublicationTime();
+        switch (order) {
+            case NEWEST:
+                return time > otherTime;
+            case OLDEST:
+                // The news without a date come last in both orders
+                if (time == PublicationDates.NO_DATE || otherTime == PublicationDates.NO_DATE) {
+                    return otherTime == PublicationDates.NO_DATE
+                            && time != PublicationDates.NO_DATE;
+                }
+                return time < otherTime;
+            default:
+                return index < otherIndex;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NetworkQualityEstimator} estimates the latency and the throughput of the network from
+ * the responses actually received by the {@link NewsHttpClient}, as moving averages, and
+ * classifies the network so the requests can be sized for it. The estimates are forgotten
+ * after a while without any response, the device may have moved to another network since.
+ */
+public final class NetworkQualityEstimator {
+
+    /**
+     * Quality of the network, from the estimates.
+     */
+    public enum Quality {
+        /** Nothing was received recently */
+        UNKNOWN,
+        /** 2G or a poor 3G link, a first headline is worth more than a full page */
+        SLOW,
+        /** A usual 3G or 4G link */
+        MODERATE,
+        /** Wi-Fi or a good 4G link, larger batches cost no more time */
+        FAST
+    }
+
+    /** Weight of a new sample in the moving averages */
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    /** Bodies smaller than this mostly measure the latency, not the throughput */
+    private static final long MIN_THROUGHPUT_BYTES = 8 * 1024;
+
+    /** Samples older than this may come from another network */
+    private static final long MAX_SAMPLE_AGE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** Time to the first byte over which the network is slow, or under which it is fast */
+    private static final long SLOW_TTFB_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final long FAST_TTFB_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
+    /** Throughput under which the network is slow, or over which it is fast */
+    private static final double SLOW_BYTES_PER_SECOND = 40 * 1024;
+    private static final double FAST_BYTES_PER_SECOND = 400 * 1024;
+
+    private static NetworkQualityEstimator sInstance;
+
+    /** Moving averages, negative while there is no sample */
+    private double ttfbNanos = -1;
+    private double bytesPerSecond = -1;
+
+    /** When the last sample was received, as returned by {@link System#nanoTime()} */
+    private long lastSampleNanos;
+
+    /**
+     * Returns the estimator shared by the whole app.
+     */
+    public static synchronized NetworkQualityEstimator getInstance() {
+        if (sInstance == null) {
+            sInstance = new NetworkQualityEstimator();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Records a received response.
+     *
+     * @param ttfbNanos is the time between sending the request and receiving its headers
+     * @param bodyBytes is the number of bytes of the body, before decompression
+     * @param bodyReadNanos is the time spent waiting for the bytes of the body
+     */
+    public void onResponse(long ttfbNanos, long bodyBytes, long bodyReadNanos) {
+        onResponse(ttfbNanos, bodyBytes, bodyReadNanos, System.nanoTime());
+    }
+
+    synchronized void onResponse(long ttfbNanos, long bodyBytes, long bodyReadNanos, long now) {
+        forgetStaleSamples(now);
+        this.ttfbNanos = average(this.ttfbNanos, ttfbNanos);
+        if (bodyBytes >= MIN_THROUGHPUT_BYTES && bodyReadNanos > 0) {
+            bytesPerSecond = average(bytesPerSecond,
+                    bodyBytes * (double) TimeUnit.SECONDS.toNanos(1) / bodyReadNanos);
+        }
+        lastSampleNanos = now;
+    }
+
+    /**
+     * Returns the quality of the network from the recent responses.
+     */
+    public Quality getQuality() {
+        return getQuality(System.nanoTime());
+    }
+
+    synchronized Quality getQuality(long now) {
+        forgetStaleSamples(now);
+        if (ttfbNanos < 0) {
+            return Quality.UNKNOWN;
+        }
+        if (ttfbNanos >= SLOW_TTFB_NANOS
+                || (bytesPerSecond >= 0 && bytesPerSecond < SLOW_BYTES_PER_SECOND)) {
+            return Quality.SLOW;
+        }
+        if (ttfbNanos <= FAST_TTFB_NANOS && bytesPerSecond >= FAST_BYTES_PER_SECOND) {
+            return Quality.FAST;
+        }
+        return Quality.MODERATE;
+    }
+
+    /**
+     * Forgets every sample, when the network is known to have changed.
+     */
+    public synchronized void reset() {
+        ttfbNanos = -1;
+        bytesPerSecond = -1;
+    }
+
+    private void forgetStaleSamples(long now) {
+        if (ttfbNanos >= 0 && now - lastSampleNanos > MAX_SAMPLE_AGE_NANOS) {
+            reset();
+        }
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + SAMPLE_WEIGHT * (sample - average);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s, ttfb %.0fms, throughput %.1fKB/s",
+                getQuality(), ttfbNanos / 1e6, bytesPerSecond / 1024);
+    }
+}
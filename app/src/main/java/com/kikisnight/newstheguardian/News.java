@@ -1,17 +1,29 @@
 package com.kikisnight.newstheguardian;
 
+import java.util.Objects;
+
 /**
  * {@link News} represents the title, topic and time for each news
  * It contains a title of the news, the topic, and the time.
+ * The topic is held as its id in the {@link NewsSections} table and the URLs without the
+ * prefixes shared by every article and every thumbnail of The Guardian.
  */
 
 public final class News {
 
+    /** Prefix of the URLs of The Guardian articles, which is not stored */
+    static final String URL_PREFIX = "https://www.theguardian.com/";
+
+    /** Prefix of the URLs of The Guardian thumbnails, which is not stored */
+    static final String THUMBNAIL_URL_PREFIX = "https://media.guim.co.uk/";
+
     // Keyword "article" used before the variables to differentiate like private variables
     private String articleTitle;
-    private String articleTopic;
-    private String articleTime;
-    private String articleUrl;
+    private int articleSectionId;
+    private long articleTime;
+    private String articleCompactUrl;
+    private String articleTrailText;
+    private String articleCompactThumbnailUrl;
 
 
     /**
@@ -20,15 +32,108 @@ public final class News {
      * @param title is the tittle of the article on the news
      * @param topic is the topic of the news
      * @param time is the time in milliseconds (from the Epoch) when the
-     *  news was published
+     *  news was published, or {@link PublicationDates#NO_DATE}
+     * @param url is the website URL to find complet the news
+     */
+    public News (String title, String topic, long time, String url) {
+        this(title, topic, time, url, null);
+    }
+
+    /**
+     * Constructs a new {@link News} object with its trail text.
+     *
+     * @param title is the tittle of the article on the news
+     * @param topic is the topic of the news
+     * @param time is the time in milliseconds (from the Epoch) when the
+     *  news was published, or {@link PublicationDates#NO_DATE}
+     * @param url is the website URL to find complet the news
+     * @param trailText is the short summary of the news, or null
+     */
+    public News (String title, String topic, long time, String url, String trailText) {
+        this(title, topic, time, url, trailText, null);
+    }
+
+    /**
+     * Constructs a new {@link News} object with its trail text and its thumbnail.
+     *
+     * @param title is the tittle of the article on the news
+     * @param topic is the topic of the news
+     * @param time is the time in milliseconds (from the Epoch) when the
+     *  news was published, or {@link PublicationDates#NO_DATE}
      * @param url is the website URL to find complet the news
+     * @param trailText is the short summary of the news, or null
+     * @param thumbnailUrl is the URL of the image of the news, or null
+     */
+    public News (String title, String topic, long time, String url, String trailText,
+                 String thumbnailUrl) {
+        this(title, NewsSections.idOf(topic), time, compactUrl(url), trailText,
+                compactThumbnailUrl(thumbnailUrl));
+    }
+
+    /**
+     * Constructs a new {@link News} object from its compact fields.
+     *
+     * @param title is the tittle of the article on the news
+     * @param sectionId is the id of the topic in the {@link NewsSections} table
+     * @param time is the time in milliseconds (from the Epoch) when the
+     *  news was published, or {@link PublicationDates#NO_DATE}
+     * @param compactUrl is the URL as returned by {@link #compactUrl(String)}
+     * @param trailText is the short summary of the news, or null
+     * @param compactThumbnailUrl is the URL as returned by {@link #compactThumbnailUrl(String)}
      */
-    public News (String title, String topic, String time, String url) {
+    News (String title, int sectionId, long time, String compactUrl, String trailText,
+          String compactThumbnailUrl) {
 
         articleTitle = title;
-        articleTopic = topic;
+        articleSectionId = sectionId;
         articleTime = time;
-        articleUrl = url;
+        articleCompactUrl = compactUrl;
+        articleTrailText = trailText;
+        articleCompactThumbnailUrl = compactThumbnailUrl;
+    }
+
+    /**
+     * Returns the URL without the prefix of The Guardian articles, or the whole URL of any
+     * other site. Paths never contain "://", so both can be told apart.
+     */
+    static String compactUrl(String url) {
+        return removePrefix(url, URL_PREFIX);
+    }
+
+    /**
+     * Returns the complete URL of a URL returned by {@link #compactUrl(String)}.
+     */
+    static String expandUrl(String compactUrl) {
+        return addPrefix(compactUrl, URL_PREFIX);
+    }
+
+    /**
+     * Returns the thumbnail URL without the prefix of The Guardian thumbnails, like
+     * {@link #compactUrl(String)}.
+     */
+    static String compactThumbnailUrl(String thumbnailUrl) {
+        return removePrefix(thumbnailUrl, THUMBNAIL_URL_PREFIX);
+    }
+
+    /**
+     * Returns the complete URL of a URL returned by {@link #compactThumbnailUrl(String)}.
+     */
+    static String expandThumbnailUrl(String compactThumbnailUrl) {
+        return addPrefix(compactThumbnailUrl, THUMBNAIL_URL_PREFIX);
+    }
+
+    private static String removePrefix(String url, String prefix) {
+        if (url != null && url.startsWith(prefix)) {
+            return url.substring(prefix.length());
+        }
+        return url;
+    }
+
+    private static String addPrefix(String compactUrl, String prefix) {
+        if (compactUrl == null || compactUrl.contains("://")) {
+            return compactUrl;
+        }
+        return prefix + compactUrl;
     }
 
     /**
@@ -42,13 +147,21 @@ public final class News {
      * Returns the topic of the news.
      */
     public String getTopic () {
-        return articleTopic;
+        return NewsSections.nameOf(articleSectionId);
     }
 
     /**
-     * Returns the published date of the news
+     * Returns the id of the topic in the {@link NewsSections} table.
      */
-    public String getPublicationDate() {
+    int getSectionId() {
+        return articleSectionId;
+    }
+
+    /**
+     * Returns the time in milliseconds (from the Epoch) when the news was published,
+     * or {@link PublicationDates#NO_DATE}
+     */
+    public long getPublicationTime() {
         return articleTime;
     }
 
@@ -56,7 +169,68 @@ public final class News {
      * Return the URL of the news.
      */
     public String getUrl(){
-        return articleUrl;
+        return expandUrl(articleCompactUrl);
+    }
+
+    /**
+     * Return the URL of the news as returned by {@link #compactUrl(String)}, which identifies
+     * it as well as the complete one.
+     */
+    String getCompactUrl(){
+        return articleCompactUrl;
+    }
+
+    /**
+     * Return the trail text (short summary) of the news, or null if it was not requested.
+     */
+    public String getTrailText(){
+        return articleTrailText;
+    }
+
+    /**
+     * Return the URL of the thumbnail of the news, or null if it has none or it was not
+     * requested.
+     */
+    public String getThumbnailUrl(){
+        return expandThumbnailUrl(articleCompactThumbnailUrl);
+    }
+
+    /**
+     * Return the URL of the thumbnail as returned by {@link #compactThumbnailUrl(String)}.
+     */
+    String getCompactThumbnailUrl(){
+        return articleCompactThumbnailUrl;
+    }
+
+    /**
+     * Returns true if the other news is the same article, which is identified by its URL,
+     * even if its title or its other fields changed.
+     */
+    public boolean isSameArticle(News other) {
+        return other != null && Objects.equals(articleCompactUrl, other.articleCompactUrl);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof News)) {
+            return false;
+        }
+        News other = (News) object;
+        return Objects.equals(articleTitle, other.articleTitle)
+                && articleSectionId == other.articleSectionId
+                && articleTime == other.articleTime
+                && Objects.equals(articleCompactUrl, other.articleCompactUrl)
+                && Objects.equals(articleTrailText, other.articleTrailText)
+                && Objects.equals(articleCompactThumbnailUrl, other.articleCompactThumbnailUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(articleTitle, articleSectionId, articleTime, articleCompactUrl,
+                articleTrailText, articleCompactThumbnailUrl);
     }
 
 }
\ No newline at end of file
@@ -4,16 +4,16 @@ import android.app.LoaderManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
-import android.preference.PreferenceManager;
+import android.os.Handler;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -21,8 +21,10 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.TextView;
-import java.util.ArrayList;
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class NewsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<News>> {
 
@@ -34,13 +36,18 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
      */
     private static final int NEWS_LOADER_ID = 1;
 
+    /** Key of the loader argument holding the page of results to load */
+    private static final String ARG_PAGE = "page";
+
+    /** Key of the loader argument telling the page is loaded again at the head of the feed */
+    private static final String ARG_EARLIER_PAGE = "earlier_page";
+
+    /** Key of the loader argument holding the publication time to load the news since */
+    private static final String ARG_NEWER_THAN = "newer_than";
+
     /** Adapter for the list of news */
     private NewsAdapter mAdapter;
 
-    /** URL for news data from the The Guardian dataset */
-    private static final String API_REQUEST_URL =
-            "https://content.guardianapis.com/search";
-
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
 
@@ -60,83 +67,355 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
     SwipeRefreshLayout swipeRefreshLayout;
 
     /*String for search a new topic, default "all" */
-    private String keyWordforSearch = "all";
+    private String keyWordforSearch = NewsRequestUrls.DEFAULT_KEYWORD;
 
     /*Create a new object for mAdapter */
-    public static List<News> articleListNews;
+    public static NewsList articleListNews;
+
+    /* Last page of results added to the adapter, 0 when there is none */
+    private int loadedPage;
+
+    /* True while a page of results is being loaded */
+    private boolean isLoadingPage;
+
+    /* True once the API answered with less articles than a full page */
+    private boolean lastPageReached;
+
+    /* Number of articles of every page of the feed, chosen for the network with its first page */
+    private int feedPageSize;
+
+    /* Publication time of the newest article of the feed, refreshes only request newer ones */
+    private long newestPublicationTime = PublicationDates.NO_DATE;
+
+    /* Shows the feed, scrolled to its head when news are added there */
+    private RecyclerView recyclerView;
+
+    /* Last list of news delivered by the loader, to ignore it if delivered again */
+    private List<News> lastDeliveredNews;
+
+    /* Time the activity was created, to measure how long its first news take to be shown */
+    private long createNanos;
+
+    /* True once the first news of the activity are shown */
+    private boolean firstContentShown;
+
+    /* Measures the frames of the feed while it scrolls */
+    private FrameMonitor frameMonitor;
+
+    /* Shows the frame times of the last scroll, when turned on from the metrics screen */
+    private TextView frameOverlay;
+
+    /* Delays the search until the user stops typing */
+    private final Handler searchHandler = new Handler();
+
+    /**
+     * The feed and its paging, kept across a configuration change so the new activity
+     * shows them at once, without loading or copying them again.
+     */
+    private static final class RetainedFeed {
+        NewsList news;
+        List<Integer> pageSizes;
+        int firstPage;
+        StoryClusters storyClusters;
+        String keyword;
+        int loadedPage;
+        int feedPageSize;
+        long newestPublicationTime;
+        boolean lastPageReached;
+        List<News> lastDeliveredNews;
+    }
+
+    /* Searches the keyword typed last */
+    private final Runnable typedSearch = new Runnable() {
+        @Override
+        public void run() {
+            searchFor(getEnteredKeyword(), false);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createNanos = System.nanoTime();
         setContentView(R.layout.activity_news);
 
         // Initialize TextView and Spinner
         messageTextView = (TextView) findViewById(R.id.empty_view);
         progressBar = (ProgressBar) findViewById(R.id.loading_indicator);
+        frameOverlay = (TextView) findViewById(R.id.frame_overlay);
+        frameMonitor = FrameMonitor.getInstance(this);
+
+        // Pulling the head of the feed refreshes it
+        swipeRefreshLayout = (SwipeRefreshLayout) findViewById(R.id.swipe_refresh);
+        swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
+            @Override
+            public void onRefresh() {
+                refreshFeed();
+            }
+        });
 
-        // Check connection
-        if (checkConnection()) {
-            // Show message for fetching data
-            messageTextView.setText(getString(R.string.message_obtain_data));
+        // Apply the configured timeouts to every request
+        NewsHttpClient.getInstance().setTimeouts(
+                getResources().getInteger(R.integer.http_connect_timeout_millis),
+                getResources().getInteger(R.integer.http_read_timeout_millis));
 
-            // Initialize Loader and News Adapter
-            initializeLoaderAndAdapter();
+        // Keep the feed fresh in the background so the next launch does not wait on it
+        NewsSyncJobService.schedule(this);
 
-        } else {
-            // Hide progressBar
-            progressBar.setVisibility(View.GONE);
-            // Display error
-            messageTextView.setText(getString(R.string.message_no_internet_connection));
+        // Show message for fetching data
+        messageTextView.setText(getString(R.string.message_obtain_data));
+
+        // Initialize Loader and News Adapter, the stored news are shown even without connection
+        initializeLoaderAndAdapter();
+
+        // Search as the user types, once the typing pauses
+        final int debounceMillis = getResources().getInteger(R.integer.search_debounce_millis);
+        EditText editText = (EditText) findViewById(R.id.edit_text);
+        editText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                refineShownNews(getEnteredKeyword());
+                searchHandler.removeCallbacks(typedSearch);
+                searchHandler.postDelayed(typedSearch, debounceMillis);
+            }
+        });
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        RetainedFeed feed = new RetainedFeed();
+        feed.news = articleListNews;
+        feed.pageSizes = mAdapter.getPageSizes();
+        feed.firstPage = mAdapter.getFirstPage();
+        feed.storyClusters = mAdapter.getStoryClusters();
+        feed.keyword = keyWordforSearch;
+        feed.loadedPage = loadedPage;
+        feed.feedPageSize = feedPageSize;
+        feed.newestPublicationTime = newestPublicationTime;
+        feed.lastPageReached = lastPageReached;
+        // A list not shown yet must be taken again when the loader delivers it
+        feed.lastDeliveredNews = mAdapter.hasPendingChanges() ? null : lastDeliveredNews;
+        return feed;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // The overlay may have been turned on or off from the metrics screen
+        frameOverlay.setVisibility(frameMonitor.isOverlayShown() ? View.VISIBLE : View.GONE);
+        frameOverlay.setText(frameMonitor.toString());
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // A scroll left unfinished is reported with the frames measured so far
+        frameMonitor.stop();
+        // The head of the feed is shown at once by the next cold start
+        if (!isChangingConfigurations()) {
+            saveFeedSnapshot();
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacks(typedSearch);
+        super.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The thumbnails kept in memory are the first thing to give back
+        ThumbnailLoader.getInstance(this).trimMemory(level);
+    }
+
     @Override
     public Loader<List<News>> onCreateLoader(int id, Bundle args) {
-        // Get an instance of SharedPreferences
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        // A refresh only loads the news published since the newest one shown
+        long newerThan = args != null
+                ? args.getLong(ARG_NEWER_THAN, PublicationDates.NO_DATE) : PublicationDates.NO_DATE;
+        if (newerThan != PublicationDates.NO_DATE) {
+            isLoadingPage = true;
+            return new NewsLoader(this, NewsRequestUrls.buildSince(this, keyWordforSearch,
+                    newerThan, feedPageSize), newerThan);
+        }
 
-        // Get order by preference
-        String orderBy = sharedPreferences.getString(getString(R.string
-                .settings_order_by_key), getString(R.string.settings_order_by_default));
+        // Get the page of results to load, the first one by default
+        int page = args != null ? args.getInt(ARG_PAGE, 1) : 1;
+        // A page dropped from the head of the feed and loaded again is not a new feed
+        boolean earlierPage = args != null && args.getBoolean(ARG_EARLIER_PAGE, false);
+        boolean newFeed = page == 1 && !earlierPage;
+
+        // A new feed is sized for the network measured so far, its next pages keep that size
+        List<String> enrichUrls = null;
+        boolean withFields = true;
+        if (newFeed || feedPageSize == 0) {
+            NetworkQualityEstimator.Quality quality =
+                    NetworkQualityEstimator.getInstance().getQuality();
+            feedPageSize = NewsRequestUrls.pageSizeFor(this, quality);
+            // On a slow network the headlines come first, and their fields afterwards
+            if (newFeed && NewsRequestUrls.isLeanFirstPage(quality)) {
+                withFields = false;
+                enrichUrls = NewsRequestUrls.build(this, keyWordforSearch, page, feedPageSize,
+                        true);
+            }
+            Log.v(LOG_TAG, "Network " + quality + ", " + feedPageSize + " articles per page");
+        }
+
+        // Build the URLs based on the preferences, one for each followed section
+        List<String> requestUrls = NewsRequestUrls.build(this, keyWordforSearch, page,
+                feedPageSize, withFields);
 
-        // Build the Uri based on the preferences
-        Uri baseIri = Uri.parse(API_REQUEST_URL);
-        Uri.Builder uriBuilder = baseIri.buildUpon();
+        // The default keyword matches every stored news
+        String localKeyword = NewsRequestUrls.DEFAULT_KEYWORD.equals(keyWordforSearch)
+                ? null : keyWordforSearch;
 
-        uriBuilder.appendQueryParameter("q", keyWordforSearch);
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        uriBuilder.appendQueryParameter("api-key", "test");
-        Log.v("MainActivity", "Uri: " + uriBuilder);
+        // Create a new loader with the supplied Urls, all of them are fetched at the same time
+        isLoadingPage = true;
+        NewsLoader loader = new NewsLoader(this, requestUrls, enrichUrls, page, localKeyword);
+        loader.setEarlierPage(earlierPage);
 
-        // Create a new loader with the supplied Url
-        return new NewsLoader(this, uriBuilder.toString());
+        // Rank the news on the device if asked to, with what the user opened so far. The
+        // feed shown is never ranked again under the user, a refresh ranks its first page
+        // again, served by the query cache without waiting for the server when it holds it.
+        if (NewsRequestUrls.isRanked(this)) {
+            loader.setRanker(NewsRanker.getInstance(this), localKeyword);
+        }
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<List<News>> loader, List<News> newsItems) {
+        // Adding the news delays the next frame, which is slow because of it when scrolling
+        long deliveryStart = System.nanoTime();
+        deliverNews(loader, newsItems);
+        frameMonitor.addWork(FrameMonitor.Phase.DELIVERY, System.nanoTime() - deliveryStart);
+    }
 
-        // If there is a network connection, fetch data
-        if (checkConnection()) {
-            // If there is a valid list of {@link New}s, then add them to the adapter's
-            if (newsItems != null && !newsItems.isEmpty()) {
-                articleListNews.addAll(newsItems);
-                // Hide loading indicator because the data has been loaded
-                progressBar.setVisibility(View.GONE);
-                // Hide message text
-                messageTextView.setText("");
+    /*
+    * Show the news delivered by the loader, as a new feed, a new page or newer news
+    */
+    private void deliverNews(Loader<List<News>> loader, List<News> newsItems) {
+        // The rest of a partial result is still loading
+        isLoadingPage = ((NewsLoader) loader).isPartialResult();
+        if (!isLoadingPage) {
+            swipeRefreshLayout.setRefreshing(false);
+        }
 
+        // The same list is delivered again when coming back to the activity
+        if (newsItems != null && newsItems == lastDeliveredNews) {
+            return;
+        }
+        lastDeliveredNews = newsItems;
+        if (((NewsLoader) loader).isDelta()) {
+            addNewerNews(newsItems);
+            return;
+        }
+        if (((NewsLoader) loader).isEarlierPage()) {
+            addEarlierPage(newsItems);
+            return;
+        }
+        int page = ((NewsLoader) loader).getPage();
+
+        // If there is a valid list of {@link New}s, then add them to the adapter's
+        if (newsItems != null && !newsItems.isEmpty()) {
+            if (page == 1) {
+                mAdapter.addAll(newsItems);
+                newestPublicationTime = newestPublicationTime(newsItems);
+                // The first articles are the ones most likely to be opened in the reader
+                if (!isLoadingPage) {
+                    ArticleBodyFetcher.prefetch(this, newsItems);
+                }
             } else {
-                // Hide loading indicator because the data has been loaded
-                progressBar.setVisibility(View.GONE);
+                mAdapter.appendPage(newsItems);
+            }
+            loadedPage = page;
+            lastPageReached = newsItems.size() < feedPageSize;
+            recordFirstContent();
+            // Hide loading indicator because the data has been loaded
+            progressBar.setVisibility(View.GONE);
+            // Hide message text
+            messageTextView.setText("");
+
+        } else if (page > 1) {
+            // There are no more pages, keep the articles already shown
+            lastPageReached = true;
+        } else if (!isLoadingPage) {
+            // Remove the news of the previous keyword
+            mAdapter.clearAll();
+            // Hide loading indicator because the data has been loaded
+            progressBar.setVisibility(View.GONE);
+            if (checkConnection()) {
                 // Set message text to display "No articles found!"
                 messageTextView.setText(getString(R.string.message_no_news));
+            } else {
+                // Nothing stored matches either, display error
+                messageTextView.setText(getString(R.string.message_no_internet_connection));
             }
-            Log.v("MainActivity", "Loader completed.");
-        } else {
-            // Display error
-            messageTextView.setText(getString(R.string.message_no_internet_connection));
+        }
+        Log.v("MainActivity", "Loader completed.");
+    }
+
+    /*
+    * Add the news published since the newest one shown at the head of the feed
+    */
+    private void addNewerNews(List<News> newsItems) {
+        // The refresh failed, the feed shown stays as it is
+        if (newsItems == null) {
             return;
         }
+        // A full page may not be all of the new news, refresh the whole first page instead
+        if (newsItems.size() >= feedPageSize) {
+            searchFor(keyWordforSearch, true);
+            return;
+        }
+        boolean showsHead = ((LinearLayoutManager) recyclerView.getLayoutManager())
+                .findFirstVisibleItemPosition() == 0;
+        if (mAdapter.prependNews(newsItems) > 0) {
+            newestPublicationTime = Math.max(newestPublicationTime,
+                    newestPublicationTime(newsItems));
+            ArticleBodyFetcher.prefetch(this, newsItems);
+            // Show the new news to the user who pulled the head of the feed
+            if (showsHead) {
+                recyclerView.scrollToPosition(0);
+            }
+        }
+    }
+
+    /*
+    * Add the page dropped from the head of the feed and loaded again while scrolling back up
+    */
+    private void addEarlierPage(List<News> newsItems) {
+        // The failed page is requested again by the next scroll up
+        if (isLoadingPage || newsItems == null || newsItems.isEmpty()) {
+            return;
+        }
+        mAdapter.prependPage(newsItems);
+        // The last pages may have been dropped to make room for it
+        if (mAdapter.getLastPage() < loadedPage) {
+            loadedPage = mAdapter.getLastPage();
+            lastPageReached = false;
+        }
+    }
+
+    /*
+    * Return the publication time of the newest news of the list
+    */
+    private static long newestPublicationTime(List<News> newsItems) {
+        long newest = PublicationDates.NO_DATE;
+        for (News news : newsItems) {
+            newest = Math.max(newest, news.getPublicationTime());
+        }
+        return newest;
     }
 
     @Override
@@ -158,10 +437,25 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
     public void initializeLoaderAndAdapter() {
+        // Take back the feed of the activity destroyed by a configuration change
+        RetainedFeed retainedFeed = (RetainedFeed) getLastCustomNonConfigurationInstance();
+        if (retainedFeed != null) {
+            keyWordforSearch = retainedFeed.keyword;
+            loadedPage = retainedFeed.loadedPage;
+            feedPageSize = retainedFeed.feedPageSize;
+            newestPublicationTime = retainedFeed.newestPublicationTime;
+            lastPageReached = retainedFeed.lastPageReached;
+            lastDeliveredNews = retainedFeed.lastDeliveredNews;
+        }
+
         // Get a reference to the LoaderManager, in order to interact with loaders.
         loaderManager = getLoaderManager();
 
@@ -171,59 +465,283 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
         loaderManager.initLoader(NEWS_LOADER_ID, null, this);
 
         // Lookup the recyclerView in activity layout
-        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.recycler_view);
+        recyclerView = (RecyclerView) findViewById(R.id.recycler_view);
         // Create adapter passing the data
-        articleListNews = new ArrayList<News>();
-        mAdapter = new NewsAdapter(this, articleListNews);
+        int maxPagesInMemory = getResources().getInteger(R.integer.feed_max_pages_in_memory);
+        if (retainedFeed != null) {
+            articleListNews = retainedFeed.news;
+            mAdapter = new NewsAdapter(this, articleListNews, retainedFeed.pageSizes,
+                    retainedFeed.firstPage, retainedFeed.storyClusters, maxPagesInMemory);
+            if (!articleListNews.isEmpty()) {
+                progressBar.setVisibility(View.GONE);
+                messageTextView.setText("");
+                // Not a start, the news were already shown by the previous activity
+                firstContentShown = true;
+            }
+        } else {
+            // Show the feed saved by the last run before the first frame, the news of the
+            // loader replace it afterwards with only the rows that changed
+            NewsList snapshot = readFeedSnapshot();
+            if (snapshot != null && !snapshot.isEmpty()) {
+                articleListNews = snapshot;
+                mAdapter = new NewsAdapter(this, articleListNews,
+                        Collections.singletonList(snapshot.size()), maxPagesInMemory);
+                progressBar.setVisibility(View.GONE);
+                messageTextView.setText("");
+                recordFirstContent();
+            } else {
+                articleListNews = new NewsList();
+                mAdapter = new NewsAdapter(this, articleListNews, maxPagesInMemory);
+            }
+        }
         // Attach the adapter to the recyclerView to populate items
         recyclerView.setAdapter(mAdapter);
-        // Set layout manager to position the items
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        // Set layout manager to position the items, timing the layouts for the frame monitor
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this) {
+            @Override
+            public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+                long layoutStart = System.nanoTime();
+                super.onLayoutChildren(recycler, state);
+                frameMonitor.addWork(FrameMonitor.Phase.LAYOUT, System.nanoTime() - layoutStart);
+            }
+
+            @Override
+            public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler,
+                                          RecyclerView.State state) {
+                long layoutStart = System.nanoTime();
+                int scrolled = super.scrollVerticallyBy(dy, recycler, state);
+                frameMonitor.addWork(FrameMonitor.Phase.LAYOUT, System.nanoTime() - layoutStart);
+                return scrolled;
+            }
+        };
+        recyclerView.setLayoutManager(layoutManager);
+
+        // Load the next page before the user reaches the end of the list
+        final int prefetchDistance = getResources().getInteger(R.integer.feed_prefetch_distance);
+        final int thumbnailPrefetchRows =
+                getResources().getInteger(R.integer.thumbnail_prefetch_rows);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // Measure the frames from the start of a scroll to its end
+                if (newState != RecyclerView.SCROLL_STATE_IDLE) {
+                    frameMonitor.start();
+                    return;
+                }
+                String report = frameMonitor.stop();
+                if (report != null) {
+                    frameOverlay.setText(report);
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // Load the thumbnails of the rows about to be shown, in the scroll direction
+                if (dy > 0) {
+                    int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                    mAdapter.prefetchThumbnails(lastVisiblePosition + 1,
+                            lastVisiblePosition + thumbnailPrefetchRows);
+                } else if (dy < 0) {
+                    int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+                    mAdapter.prefetchThumbnails(firstVisiblePosition - thumbnailPrefetchRows,
+                            firstVisiblePosition - 1);
+                }
+
+                if (isLoadingPage || loadedPage == 0) {
+                    return;
+                }
+                // Load again the pages dropped from the head when scrolling back to it
+                if (dy < 0) {
+                    int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+                    if (mAdapter.getFirstPage() > 1
+                            && firstVisiblePosition != RecyclerView.NO_POSITION
+                            && firstVisiblePosition <= prefetchDistance) {
+                        loadEarlierPage();
+                    }
+                    return;
+                }
+                if (dy == 0 || lastPageReached) {
+                    return;
+                }
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                if (lastVisiblePosition + prefetchDistance >= mAdapter.getItemCount()) {
+                    loadNextPage();
+                }
+            }
+        });
+    }
+
+    /*
+    * Return the news saved by the last run for the feed of the default keyword, or null if
+    * there are none or they are too old
+    */
+    private NewsList readFeedSnapshot() {
+        long readStart = System.nanoTime();
+        long maxAgeMillis = TimeUnit.HOURS.toMillis(
+                getResources().getInteger(R.integer.feed_snapshot_max_age_hours));
+        NewsList snapshot = FeedSnapshot.read(FeedSnapshot.fileOf(this), getSnapshotQuery(),
+                System.currentTimeMillis(), maxAgeMillis);
+        Metrics.SNAPSHOT_READ_NANOS.recordSince(readStart);
+        return snapshot;
+    }
+
+    /*
+    * Save the head of the feed of the default keyword in the background, once the loader
+    * delivered it so the saved news are never older than the ones read
+    */
+    private void saveFeedSnapshot() {
+        // Without its first page, the feed held does not start with its head
+        if (!NewsRequestUrls.DEFAULT_KEYWORD.equals(keyWordforSearch) || loadedPage == 0
+                || mAdapter.getFirstPage() > 1 || articleListNews.isEmpty()
+                || mAdapter.hasPendingChanges()) {
+            return;
+        }
+        int articles = Math.min(articleListNews.size(),
+                getResources().getInteger(R.integer.feed_snapshot_articles));
+        final NewsList snapshot = NewsList.copyOf(articleListNews, 0, articles);
+        final String query = getSnapshotQuery();
+        final File file = FeedSnapshot.fileOf(this);
+        NewsExecutor.getInstance().submit(NewsExecutor.Priority.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                FeedSnapshot.write(file, query, System.currentTimeMillis(), snapshot);
+            }
+        });
+    }
+
+    /*
+    * Return what identifies the feed of the default keyword, which changes with the followed
+    * sections and the order chosen in the settings
+    */
+    private String getSnapshotQuery() {
+        StringBuilder query = new StringBuilder();
+        for (String requestUrl : NewsRequestUrls.build(this, NewsRequestUrls.DEFAULT_KEYWORD, 1)) {
+            query.append(requestUrl).append('\n');
+        }
+        return query.toString();
+    }
+
+    /*
+    * Record the time the first news were shown after the activity was created
+    */
+    private void recordFirstContent() {
+        if (!firstContentShown) {
+            firstContentShown = true;
+            Metrics.FIRST_CONTENT_NANOS.recordSince(createNanos);
+        }
+    }
+
+    /*
+    * Load the page of results following the last one added to the adapter
+    */
+    private void loadNextPage() {
+        if (!checkConnection()) {
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putInt(ARG_PAGE, loadedPage + 1);
+        loaderManager.restartLoader(NEWS_LOADER_ID, args, this);
+    }
+
+    /*
+    * Load again the page of results before the first one held by the adapter
+    */
+    private void loadEarlierPage() {
+        if (!checkConnection()) {
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putInt(ARG_PAGE, mAdapter.getFirstPage() - 1);
+        args.putBoolean(ARG_EARLIER_PAGE, true);
+        loaderManager.restartLoader(NEWS_LOADER_ID, args, this);
+    }
+
+    /*
+    * Refresh the feed. Only the news published since the newest one shown are requested
+    * when they can be added at its head, the whole first page otherwise.
+    */
+    private void refreshFeed() {
+        if (!checkConnection()) {
+            swipeRefreshLayout.setRefreshing(false);
+            return;
+        }
+        // The head of the feed is still its first page and the newest news come first
+        boolean showsNewest = loadedPage > 0 && !isLoadingPage
+                && newestPublicationTime != PublicationDates.NO_DATE
+                && !articleListNews.isEmpty()
+                && articleListNews.getPublicationTime(0) >= newestPublicationTime
+                && NewsRequestUrls.isNewestFirst(this);
+        if (!showsNewest) {
+            searchFor(keyWordforSearch, true);
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putLong(ARG_NEWER_THAN, newestPublicationTime);
+        loaderManager.restartLoader(NEWS_LOADER_ID, args, this);
     }
 
     /*
     * Search for a new topic
     */
     public void searchKeyword (View v) {
+        // Search right away, even the same keyword again
+        searchHandler.removeCallbacks(typedSearch);
+        searchFor(getEnteredKeyword(), true);
+    }
+
+    /*
+    * Return the keyword entered in the EditText, or the default one when it is empty
+    */
+    private String getEnteredKeyword() {
         //Find a references to the EditText
         EditText editText = (EditText) findViewById(R.id.edit_text);
         String enterOfKeyword = editText.getText().toString().trim().toLowerCase();
+        return enterOfKeyword.isEmpty() ? NewsRequestUrls.DEFAULT_KEYWORD : enterOfKeyword;
+    }
+
+    /*
+    * Load the first page of results of the keyword. Restarting the loader cancels the
+    * requests of the previous keyword which are still running.
+    */
+    private void searchFor(String keyword, boolean searchAgain) {
+        if (!searchAgain && keyword.equals(keyWordforSearch)) {
+            return;
+        }
         //Change the keyWord for search a new topic
-        keyWordforSearch = enterOfKeyword;
+        keyWordforSearch = keyword;
 
-        if (checkConnection()) {
+        // Start again from the first page of results
+        loadedPage = 0;
+        lastPageReached = false;
+        newestPublicationTime = PublicationDates.NO_DATE;
+        lastDeliveredNews = null;
+
+        // Show loading indicator
+        progressBar.setVisibility(View.VISIBLE);
+        if (mAdapter.getItemCount() == 0) {
             // Show message text
             messageTextView.setText(getString(R.string.message_refresh));
-            // Show loading indicator
-            progressBar.setVisibility(View.VISIBLE);
-
-            // Check if newsAdapter is not null (which will happen if on launch there was no
-            // connection)
-            if (articleListNews != null) {
-                // Clear the adapter
-                mAdapter.clearAll();
-            }
-            if (loaderManager != null) {
-                // Restart Loader
-                loaderManager.restartLoader(NEWS_LOADER_ID, null, this);
-            } else {
-                initializeLoaderAndAdapter();
-            }
-
-        } else {
-            // Hide progressBar
-            progressBar.setVisibility(View.GONE);
+        }
 
-            // Check if newsAdapter is not null (which will happen if on launch there was no connection)
-            if (articleListNews != null) {
-                // Clear the adapter
-                mAdapter.clearAll();
-            }
+        // The news shown stay until the ones of the keyword replace them, starting with
+        // the stored ones which are shown even without connection
+        loaderManager.restartLoader(NEWS_LOADER_ID, null, this);
+    }
 
-            // Display error
-            messageTextView.setText(getString(R.string.message_no_internet_connection));
+    /*
+    * Narrow the news shown to the ones matching a longer keyword while it is typed, the
+    * results of the shorter keyword already hold every stored match
+    */
+    private void refineShownNews(String keyword) {
+        boolean showsEveryNews = NewsRequestUrls.DEFAULT_KEYWORD.equals(keyWordforSearch);
+        if (keyword.equals(keyWordforSearch) || NewsRequestUrls.DEFAULT_KEYWORD.equals(keyword)
+                || !(showsEveryNews || keyword.startsWith(keyWordforSearch))) {
             return;
         }
+        NewsList matches = articleListNews.filter(NewsStore.toWords(keyword));
+        if (matches.size() < articleListNews.size()) {
+            mAdapter.addAll(matches);
+        }
     }
 
     public boolean checkConnection() {
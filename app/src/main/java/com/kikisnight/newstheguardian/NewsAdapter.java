@@ -1,34 +1,70 @@
 package com.kikisnight.newstheguardian;
 
 import android.content.Context;
-import android.content.Intent;
-import android.net.Uri;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import android.support.v7.widget.RecyclerView;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import android.widget.Toast;
-
-import static com.kikisnight.newstheguardian.NewsActivity.LOG_TAG;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 
 /**
  * {@link NewsAdapter} is an {@link NewsAdapter} that can provide the layout for each list item
- * based on a data source, which is a list of {@link News} objects.
+ * based on a data source, which is a {@link NewsList}.
  * A ViewHolder will be used to support the ReclyView
  */
 
 public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
 
-    private List<News> articleNews;
+    private NewsList articleNews;
     private Context articleContext;
 
+    /** Number of articles of each page held by articleNews, oldest page first */
+    private final ArrayDeque<Integer> pageSizes = new ArrayDeque<>();
+
+    /** Number of pages kept in articleNews before the oldest ones are dropped */
+    private final int maxPagesInMemory;
+
+    /** Page of the results at the head of articleNews, the pages before it were dropped */
+    private int firstPage = 1;
+
+    /** Computes the differences between the old and the new lists off the main thread */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Delivers the computed differences back to the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Incremented on every change of articleNews, so outdated differences are dropped */
+    private int listGeneration;
+
+    /** True while the differences with a new list are being computed */
+    private boolean diffPending;
+
+    /** Pages appended while a difference was computed, added once it is dispatched */
+    private final List<List<News>> deferredPages = new ArrayList<>();
+
+    /** Stories of the articles shown, the other articles of a story are hidden behind its row */
+    private StoryClusters storyClusters;
+
+    /** Loads the thumbnails, at the size of the views they are shown in */
+    private final ThumbnailLoader thumbnailLoader;
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+
+    /** Blames the slow frames of a scroll on the rows bound meanwhile */
+    private final FrameMonitor frameMonitor;
 
 
     public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -37,6 +73,8 @@ public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
         TextView newsTopic;
         TextView newsPublicationDate;
         TextView newsPublicationTime;
+        TextView newsStoryCount;
+        ImageView newsThumbnail;
 
         private Context context;
 
@@ -51,41 +89,87 @@ public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
             newsTopic = (TextView) itemView.findViewById(R.id.article_topic);
             newsPublicationDate = (TextView) itemView.findViewById(R.id.article_date);
             newsPublicationTime = (TextView) itemView.findViewById(R.id.article_time);
+            newsThumbnail = (ImageView) itemView.findViewById(R.id.article_thumbnail);
+            newsStoryCount = (TextView) itemView.findViewById(R.id.article_story_count);
+
+            // Show the other articles of the story below this one
+            newsStoryCount.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    expandStory(getAdapterPosition());
+                }
+            });
         }
 
         @Override
         public void onClick(View view) {
             int position = getAdapterPosition();
-            News news = articleNews.get(position);
-
-            // Get the Url from the current News
-            String articleUrl = news.getUrl();
-
-            // Convert the String Url into a URI object
-            Uri newsURI = Uri.parse(articleUrl);
-
-            // Create new intent to view the article's URL
-            Intent websiteIntent = new Intent(Intent.ACTION_VIEW, newsURI);
-            //Check if there is an app installed on the phone, able to handle the event, before launch it
-            if (websiteIntent.resolveActivity(context.getPackageManager()) != null) {
-                // Start the intent
-                context.startActivity(websiteIntent);
-            } else {
-                Toast.makeText(getContext(), "No browser found to open the website.", Toast.LENGTH_SHORT).show();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
             }
 
+            // The sections the user opens rank higher in the feed
+            NewsRanker.getInstance(context).recordOpened(articleNews.getTopic(position));
+
+            // Open the current News in the reader, it can still be opened in a browser there
+            context.startActivity(ReaderActivity.newIntent(context,
+                    articleNews.getUrl(position), articleNews.getTitle(position),
+                    articleNews.getTopic(position), articleNews.getPublicationTime(position)));
         }
     }
 
 
     // Pass in the contact array into the constructor
-    public NewsAdapter(Context context, List<News> newsItems) {
+    public NewsAdapter(Context context, NewsList newsItems, int maxPages) {
         articleContext = context;
         articleNews = newsItems;
+        maxPagesInMemory = maxPages;
+        storyClusters = new StoryClusters();
+        storyClusters.addShown(newsItems);
+        thumbnailLoader = ThumbnailLoader.getInstance(context);
+        thumbnailWidth = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        thumbnailHeight = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
+        frameMonitor = FrameMonitor.getInstance(context);
+    }
+
+    // Pass in the news of a previous adapter and the sizes of their pages, oldest page first
+    public NewsAdapter(Context context, NewsList newsItems, List<Integer> pageSizes,
+                       int maxPages) {
+        this(context, newsItems, maxPages);
+        this.pageSizes.addAll(pageSizes);
+    }
+
+    // Pass in the news, pages and stories of a previous adapter, and the page of its head
+    public NewsAdapter(Context context, NewsList newsItems, List<Integer> pageSizes,
+                       int firstPage, StoryClusters stories, int maxPages) {
+        this(context, newsItems, pageSizes, maxPages);
+        this.firstPage = firstPage;
+        storyClusters = stories;
+    }
+
+    // Returns the number of articles of each page, oldest page first
+    public List<Integer> getPageSizes() {
+        return new ArrayList<>(pageSizes);
+    }
+
+    // Returns the page of the results at the head of the feed, 1 unless it was dropped
+    public int getFirstPage() {
+        return firstPage;
+    }
+
+    // Returns the page of the results at the end of the feed, 0 when there is none
+    public int getLastPage() {
+        return pageSizes.isEmpty() ? 0 : firstPage + pageSizes.size() - 1;
     }
 
-    private Context getContext() {
-        return articleContext;
+    // Returns the stories of the articles shown, with the articles hidden behind them
+    public StoryClusters getStoryClusters() {
+        return storyClusters;
+    }
+
+    // Returns true while news given to the adapter are not shown yet
+    public boolean hasPendingChanges() {
+        return diffPending || !deferredPages.isEmpty();
     }
 
     // Inflating the layout from XML and returning the holder
@@ -102,8 +186,7 @@ public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
 
     @Override
     public void onBindViewHolder(NewsAdapter.ViewHolder viewHolder, int position) {
-
-        News newsItem = articleNews.get(position);
+        long bindStart = System.nanoTime();
 
         // Declaration of the view
         TextView newsTitleTextView = viewHolder.newsTitle;
@@ -111,10 +194,56 @@ public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
         TextView newsPublicationDateTextView = viewHolder.newsPublicationDate;
         TextView newsPublicationTimeTextView = viewHolder.newsPublicationTime;
 
-        newsTitleTextView.setText(newsItem.getTitle());
-        newsTopicTextView.setText(newsItem.getTopic());
-        newsPublicationDateTextView.setText(formatDate(newsItem.getPublicationDate()));
-        newsPublicationTimeTextView.setText(formatTime(newsItem.getPublicationDate()));
+        // The fields are read from the columns of the list, no News is created
+        long publicationTime = articleNews.getPublicationTime(position);
+        newsTitleTextView.setText(articleNews.getTitle(position));
+        newsTopicTextView.setText(articleNews.getTopic(position));
+        newsPublicationDateTextView.setText(PublicationDates.formatDate(publicationTime));
+        newsPublicationTimeTextView.setText(PublicationDates.formatTime(publicationTime));
+
+        // The other articles of the story are counted on its row until they are shown
+        int hiddenCount = storyClusters.getHiddenCount(articleNews.getCompactUrl(position));
+        if (hiddenCount > 0) {
+            viewHolder.newsStoryCount.setText(articleContext.getResources().getQuantityString(
+                    R.plurals.story_more_articles, hiddenCount, hiddenCount));
+            viewHolder.newsStoryCount.setVisibility(View.VISIBLE);
+        } else {
+            viewHolder.newsStoryCount.setVisibility(View.GONE);
+        }
+
+        // The thumbnail is shown once it is loaded, the row is bound without waiting for it
+        String thumbnailUrl = articleNews.getThumbnailUrl(position);
+        if (thumbnailUrl == null) {
+            thumbnailLoader.cancel(viewHolder.newsThumbnail);
+            viewHolder.newsThumbnail.setVisibility(View.GONE);
+        } else {
+            viewHolder.newsThumbnail.setVisibility(View.VISIBLE);
+            thumbnailLoader.load(viewHolder.newsThumbnail, thumbnailUrl,
+                    thumbnailWidth, thumbnailHeight);
+        }
+
+        long bindNanos = System.nanoTime() - bindStart;
+        Metrics.BIND_NANOS.record(bindNanos);
+        frameMonitor.addWork(FrameMonitor.Phase.BIND, bindNanos);
+    }
+
+    // A recycled row no longer needs its thumbnail, nor holds on to its bitmap
+    @Override
+    public void onViewRecycled(NewsAdapter.ViewHolder viewHolder) {
+        thumbnailLoader.cancel(viewHolder.newsThumbnail);
+        viewHolder.newsThumbnail.setImageDrawable(null);
+    }
+
+    // Loads the thumbnails of the rows between from and to, before they are shown
+    public void prefetchThumbnails(int from, int to) {
+        int start = Math.max(0, Math.min(from, to));
+        int end = Math.min(articleNews.size() - 1, Math.max(from, to));
+        for (int position = start; position <= end; position++) {
+            String thumbnailUrl = articleNews.getThumbnailUrl(position);
+            if (thumbnailUrl != null) {
+                thumbnailLoader.prefetch(thumbnailUrl, thumbnailWidth, thumbnailHeight);
+            }
+        }
     }
 
     // Returns the total count of items in the list
@@ -123,51 +252,257 @@ public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
         return articleNews.size();
     }
 
-    // Adds new items to articleNews and refreshes the layout
+    // Replaces articleNews with new items, only the rows that changed are refreshed
     public void addAll(List<News> newsItemList) {
+        final int generation = ++listGeneration;
+        deferredPages.clear();
+        final NewsList newsList = NewsList.copyOf(newsItemList);
+
+        // Nothing to compare with, insert every row right away
+        if (articleNews.isEmpty()) {
+            diffPending = false;
+            storyClusters = new StoryClusters();
+            NewsList newList = storyClusters.add(newsList, null);
+            replaceList(newList);
+            notifyItemRangeInserted(0, newList.size());
+            return;
+        }
+
+        // Group the stories and compare the lists in the background, then dispatch the
+        // minimal updates
+        diffPending = true;
+        final NewsList oldList = NewsList.copyOf(articleNews);
+        final int[] oldHiddenCounts = storyClusters.getHiddenCounts(oldList);
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final StoryClusters newClusters = new StoryClusters();
+                final NewsList newList = newClusters.add(newsList, null);
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new NewsDiffCallback(oldList, oldHiddenCounts, newList,
+                                newClusters.getHiddenCounts(newList)));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer change of the list made this difference useless
+                        if (generation != listGeneration) {
+                            return;
+                        }
+                        diffPending = false;
+                        storyClusters = newClusters;
+                        replaceList(newList);
+                        diffResult.dispatchUpdatesTo(NewsAdapter.this);
+
+                        // Add the pages that arrived in the meantime
+                        List<List<News>> pages = new ArrayList<>(deferredPages);
+                        deferredPages.clear();
+                        for (List<News> page : pages) {
+                            appendPage(page);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void replaceList(NewsList newList) {
         articleNews.clear();
-        articleNews.addAll(newsItemList);
-        notifyDataSetChanged();
+        articleNews.addAll(newList);
+        pageSizes.clear();
+        pageSizes.add(newList.size());
+        firstPage = 1;
+    }
+
+    // Adds the news published since the newest one shown at the head of articleNews, only
+    // the ones not shown yet, and returns how many were added
+    public int prependNews(List<News> newsItemList) {
+        // The list is being replaced, the new one will be refreshed instead. Without its
+        // first page, the head of the feed gets them when it is loaded again.
+        if (diffPending || pageSizes.isEmpty() || firstPage > 1) {
+            return 0;
+        }
+        List<String> grownStoryUrls = new ArrayList<>();
+        NewsList newItems = storyClusters.add(withoutShownNews(newsItemList), grownStoryUrls);
+        notifyStoriesChanged(grownStoryUrls);
+        if (newItems.isEmpty()) {
+            return 0;
+        }
+        listGeneration++;
+        articleNews.addAll(0, newItems);
+        // They belong to the first page, the later pages keep their size
+        pageSizes.addFirst(pageSizes.removeFirst() + newItems.size());
+        notifyItemRangeInserted(0, newItems.size());
+        return newItems.size();
+    }
+
+    // Appends the next page of news at the end of articleNews
+    public void appendPage(List<News> newsItemList) {
+        // Wait for the pending difference, it was computed without this page
+        if (diffPending) {
+            deferredPages.add(newsItemList);
+            return;
+        }
+        // The news added at the head since the previous page pushed some of its news into
+        // this one, they are already shown
+        // Its articles of the stories already shown are hidden behind them
+        List<String> grownStoryUrls = new ArrayList<>();
+        NewsList newItems = storyClusters.add(withoutShownNews(newsItemList), grownStoryUrls);
+        int start = articleNews.size();
+        articleNews.addAll(newItems);
+        pageSizes.add(newItems.size());
+        notifyItemRangeInserted(start, newItems.size());
+        notifyStoriesChanged(grownStoryUrls);
+
+        // Drop the oldest pages so the feed never holds more than maxPagesInMemory pages,
+        // they are loaded again by prependPage when scrolling back to them
+        while (pageSizes.size() > maxPagesInMemory) {
+            int oldestPageSize = pageSizes.removeFirst();
+            firstPage++;
+            storyClusters.remove(articleNews, 0, oldestPageSize);
+            articleNews.subList(0, oldestPageSize).clear();
+            notifyItemRangeRemoved(0, oldestPageSize);
+        }
+    }
+
+    // Adds the page before the first one held at the head of articleNews, after it was
+    // dropped, and drops the last pages to stay within maxPagesInMemory pages
+    public void prependPage(List<News> newsItemList) {
+        // The list is being replaced, or its head is held already
+        if (diffPending || firstPage == 1) {
+            return;
+        }
+        List<String> grownStoryUrls = new ArrayList<>();
+        NewsList newItems = storyClusters.add(withoutShownNews(newsItemList), grownStoryUrls);
+        listGeneration++;
+        articleNews.addAll(0, newItems);
+        pageSizes.addFirst(newItems.size());
+        firstPage--;
+        notifyItemRangeInserted(0, newItems.size());
+        notifyStoriesChanged(grownStoryUrls);
+
+        while (pageSizes.size() > maxPagesInMemory) {
+            int lastPageSize = pageSizes.removeLast();
+            int start = articleNews.size() - lastPageSize;
+            storyClusters.remove(articleNews, start, articleNews.size());
+            articleNews.subList(start, articleNews.size()).clear();
+            notifyItemRangeRemoved(start, lastPageSize);
+        }
+    }
+
+    // Shows the articles hidden behind the row of a story below it
+    private void expandStory(int position) {
+        // The rows are about to be replaced by a new list
+        if (position == RecyclerView.NO_POSITION || diffPending) {
+            return;
+        }
+        NewsList storyNews = storyClusters.expand(articleNews.getCompactUrl(position));
+        if (storyNews.isEmpty()) {
+            return;
+        }
+        listGeneration++;
+        articleNews.addAll(position + 1, storyNews);
+        growPage(position, storyNews.size());
+        notifyItemChanged(position);
+        notifyItemRangeInserted(position + 1, storyNews.size());
+    }
+
+    // Adds the count of articles to the page holding the row at the position
+    private void growPage(int position, int count) {
+        Integer[] sizes = pageSizes.toArray(new Integer[pageSizes.size()]);
+        int pageEnd = 0;
+        for (int page = 0; page < sizes.length; page++) {
+            pageEnd += sizes[page];
+            if (position < pageEnd || page == sizes.length - 1) {
+                sizes[page] += count;
+                break;
+            }
+        }
+        pageSizes.clear();
+        pageSizes.addAll(Arrays.asList(sizes));
+    }
+
+    // Rebinds the rows of the stories whose count of hidden articles changed
+    private void notifyStoriesChanged(List<String> storyUrls) {
+        if (storyUrls.isEmpty()) {
+            return;
+        }
+        Set<String> changed = new HashSet<>(storyUrls);
+        for (int position = 0; position < articleNews.size(); position++) {
+            if (changed.contains(articleNews.getCompactUrl(position))) {
+                notifyItemChanged(position);
+            }
+        }
+    }
+
+    // Returns the news of the list that are not in articleNews, matched by their URL
+    private NewsList withoutShownNews(List<News> newsItemList) {
+        Set<String> shownUrls = new HashSet<>(articleNews.size() * 2);
+        for (int i = 0; i < articleNews.size(); i++) {
+            shownUrls.add(String.valueOf(articleNews.getUrl(i)));
+        }
+        NewsList newItems = new NewsList(newsItemList.size());
+        for (News item : newsItemList) {
+            // The articles hidden behind the row of their story are not shown either
+            if (item.getUrl() == null || (!shownUrls.contains(item.getUrl())
+                    && !storyClusters.contains(item.getCompactUrl()))) {
+                newItems.add(item);
+            }
+        }
+        return newItems;
     }
 
     // Clears articleNews
     public void clearAll() {
+        listGeneration++;
+        diffPending = false;
+        deferredPages.clear();
+        int count = articleNews.size();
         articleNews.clear();
-        notifyDataSetChanged();
-    }
-
-    // Convert JSON webPublicationDate to Date and Time
-    public String formatDate(String completDate){
-        //Remove the last letter "Z" from the webPublicationData
-        completDate = completDate.substring(0, completDate.length() - 1);
-        //Format of the old and new date
-        SimpleDateFormat oldDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-        SimpleDateFormat newDateFormat = new SimpleDateFormat("dd-MM-yyyy");
-        Date date = null;
-        String newDate = "";
-        try {
-            date = oldDateFormat.parse(completDate);
-            newDate = newDateFormat.format(date);
-        } catch (ParseException e) {
-            Log.e(LOG_TAG, "Error creating the Date: " + e);
-        }
-        return newDate;
-    }
-
-    public String formatTime(String completDate){
-        //Remove the last letter "Z" from the webPublicationData
-        completDate = completDate.substring(0, completDate.length() - 1);
-        //Format of the old and new date
-        SimpleDateFormat oldDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-        SimpleDateFormat newDateFormat = new SimpleDateFormat("HH:mm");
-        Date date = null;
-        String newTime = "";
-        try {
-            date = oldDateFormat.parse(completDate);
-            newTime = newDateFormat.format(date);
-        } catch (ParseException e) {
-            Log.e(LOG_TAG, "Error creating the Time: " + e);
-        }
-        return newTime;
-    }
-}
\ No newline at end of file
+        pageSizes.clear();
+        firstPage = 1;
+        storyClusters = new StoryClusters();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    /**
+     * Compares two lists of {@link News}: rows are the same article when their URLs match,
+     * and only need to be rebound when one of their fields or the count of articles hidden
+     * behind them changed.
+     */
+    private static class NewsDiffCallback extends DiffUtil.Callback {
+
+        private final NewsList oldList;
+        private final int[] oldHiddenCounts;
+        private final NewsList newList;
+        private final int[] newHiddenCounts;
+
+        NewsDiffCallback(NewsList oldList, int[] oldHiddenCounts, NewsList newList,
+                         int[] newHiddenCounts) {
+            this.oldList = oldList;
+            this.oldHiddenCounts = oldHiddenCounts;
+            this.newList = newList;
+            this.newHiddenCounts = newHiddenCounts;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldList.isSameArticle(oldItemPosition, newList, newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldList.isSameContent(oldItemPosition, newList, newItemPosition)
+                    && oldHiddenCounts[oldItemPosition] == newHiddenCounts[newItemPosition];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.kikisnight.newstheguardian;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the local store of the news fetched by the app.
+ */
+public final class NewsContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsContract}
+     * object.
+     */
+    private NewsContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the articles database table.
+     * Each entry in the table represents a single article.
+     */
+    public static final class ArticleEntry implements BaseColumns {
+
+        /** Name of database table for articles */
+        public static final String TABLE_NAME = "articles";
+
+        /** Full-text index of the articles, kept in sync with the table by triggers */
+        public static final String FTS_TABLE_NAME = "articles_fts";
+
+        /**
+         * Unique ID number for the article (only for use in the database table).
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Website URL of the article, which identifies it.
+         * Type: TEXT
+         */
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Title of the article.
+         * Type: TEXT
+         */
+        public static final String COLUMN_TITLE = "title";
+
+        /**
+         * Section (topic) of the article.
+         * Type: TEXT
+         */
+        public static final String COLUMN_SECTION = "section";
+
+        /**
+         * Publication time in milliseconds from the Epoch.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PUBLISHED = "published";
+
+        /**
+         * Short summary of the article, if it was fetched.
+         * Type: TEXT
+         */
+        public static final String COLUMN_TRAIL_TEXT = "trail_text";
+
+        /**
+         * URL of the thumbnail of the article, if it was fetched.
+         * Type: TEXT
+         */
+        public static final String COLUMN_THUMBNAIL = "thumbnail";
+    }
+
+    /**
+     * Inner class that defines constant values for the article bodies database table.
+     * Each entry in the table is the body of a single article, read by the
+     * {@link ReaderActivity}. It is kept apart from the articles table so the feed and the
+     * full-text index never read it.
+     */
+    public static final class BodyEntry {
+
+        /** Name of database table for article bodies */
+        public static final String TABLE_NAME = "article_bodies";
+
+        /**
+         * Website URL of the article, as in {@link ArticleEntry#COLUMN_URL}.
+         * Type: TEXT
+         */
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Body of the article in HTML, compressed by {@link ArticleBodies#compress(String)}.
+         * Type: BLOB
+         */
+        public static final String COLUMN_BODY = "body";
+
+        /**
+         * Time in milliseconds from the Epoch when the body was fetched.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_FETCHED = "fetched";
+    }
+}
@@ -0,0 +1,119 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.kikisnight.newstheguardian.NewsContract.ArticleEntry;
+import com.kikisnight.newstheguardian.NewsContract.BodyEntry;
+
+/**
+ * Database helper for the local store of articles. Manages database creation and version
+ * management.
+ */
+public class NewsDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "news.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database
+     * version.
+     */
+    private static final int DATABASE_VERSION = 3;
+
+    /**
+     * Constructs a new instance of {@link NewsDbHelper}.
+     *
+     * @param context of the app
+     */
+    public NewsDbHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link NewsDbHelper} on another database file.
+     *
+     * @param context of the app
+     * @param name of the database file, or null for a database in memory
+     */
+    NewsDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Create a String that contains the SQL statement to create the articles table
+        String SQL_CREATE_ARTICLES_TABLE = "CREATE TABLE " + ArticleEntry.TABLE_NAME + " ("
+                + ArticleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ArticleEntry.COLUMN_URL + " TEXT NOT NULL UNIQUE, "
+                + ArticleEntry.COLUMN_TITLE + " TEXT, "
+                + ArticleEntry.COLUMN_SECTION + " TEXT, "
+                + ArticleEntry.COLUMN_PUBLISHED + " INTEGER NOT NULL, "
+                + ArticleEntry.COLUMN_TRAIL_TEXT + " TEXT, "
+                + ArticleEntry.COLUMN_THUMBNAIL + " TEXT);";
+        db.execSQL(SQL_CREATE_ARTICLES_TABLE);
+
+        // The newest articles are the ones shown first
+        db.execSQL("CREATE INDEX " + ArticleEntry.TABLE_NAME + "_published ON "
+                + ArticleEntry.TABLE_NAME + " (" + ArticleEntry.COLUMN_PUBLISHED + " DESC);");
+
+        // Full-text index using the articles table as its content, so the text is not
+        // stored twice
+        db.execSQL("CREATE VIRTUAL TABLE " + ArticleEntry.FTS_TABLE_NAME + " USING fts4("
+                + "content=\"" + ArticleEntry.TABLE_NAME + "\", "
+                + ArticleEntry.COLUMN_TITLE + ", "
+                + ArticleEntry.COLUMN_SECTION + ", "
+                + ArticleEntry.COLUMN_TRAIL_TEXT + ");");
+
+        // Keep the full-text index in sync with the articles table
+        String ftsColumns = "docid, " + ArticleEntry.COLUMN_TITLE + ", "
+                + ArticleEntry.COLUMN_SECTION + ", " + ArticleEntry.COLUMN_TRAIL_TEXT;
+        String newValues = "new." + ArticleEntry._ID + ", new." + ArticleEntry.COLUMN_TITLE
+                + ", new." + ArticleEntry.COLUMN_SECTION + ", new."
+                + ArticleEntry.COLUMN_TRAIL_TEXT;
+        String deleteOld = "DELETE FROM " + ArticleEntry.FTS_TABLE_NAME
+                + " WHERE docid = old." + ArticleEntry._ID + ";";
+        String insertNew = "INSERT INTO " + ArticleEntry.FTS_TABLE_NAME + " (" + ftsColumns
+                + ") VALUES (" + newValues + ");";
+        db.execSQL("CREATE TRIGGER " + ArticleEntry.TABLE_NAME + "_bu BEFORE UPDATE ON "
+                + ArticleEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + ArticleEntry.TABLE_NAME + "_bd BEFORE DELETE ON "
+                + ArticleEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + ArticleEntry.TABLE_NAME + "_au AFTER UPDATE ON "
+                + ArticleEntry.TABLE_NAME + " BEGIN " + insertNew + " END;");
+        db.execSQL("CREATE TRIGGER " + ArticleEntry.TABLE_NAME + "_ai AFTER INSERT ON "
+                + ArticleEntry.TABLE_NAME + " BEGIN " + insertNew + " END;");
+
+        createBodiesTable(db);
+    }
+
+    /**
+     * Creates the table of the article bodies, added in version 3.
+     */
+    private static void createBodiesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + BodyEntry.TABLE_NAME + " ("
+                + BodyEntry.COLUMN_URL + " TEXT PRIMARY KEY, "
+                + BodyEntry.COLUMN_BODY + " BLOB NOT NULL, "
+                + BodyEntry.COLUMN_FETCHED + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * This is called when the database needs to be upgraded.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Version 2 stores the thumbnails, the articles stored before have none
+            db.execSQL("ALTER TABLE " + ArticleEntry.TABLE_NAME + " ADD COLUMN "
+                    + ArticleEntry.COLUMN_THUMBNAIL + " TEXT;");
+        }
+        if (oldVersion < 3) {
+            // Version 3 stores the bodies of the articles for the reader
+            createBodiesTable(db);
+        }
+    }
+}
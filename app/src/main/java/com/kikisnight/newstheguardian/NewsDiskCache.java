@@ -0,0 +1,353 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link NewsDiskCache} keeps the parsed result of every search on disk, keyed by the
+ * normalized request URL, together with the ETag and Last-Modified validators of the response.
+ * Entries are stored in a compact binary form and the least recently used ones are deleted
+ * once the cache grows over its size limit.
+ */
+public final class NewsDiskCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsDiskCache.class.getName();
+
+    /** Name of the folder inside the app cache directory */
+    private static final String CACHE_DIRECTORY = "news";
+
+    /** Default size limit of the cache, in bytes */
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    /** Version of the binary format, entries written with another version are ignored */
+    private static final int FORMAT_VERSION = 4;
+
+    private static final String FILE_EXTENSION = ".news";
+
+    private static NewsDiskCache sInstance;
+
+    private final File cacheDirectory;
+    private final long maxBytes;
+
+    /**
+     * Returns the cache shared by the whole app, stored in the app cache directory.
+     */
+    public static synchronized NewsDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY);
+            sInstance = new NewsDiskCache(directory, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsDiskCache}.
+     *
+     * @param directory where the entries are written
+     * @param maxBytes is the size over which least recently used entries are evicted
+     */
+    public NewsDiskCache(File directory, long maxBytes) {
+        cacheDirectory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached entry for the given request URL, or null if there is none. Only its
+     * validators are read, its news are decoded by the first call to {@link Entry#getNews()}
+     * since most requests are answered with new results anyway.
+     */
+    public synchronized Entry get(String requestUrl) {
+        File file = fileFor(requestUrl);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String etag = readNullableString(input);
+            String lastModified = readNullableString(input);
+            // Reading an entry makes it the most recently used one
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(etag, lastModified, this, requestUrl);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached news.", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Returns the news of the entry of the given request URL, or null if it was replaced by
+     * one with other validators or could not be read.
+     */
+    private synchronized NewsList readNews(String requestUrl, String etag, String lastModified) {
+        File file = fileFor(requestUrl);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION
+                    || !Objects.equals(etag, readNullableString(input))
+                    || !Objects.equals(lastModified, readNullableString(input))) {
+                return null;
+            }
+            int count = input.readInt();
+            NewsList news = new NewsList(count);
+            for (int i = 0; i < count; i++) {
+                news.add(readNullableString(input), readNullableString(input),
+                        input.readLong(), readNullableString(input), readNullableString(input),
+                        readNullableString(input));
+            }
+            return news;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached news.", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Stores the entry for the given request URL and evicts old entries if needed.
+     */
+    public synchronized void put(String requestUrl, Entry entry) {
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create the cache directory " + cacheDirectory);
+            return;
+        }
+
+        File file = fileFor(requestUrl);
+        File temporaryFile = new File(cacheDirectory, file.getName() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile)));
+            output.writeInt(FORMAT_VERSION);
+            writeNullableString(output, entry.getEtag());
+            writeNullableString(output, entry.getLastModified());
+            List<News> news = entry.getNews();
+            output.writeInt(news.size());
+            for (News item : news) {
+                writeNullableString(output, item.getTitle());
+                writeNullableString(output, item.getTopic());
+                output.writeLong(item.getPublicationTime());
+                writeNullableString(output, item.getUrl());
+                writeNullableString(output, item.getTrailText());
+                writeNullableString(output, item.getThumbnailUrl());
+            }
+            output.close();
+            output = null;
+
+            // Replace the old entry only once the new one is complete
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the news to the cache.", e);
+            temporaryFile.delete();
+            return;
+        } finally {
+            closeQuietly(output);
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Marks the entry of the given request URL as the most recently used one.
+     */
+    public synchronized void touch(String requestUrl) {
+        File file = fileFor(requestUrl);
+        if (file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its size limit.
+     */
+    private void trimToSize() {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+
+        List<File> oldestFirst = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(oldestFirst, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (File file : oldestFirst) {
+            if (size <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileFor(String requestUrl) {
+        return new File(cacheDirectory, hash(normalizeUrl(requestUrl)) + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the URL with its query parameters sorted, so the same search always maps to
+     * the same entry whatever the order the parameters were appended in.
+     */
+    static String normalizeUrl(String requestUrl) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            return requestUrl;
+        }
+        String[] parameters = requestUrl.substring(queryStart + 1).split("&");
+        Arrays.sort(parameters);
+        StringBuilder normalized = new StringBuilder(requestUrl.length());
+        normalized.append(requestUrl, 0, queryStart);
+        char separator = '?';
+        for (String parameter : parameters) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            normalized.append(separator).append(parameter);
+            separator = '&';
+        }
+        return normalized.toString();
+    }
+
+    static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are always available, fall back on the hash code anyway
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream output, String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing the cache file", e);
+            }
+        }
+    }
+
+    /**
+     * {@link Entry} is a cached list of news with the validators of the response it came from.
+     */
+    public static final class Entry {
+
+        private final String entryEtag;
+        private final String entryLastModified;
+        private List<News> entryNews;
+
+        /** Cache and request URL the news are decoded from, null once they are */
+        private NewsDiskCache entryCache;
+        private String entryRequestUrl;
+
+        /**
+         * Constructs a new {@link Entry}.
+         *
+         * @param etag is the ETag header of the response, or null
+         * @param lastModified is the Last-Modified header of the response, or null
+         * @param news is the list of news parsed from the response
+         */
+        public Entry(String etag, String lastModified, List<News> news) {
+            entryEtag = etag;
+            entryLastModified = lastModified;
+            entryNews = news;
+        }
+
+        private Entry(String etag, String lastModified, NewsDiskCache cache,
+                      String requestUrl) {
+            entryEtag = etag;
+            entryLastModified = lastModified;
+            entryCache = cache;
+            entryRequestUrl = requestUrl;
+        }
+
+        public String getEtag() {
+            return entryEtag;
+        }
+
+        public String getLastModified() {
+            return entryLastModified;
+        }
+
+        /**
+         * Returns the news of the entry, decoding them from the cache on the first call. Returns
+         * null if the entry was evicted or replaced since it was read.
+         */
+        public List<News> getNews() {
+            if (entryCache != null) {
+                entryNews = entryCache.readNews(entryRequestUrl, entryEtag, entryLastModified);
+                entryCache = null;
+                entryRequestUrl = null;
+            }
+            return entryNews;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.kikisnight.newstheguardian;
+
+import android.os.Process;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link NewsExecutor} runs the loads of the app on a pool of a few background threads. The
+ * queued tasks are ordered by {@link Priority}, so the query the user is looking at never
+ * waits behind revalidations or a background sync, and in submission order otherwise.
+ */
+public final class NewsExecutor {
+
+    /** The pool is sized for requests waiting on the network, not for computations */
+    private static final int MIN_THREADS = 2;
+    private static final int MAX_THREADS = 4;
+
+    /** Time after which the idle threads are released */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Priority of a task, the first ones run first.
+     */
+    public enum Priority {
+        /** The query shown on the screen */
+        VISIBLE,
+        /** Work the user is not waiting for */
+        BACKGROUND
+    }
+
+    private static NewsExecutor sInstance;
+
+    private final ThreadPoolExecutor executor;
+
+    /** Orders the tasks of a same priority by submission */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Returns the executor shared by the whole app.
+     */
+    public static synchronized NewsExecutor getInstance() {
+        if (sInstance == null) {
+            int threads = Math.max(MIN_THREADS,
+                    Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            sInstance = new NewsExecutor(threads);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsExecutor}.
+     *
+     * @param threads is the number of tasks run at the same time
+     */
+    public NewsExecutor(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Leave the main thread the CPU it needs to draw
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "News #" + threadCount.incrementAndGet());
+            }
+        };
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the task with the given priority. Cancelling the returned future skips the task
+     * if it did not start yet, and interrupts it otherwise if asked to.
+     */
+    public Future<?> submit(Priority priority, Runnable task) {
+        PrioritizedTask prioritizedTask =
+                new PrioritizedTask(task, priority, sequence.getAndIncrement());
+        executor.execute(prioritizedTask);
+        return prioritizedTask;
+    }
+
+    /**
+     * Returns an {@link Executor} queuing its tasks with the given priority.
+     */
+    public Executor asExecutor(final Priority priority) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                submit(priority, task);
+            }
+        };
+    }
+
+    /**
+     * {@link PrioritizedTask} is a task of the queue, compared by priority then sequence.
+     */
+    private static final class PrioritizedTask extends FutureTask<Void>
+            implements Comparable<PrioritizedTask> {
+
+        private final Priority priority;
+        private final long sequence;
+
+        PrioritizedTask(Runnable task, Priority priority, long sequence) {
+            super(task, null);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return priority.ordinal() < other.priority.ordinal() ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+        }
+    }
+}
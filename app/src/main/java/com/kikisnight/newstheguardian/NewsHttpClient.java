@@ -0,0 +1,318 @@
+package com.kikisnight.newstheguardian;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link NewsHttpClient} performs the GET requests of the app. Connections are kept alive and
+ * returned to the pool of the platform once a response is closed, instead of being
+ * disconnected, so back-to-back requests to The Guardian API skip the TCP and TLS handshakes.
+ * Responses are requested gzip compressed and decompressed while they are read.
+ * The bytes of the bodies received by each thread are counted, before decompression, and
+ * the phases of every request are timed in {@link Metrics}.
+ */
+public final class NewsHttpClient {
+
+    /** Default timeouts of a request, in milliseconds */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    /** Number of idle connections kept alive for each host */
+    private static final String MAX_IDLE_CONNECTIONS = "5";
+
+    /** Largest remainder of a body read on close to let its connection be reused */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    /** Bytes of the response bodies received by each thread, and the time reading them */
+    private static final ThreadLocal<long[]> RECEIVED = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+    private static final int RECEIVED_BYTES = 0;
+    private static final int RECEIVED_NANOS = 1;
+
+    private static NewsHttpClient sInstance;
+
+    private volatile int connectTimeoutMillis;
+    private volatile int readTimeoutMillis;
+
+    /**
+     * Returns the client shared by the whole app.
+     */
+    public static synchronized NewsHttpClient getInstance() {
+        if (sInstance == null) {
+            // Both are the defaults of the platform, make sure nothing turned them off
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", MAX_IDLE_CONNECTIONS);
+            sInstance = new NewsHttpClient(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsHttpClient}.
+     *
+     * @param connectTimeoutMillis is the time allowed to open a connection
+     * @param readTimeoutMillis is the time allowed between two reads of a response
+     */
+    public NewsHttpClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        setTimeouts(connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * Changes the timeouts of the next requests.
+     */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Returns the number of bytes of response bodies received so far by the calling thread,
+     * as they came over the network.
+     */
+    public static long getBytesReceivedOnThisThread() {
+        return RECEIVED.get()[RECEIVED_BYTES];
+    }
+
+    /**
+     * Returns the time spent so far by the calling thread waiting for the bytes of response
+     * bodies, in nanoseconds.
+     */
+    public static long getReadNanosOnThisThread() {
+        return RECEIVED.get()[RECEIVED_NANOS];
+    }
+
+    /**
+     * Sends a GET request to the URL and returns its response, which must be closed.
+     *
+     * @param url to request
+     * @param headers are additional request headers, or null
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        return get(url, headers, null);
+    }
+
+    /**
+     * Sends a GET request to the URL and returns its response, which must be closed.
+     * Canceling the token disconnects the request wherever it is, so its socket is closed
+     * and reading its body fails right away.
+     *
+     * @param url to request
+     * @param headers are additional request headers, or null
+     * @param cancellation aborts the request, or null
+     */
+    public Response get(URL url, Map<String, String> headers, CancellationToken cancellation)
+            throws IOException {
+        if (cancellation != null) {
+            cancellation.throwIfCanceled();
+        }
+
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setReadTimeout(readTimeoutMillis);
+        urlConnection.setConnectTimeout(connectTimeoutMillis);
+        urlConnection.setRequestMethod("GET");
+        // Asking for gzip explicitly means the body has to be decompressed here
+        urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        Runnable abort = null;
+        if (cancellation != null) {
+            abort = new Runnable() {
+                @Override
+                public void run() {
+                    urlConnection.disconnect();
+                }
+            };
+            cancellation.addAbortAction(abort);
+        }
+        try {
+            // A connection kept alive from a previous request connects at once
+            long connectStart = System.nanoTime();
+            urlConnection.connect();
+            Metrics.HTTP_CONNECT_NANOS.recordSince(connectStart);
+
+            long requestStart = System.nanoTime();
+            int responseCode = urlConnection.getResponseCode();
+            long ttfbNanos = System.nanoTime() - requestStart;
+            Metrics.HTTP_TTFB_NANOS.record(ttfbNanos);
+            return new Response(urlConnection, responseCode, ttfbNanos, cancellation, abort);
+        } catch (IOException e) {
+            Metrics.HTTP_FAILURES.increment();
+            // The connection is in an unknown state, it must not be reused
+            urlConnection.disconnect();
+            if (cancellation != null) {
+                cancellation.removeAbortAction(abort);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * {@link Response} is the status, headers and body of a request.
+     */
+    public static final class Response implements Closeable {
+
+        private final HttpURLConnection urlConnection;
+        private final int responseCode;
+        private final long ttfbNanos;
+        private final CancellationToken cancellation;
+        private final Runnable abort;
+        private CountingInputStream rawBody;
+        private InputStream body;
+
+        Response(HttpURLConnection urlConnection, int responseCode, long ttfbNanos,
+                 CancellationToken cancellation, Runnable abort) {
+            this.urlConnection = urlConnection;
+            this.responseCode = responseCode;
+            this.ttfbNanos = ttfbNanos;
+            this.cancellation = cancellation;
+            this.abort = abort;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        /**
+         * Returns the value of the response header, or null if there is none.
+         */
+        public String getHeader(String name) {
+            return urlConnection.getHeaderField(name);
+        }
+
+        /**
+         * Returns the decompressed body of the response, which is read as it arrives.
+         */
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                rawBody = openRawBody();
+                body = ENCODING_GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())
+                        ? new GZIPInputStream(rawBody) : rawBody;
+            }
+            return body;
+        }
+
+        private CountingInputStream openRawBody() throws IOException {
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                InputStream errorStream = urlConnection.getErrorStream();
+                if (errorStream != null) {
+                    return new CountingInputStream(errorStream);
+                }
+            }
+            return new CountingInputStream(urlConnection.getInputStream());
+        }
+
+        /**
+         * Reads what is left of the body and closes it, so the connection goes back to the
+         * pool. Only a connection whose body can not be drained is disconnected.
+         */
+        @Override
+        public void close() {
+            try {
+                closeBody();
+            } finally {
+                if (rawBody != null) {
+                    Metrics.HTTP_BODY_READ_NANOS.record(rawBody.nanos);
+                    Metrics.HTTP_BODY_BYTES.record(rawBody.bytes);
+                }
+                // A canceled body was not read to its end, it says nothing of the network
+                if (cancellation == null || !cancellation.isCanceled()) {
+                    NetworkQualityEstimator.getInstance().onResponse(ttfbNanos,
+                            rawBody != null ? rawBody.bytes : 0,
+                            rawBody != null ? rawBody.nanos : 0);
+                }
+            }
+        }
+
+        private void closeBody() {
+            if (cancellation != null) {
+                cancellation.removeAbortAction(abort);
+                if (cancellation.isCanceled()) {
+                    // Already disconnected, there is nothing left to drain
+                    urlConnection.disconnect();
+                    return;
+                }
+            }
+            try {
+                if (rawBody == null) {
+                    rawBody = openRawBody();
+                }
+                byte[] buffer = new byte[8192];
+                int drained = 0;
+                int read;
+                while (drained < MAX_DRAIN_BYTES && (read = rawBody.read(buffer)) != -1) {
+                    drained += read;
+                }
+                if (drained >= MAX_DRAIN_BYTES) {
+                    urlConnection.disconnect();
+                }
+                rawBody.close();
+            } catch (IOException e) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * {@link CountingInputStream} counts the bytes read from a body and the time waiting for
+     * them, for the body and for the reading thread.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long bytes;
+        long nanos;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            count(b != -1 ? 1 : 0, System.nanoTime() - start);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            count(Math.max(read, 0), System.nanoTime() - start);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long start = System.nanoTime();
+            long skipped = super.skip(count);
+            count(Math.max(skipped, 0), System.nanoTime() - start);
+            return skipped;
+        }
+
+        private void count(long read, long elapsedNanos) {
+            bytes += read;
+            nanos += elapsedNanos;
+            long[] received = RECEIVED.get();
+            received[RECEIVED_BYTES] += read;
+            received[RECEIVED_NANOS] += elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@link NewsList} is a list of {@link News} stored column by column in arrays, one for each
+ * field, so a feed costs no object per article. The fields of an article can be read by its
+ * index without creating it, which is how the adapter binds its rows; {@link #get(int)}
+ * creates a new {@link News} every time. The MinHash signature of every title is computed
+ * when the article is added and kept in a column too, for the {@link StoryClusters}.
+ * A read-only copy keeps the columns and the signatures, so it can be shared by the caches
+ * and still be copied without creating a {@link News} for each article.
+ */
+public final class NewsList extends AbstractList<News> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private String[] articleTitles;
+    private int[] articleSectionIds;
+    private long[] articleTimes;
+    private String[] articleCompactUrls;
+    private String[] articleTrailTexts;
+    private String[] articleCompactThumbnailUrls;
+    private long[] articleTitleSignatures;
+    private int articleCount;
+
+    /** True if the list can not be changed, see {@link #readOnlyCopyOf(Collection)} */
+    private boolean articleReadOnly;
+
+    /**
+     * Constructs a new empty {@link NewsList}.
+     */
+    public NewsList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new empty {@link NewsList} holding up to the given number of news before
+     * it grows.
+     */
+    public NewsList(int capacity) {
+        articleTitles = new String[capacity];
+        articleSectionIds = new int[capacity];
+        articleTimes = new long[capacity];
+        articleCompactUrls = new String[capacity];
+        articleTrailTexts = new String[capacity];
+        articleCompactThumbnailUrls = new String[capacity];
+        articleTitleSignatures = new long[capacity];
+    }
+
+    /**
+     * Returns the news as a {@link NewsList}, copying the columns directly if they already
+     * are one.
+     */
+    public static NewsList copyOf(Collection<News> news) {
+        NewsList copy = new NewsList(Math.max(news.size(), DEFAULT_CAPACITY));
+        copy.addAll(news);
+        return copy;
+    }
+
+    /**
+     * Returns the news from the index, inclusive, to the other, exclusive, as a new
+     * {@link NewsList}, copying their columns directly.
+     */
+    public static NewsList copyOf(NewsList news, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > news.articleCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex
+                    + ", Size: " + news.articleCount);
+        }
+        int count = toIndex - fromIndex;
+        NewsList copy = new NewsList(Math.max(count, DEFAULT_CAPACITY));
+        System.arraycopy(news.articleTitles, fromIndex, copy.articleTitles, 0, count);
+        System.arraycopy(news.articleSectionIds, fromIndex, copy.articleSectionIds, 0, count);
+        System.arraycopy(news.articleTimes, fromIndex, copy.articleTimes, 0, count);
+        System.arraycopy(news.articleCompactUrls, fromIndex, copy.articleCompactUrls, 0, count);
+        System.arraycopy(news.articleTrailTexts, fromIndex, copy.articleTrailTexts, 0, count);
+        System.arraycopy(news.articleCompactThumbnailUrls, fromIndex,
+                copy.articleCompactThumbnailUrls, 0, count);
+        System.arraycopy(news.articleTitleSignatures, fromIndex, copy.articleTitleSignatures,
+                0, count);
+        copy.articleCount = count;
+        return copy;
+    }
+
+    /**
+     * Returns the news as a {@link NewsList} that can not be changed, whose methods changing
+     * it throw {@link UnsupportedOperationException}. The copy has no unused capacity.
+     */
+    public static NewsList readOnlyCopyOf(Collection<News> news) {
+        NewsList copy = new NewsList(news.size());
+        copy.addAll(news);
+        copy.articleReadOnly = true;
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return articleCount;
+    }
+
+    @Override
+    public News get(int index) {
+        checkIndex(index);
+        return new News(articleTitles[index], articleSectionIds[index], articleTimes[index],
+                articleCompactUrls[index], articleTrailTexts[index],
+                articleCompactThumbnailUrls[index]);
+    }
+
+    /**
+     * Returns the title of the news at the index.
+     */
+    public String getTitle(int index) {
+        checkIndex(index);
+        return articleTitles[index];
+    }
+
+    /**
+     * Returns the topic of the news at the index.
+     */
+    public String getTopic(int index) {
+        checkIndex(index);
+        return NewsSections.nameOf(articleSectionIds[index]);
+    }
+
+    /**
+     * Returns the publication time of the news at the index, or
+     * {@link PublicationDates#NO_DATE}.
+     */
+    public long getPublicationTime(int index) {
+        checkIndex(index);
+        return articleTimes[index];
+    }
+
+    /**
+     * Returns the URL of the news at the index.
+     */
+    public String getUrl(int index) {
+        checkIndex(index);
+        return News.expandUrl(articleCompactUrls[index]);
+    }
+
+    /**
+     * Returns the URL of the news at the index as returned by {@link News#compactUrl(String)},
+     * without creating the complete one.
+     */
+    String getCompactUrl(int index) {
+        checkIndex(index);
+        return articleCompactUrls[index];
+    }
+
+    /**
+     * Returns the MinHash signature of the title of the news at the index, as returned by
+     * {@link StoryClusters#sign(String)}.
+     */
+    long getTitleSignature(int index) {
+        checkIndex(index);
+        return articleTitleSignatures[index];
+    }
+
+    /**
+     * Returns the trail text of the news at the index, or null.
+     */
+    public String getTrailText(int index) {
+        checkIndex(index);
+        return articleTrailTexts[index];
+    }
+
+    /**
+     * Returns the thumbnail URL of the news at the index, or null.
+     */
+    public String getThumbnailUrl(int index) {
+        checkIndex(index);
+        return News.expandThumbnailUrl(articleCompactThumbnailUrls[index]);
+    }
+
+    /**
+     * Returns true if the news at the index is the same article as the news at the other
+     * index of the other list, like {@link News#isSameArticle(News)}.
+     */
+    public boolean isSameArticle(int index, NewsList other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        return Objects.equals(articleCompactUrls[index], other.articleCompactUrls[otherIndex]);
+    }
+
+    /**
+     * Returns true if the news at the index equals the news at the other index of the other
+     * list, like {@link News#equals(Object)}.
+     */
+    public boolean isSameContent(int index, NewsList other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        return Objects.equals(articleTitles[index], other.articleTitles[otherIndex])
+                && articleSectionIds[index] == other.articleSectionIds[otherIndex]
+                && articleTimes[index] == other.articleTimes[otherIndex]
+                && Objects.equals(articleCompactUrls[index],
+                        other.articleCompactUrls[otherIndex])
+                && Objects.equals(articleTrailTexts[index], other.articleTrailTexts[otherIndex])
+                && Objects.equals(articleCompactThumbnailUrls[index],
+                        other.articleCompactThumbnailUrls[otherIndex]);
+    }
+
+    /**
+     * Returns a new list of the news whose title, topic or trail text has a word starting
+     * with each of the words, like a search of the {@link NewsStore}.
+     *
+     * @param words are lower case words, as returned by {@link NewsStore#toWords(String)}
+     */
+    public NewsList filter(List<String> words) {
+        NewsList matches = new NewsList(Math.max(articleCount, DEFAULT_CAPACITY));
+        for (int i = 0; i < articleCount; i++) {
+            boolean matchesEveryWord = true;
+            for (String word : words) {
+                if (!hasWordStartingWith(articleTitles[i], word)
+                        && !hasWordStartingWith(NewsSections.nameOf(articleSectionIds[i]), word)
+                        && !hasWordStartingWith(articleTrailTexts[i], word)) {
+                    matchesEveryWord = false;
+                    break;
+                }
+            }
+            if (matchesEveryWord) {
+                matches.addFrom(this, i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns true if a word of the text starts with the prefix, ignoring the case.
+     */
+    private static boolean hasWordStartingWith(String text, String prefix) {
+        if (text == null) {
+            return false;
+        }
+        int length = text.length();
+        for (int i = 0; i + prefix.length() <= length; i++) {
+            boolean wordStart = i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1));
+            if (wordStart && text.regionMatches(true, i, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void add(int index, News news) {
+        checkWritable();
+        if (index < 0 || index > articleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + articleCount);
+        }
+        ensureCapacity(articleCount + 1);
+        if (index < articleCount) {
+            shift(index, index + 1, articleCount - index);
+        }
+        set(index, news.getTitle(), news.getSectionId(), news.getPublicationTime(),
+                news.getCompactUrl(), news.getTrailText(), news.getCompactThumbnailUrl());
+        signTitle(index);
+        articleCount++;
+        modCount++;
+    }
+
+    /**
+     * Adds a news at the end of the list without creating a {@link News} for it.
+     *
+     * @param title is the tittle of the article on the news
+     * @param topic is the topic of the news
+     * @param time is the time in milliseconds (from the Epoch) when the
+     *  news was published, or {@link PublicationDates#NO_DATE}
+     * @param url is the website URL to find complet the news
+     * @param trailText is the short summary of the news, or null
+     */
+    public void add(String title, String topic, long time, String url, String trailText) {
+        add(title, topic, time, url, trailText, null);
+    }
+
+    /**
+     * Adds a news with its thumbnail at the end of the list without creating a
+     * {@link News} for it.
+     *
+     * @param title is the tittle of the article on the news
+     * @param topic is the topic of the news
+     * @param time is the time in milliseconds (from the Epoch) when the
+     *  news was published, or {@link PublicationDates#NO_DATE}
+     * @param url is the website URL to find complet the news
+     * @param trailText is the short summary of the news, or null
+     * @param thumbnailUrl is the URL of the image of the news, or null
+     */
+    public void add(String title, String topic, long time, String url, String trailText,
+                    String thumbnailUrl) {
+        checkWritable();
+        ensureCapacity(articleCount + 1);
+        set(articleCount, title, NewsSections.idOf(topic), time, News.compactUrl(url),
+                trailText, News.compactThumbnailUrl(thumbnailUrl));
+        signTitle(articleCount);
+        articleCount++;
+        modCount++;
+    }
+
+    /**
+     * Adds the news at the index of another list at the end of this one, without creating
+     * a {@link News} for it.
+     */
+    void addFrom(NewsList source, int index) {
+        checkWritable();
+        source.checkIndex(index);
+        ensureCapacity(articleCount + 1);
+        set(articleCount, source.articleTitles[index], source.articleSectionIds[index],
+                source.articleTimes[index], source.articleCompactUrls[index],
+                source.articleTrailTexts[index], source.articleCompactThumbnailUrls[index]);
+        articleTitleSignatures[articleCount] = source.articleTitleSignatures[index];
+        articleCount++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends News> news) {
+        checkWritable();
+        if (!(news instanceof NewsList)) {
+            return super.addAll(news);
+        }
+        NewsList other = (NewsList) news;
+        int count = other.articleCount;
+        ensureCapacity(articleCount + count);
+        System.arraycopy(other.articleTitles, 0, articleTitles, articleCount, count);
+        System.arraycopy(other.articleSectionIds, 0, articleSectionIds, articleCount, count);
+        System.arraycopy(other.articleTimes, 0, articleTimes, articleCount, count);
+        System.arraycopy(other.articleCompactUrls, 0, articleCompactUrls, articleCount, count);
+        System.arraycopy(other.articleTrailTexts, 0, articleTrailTexts, articleCount, count);
+        System.arraycopy(other.articleCompactThumbnailUrls, 0, articleCompactThumbnailUrls,
+                articleCount, count);
+        System.arraycopy(other.articleTitleSignatures, 0, articleTitleSignatures, articleCount,
+                count);
+        articleCount += count;
+        modCount++;
+        return count > 0;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends News> news) {
+        checkWritable();
+        if (index < 0 || index > articleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + articleCount);
+        }
+        // Shift the following news once for all of them, not once for each
+        int count = news.size();
+        ensureCapacity(articleCount + count);
+        if (index < articleCount) {
+            shift(index, index + count, articleCount - index);
+        }
+        for (News item : news) {
+            set(index, item.getTitle(), item.getSectionId(), item.getPublicationTime(),
+                    item.getCompactUrl(), item.getTrailText(), item.getCompactThumbnailUrl());
+            signTitle(index++);
+        }
+        articleCount += count;
+        modCount++;
+        return count > 0;
+    }
+
+    @Override
+    public News set(int index, News news) {
+        checkWritable();
+        News previous = get(index);
+        set(index, news.getTitle(), news.getSectionId(), news.getPublicationTime(),
+                news.getCompactUrl(), news.getTrailText(), news.getCompactThumbnailUrl());
+        signTitle(index);
+        return previous;
+    }
+
+    @Override
+    public News remove(int index) {
+        News removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, articleCount);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        checkWritable();
+        int moved = articleCount - toIndex;
+        shift(toIndex, fromIndex, moved);
+        int newCount = articleCount - (toIndex - fromIndex);
+        // Let the strings of the removed news be collected
+        Arrays.fill(articleTitles, newCount, articleCount, null);
+        Arrays.fill(articleCompactUrls, newCount, articleCount, null);
+        Arrays.fill(articleTrailTexts, newCount, articleCount, null);
+        Arrays.fill(articleCompactThumbnailUrls, newCount, articleCount, null);
+        articleCount = newCount;
+        modCount++;
+    }
+
+    private void set(int index, String title, int sectionId, long time, String compactUrl,
+                     String trailText, String compactThumbnailUrl) {
+        articleTitles[index] = title;
+        articleSectionIds[index] = sectionId;
+        articleTimes[index] = time;
+        articleCompactUrls[index] = compactUrl;
+        articleTrailTexts[index] = trailText;
+        articleCompactThumbnailUrls[index] = compactThumbnailUrl;
+    }
+
+    private void signTitle(int index) {
+        articleTitleSignatures[index] = StoryClusters.sign(articleTitles[index]);
+    }
+
+    private void shift(int fromIndex, int toIndex, int count) {
+        System.arraycopy(articleTitles, fromIndex, articleTitles, toIndex, count);
+        System.arraycopy(articleSectionIds, fromIndex, articleSectionIds, toIndex, count);
+        System.arraycopy(articleTimes, fromIndex, articleTimes, toIndex, count);
+        System.arraycopy(articleCompactUrls, fromIndex, articleCompactUrls, toIndex, count);
+        System.arraycopy(articleTrailTexts, fromIndex, articleTrailTexts, toIndex, count);
+        System.arraycopy(articleCompactThumbnailUrls, fromIndex, articleCompactThumbnailUrls,
+                toIndex, count);
+        System.arraycopy(articleTitleSignatures, fromIndex, articleTitleSignatures, toIndex,
+                count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= articleTitles.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, articleTitles.length + (articleTitles.length >> 1));
+        articleTitles = Arrays.copyOf(articleTitles, newCapacity);
+        articleSectionIds = Arrays.copyOf(articleSectionIds, newCapacity);
+        articleTimes = Arrays.copyOf(articleTimes, newCapacity);
+        articleCompactUrls = Arrays.copyOf(articleCompactUrls, newCapacity);
+        articleTrailTexts = Arrays.copyOf(articleTrailTexts, newCapacity);
+        articleCompactThumbnailUrls = Arrays.copyOf(articleCompactThumbnailUrls, newCapacity);
+        articleTitleSignatures = Arrays.copyOf(articleTitleSignatures, newCapacity);
+    }
+
+    /**
+     * Releases the capacity not used by the news, once no more news will be added.
+     */
+    public void trimToSize() {
+        if (articleCount < articleTitles.length) {
+            articleTitles = Arrays.copyOf(articleTitles, articleCount);
+            articleSectionIds = Arrays.copyOf(articleSectionIds, articleCount);
+            articleTimes = Arrays.copyOf(articleTimes, articleCount);
+            articleCompactUrls = Arrays.copyOf(articleCompactUrls, articleCount);
+            articleTrailTexts = Arrays.copyOf(articleTrailTexts, articleCount);
+            articleCompactThumbnailUrls =
+                    Arrays.copyOf(articleCompactThumbnailUrls, articleCount);
+            articleTitleSignatures = Arrays.copyOf(articleTitleSignatures, articleCount);
+        }
+    }
+
+    private void checkWritable() {
+        if (articleReadOnly) {
+            throw new UnsupportedOperationException("The list is read-only");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= articleCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + articleCount);
+        }
+    }
+}
@@ -1,49 +1,494 @@
 package com.kikisnight.newstheguardian;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Loads a list of news by using an AsyncTask to perform the
- * network request to the given URL.
+ * Loads a list of news on the {@link NewsExecutor}, ahead of any background work, and
+ * delivers it on the main thread. When several URLs are given (one for each
+ * followed section), they are batched into one request, or fetched concurrently if it fails,
+ * and merged into one feed.
+ * The first page is answered from the local {@link NewsStore} first, and from it
+ * alone when the network can not be reached. On a slow network the first page can be
+ * fetched without its fields first, then again with them. Canceling the loader aborts its requests.
+ * A delta load only fetches the articles published since the newest one shown, to refresh it.
+ * A {@link NewsRanker} can rank every result on the device before it is delivered.
+ * The loaded news are kept, so starting the loader again, after a rotation or when coming
+ * back to the activity, delivers them without fetching them again.
  */
-
-public class NewsLoader extends AsyncTaskLoader<List<News>> {
+public class NewsLoader extends Loader<List<News>> {
 
     /** Tag for log messages */
     private static final String LOG_TAG = NewsLoader.class.getName();
 
-    /** Query URL */
-    private String articleUrl;
+    /** Aborts the requests of the canceled loads, closing their connections may block */
+    private static final Executor CANCELLATION_EXECUTOR = Executors.newCachedThreadPool();
+
+    /** Query URLs */
+    private List<String> articleUrls;
+
+    /** URLs of the same page with every field, fetched after articleUrls, or null */
+    private List<String> articleEnrichUrls;
+
+    /** Page of the results requested by the URLs, starting at 1 */
+    private int articlePage;
+
+    /** Keyword searched in the local store, null for the latest news */
+    private String articleKeyword;
+
+    /** Publication time of the newest article shown for a delta load, or NO_DATE */
+    private long articleNewerThan = PublicationDates.NO_DATE;
+
+    /** Ranks the loaded news on the device, or null to keep the order of the server */
+    private NewsRanker articleRanker;
+
+    /** Keyword the loaded news are ranked for, null for the latest news */
+    private String articleRankKeyword;
+
+    /** True if the page is loaded again at the head of the feed, after it was dropped */
+    private boolean articleEarlierPage;
+
+    /** Delivers the results on the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** True while a partial result is being delivered */
+    private boolean deliveringPartialResult;
+
+    /** Last complete result, delivered again each time the loader is started */
+    private List<News> articleResult;
+
+    /** The running load and its cancellation, null when there is none */
+    private Future<?> runningLoad;
+    private CancellationToken cancellation;
+
+    /** When the running load was requested, as returned by {@link System#nanoTime()} */
+    private long loadRequestedNanos;
+
+    /** True once the running load delivered a first result, partial or not */
+    private boolean firstResultDelivered;
 
     /**
      * Constructs a new {@link NewsLoader}.
      *
      * @param context of the activity
      * @param url to load data from
+     * @param page is the page of the results requested by the url
+     * @param keyword is searched in the local store, or null for the latest news
+     */
+    public NewsLoader(Context context, String url, int page, String keyword) {
+        this(context, Collections.singletonList(url), page, keyword);
+    }
+
+    /**
+     * Constructs a new {@link NewsLoader} merging the results of several URLs.
+     *
+     * @param context of the activity
+     * @param urls to load data from
+     * @param page is the page of the results requested by the urls
+     * @param keyword is searched in the local store, or null for the latest news
+     */
+    public NewsLoader(Context context, List<String> urls, int page, String keyword) {
+        this(context, urls, null, page, keyword);
+    }
+
+    /**
+     * Constructs a new {@link NewsLoader} fetching a lean page first, delivered as a partial
+     * result, then the same page with every field.
+     *
+     * @param context of the activity
+     * @param urls to load data from
+     * @param enrichUrls load the same page with every field afterwards, or null
+     * @param page is the page of the results requested by the urls
+     * @param keyword is searched in the local store, or null for the latest news
      */
-    public NewsLoader(Context context, String url) {
+    public NewsLoader(Context context, List<String> urls, List<String> enrichUrls, int page,
+                      String keyword) {
         super(context);
-        articleUrl = url;
+        articleUrls = urls;
+        articleEnrichUrls = enrichUrls;
+        articlePage = page;
+        articleKeyword = keyword;
+    }
+
+    /**
+     * Constructs a new {@link NewsLoader} fetching only the articles published since the
+     * newest one shown, with URLs built by {@link NewsRequestUrls#buildSince}. Its result
+     * is only those articles.
+     *
+     * @param context of the activity
+     * @param urls to load data from
+     * @param newerThan is the publication time of the newest article shown
+     */
+    public NewsLoader(Context context, List<String> urls, long newerThan) {
+        this(context, urls, null, 1, null);
+        articleNewerThan = newerThan;
+    }
+
+    /**
+     * Ranks every result of this loader with the ranker before it is delivered, each page on
+     * its own. This is called before the loader starts.
+     *
+     * @param ranker ranks the news, or null to keep the order of the server
+     * @param keyword is the keyword searched, or null for the latest news
+     */
+    public void setRanker(NewsRanker ranker, String keyword) {
+        articleRanker = ranker;
+        articleRankKeyword = keyword;
+    }
+
+    /**
+     * Loads the page again at the head of a feed that dropped it, rather than as a new feed.
+     * Only its complete result is delivered. This is called before the loader starts.
+     */
+    public void setEarlierPage(boolean earlierPage) {
+        articleEarlierPage = earlierPage;
+    }
+
+    /**
+     * Returns true if this loader loads a page dropped from the head of the feed.
+     */
+    public boolean isEarlierPage() {
+        return articleEarlierPage;
+    }
+
+    /**
+     * Returns true if this loader only loads the articles published since the newest one
+     * shown.
+     */
+    public boolean isDelta() {
+        return articleNewerThan != PublicationDates.NO_DATE;
+    }
+
+    /**
+     * Returns true while the result being delivered is only the part of the feed that
+     * was fetched so far, the complete feed will be delivered afterwards.
+     */
+    public boolean isPartialResult() {
+        return deliveringPartialResult;
+    }
+
+    /**
+     * Returns the page of the results this loader loads.
+     */
+    public int getPage() {
+        return articlePage;
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        if (articleResult != null) {
+            deliverResult(articleResult);
+        }
+        // Only load again what was never loaded, or changed since
+        if (takeContentChanged() || (articleResult == null && runningLoad == null)) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        abortRunningLoad();
+        loadRequestedNanos = System.nanoTime();
+        firstResultDelivered = false;
+
+        final CancellationToken token = new CancellationToken();
+        cancellation = token;
+        runningLoad = NewsExecutor.getInstance().submit(NewsExecutor.Priority.VISIBLE,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token.isCanceled()) {
+                            return;
+                        }
+                        final List<News> news = load(token);
+                        // The list is handed to the main thread as it is, never copied
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onLoadComplete(token, news);
+                            }
+                        });
+                    }
+                });
     }
 
     /**
-     * This is on a background thread.
+     * Keeps and delivers the result of a load, unless a newer load replaced it. This is on
+     * the main thread.
      */
+    private void onLoadComplete(CancellationToken token, List<News> news) {
+        if (token != cancellation) {
+            return;
+        }
+        runningLoad = null;
+        cancellation = null;
+        // A failed load is tried again the next time the loader starts
+        if (news != null) {
+            articleResult = news;
+        }
+        recordFirstDelivery();
+        Metrics.LOADER_DELIVERY_NANOS.recordSince(loadRequestedNanos);
+        if (isStarted() && !isReset()) {
+            deliverResult(news);
+        }
+    }
+
+    /**
+     * Aborts the running load, so its connections are closed and its parsing stops
+     * instead of completing for nothing. The loader manager is told once it is canceled.
+     */
+    @Override
+    protected boolean onCancelLoad() {
+        if (runningLoad == null) {
+            return false;
+        }
+        abortRunningLoad();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliverCancellation();
+            }
+        });
+        return true;
+    }
+
     @Override
-    public List<News> loadInBackground() {
-        if (articleUrl == null) {
+    protected void onReset() {
+        abortRunningLoad();
+        articleResult = null;
+    }
+
+    private void abortRunningLoad() {
+        if (runningLoad == null) {
+            return;
+        }
+        // A load still queued never starts
+        runningLoad.cancel(false);
+        final CancellationToken token = cancellation;
+        CANCELLATION_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                token.cancel();
+            }
+        });
+        runningLoad = null;
+        cancellation = null;
+    }
+
+    /**
+     * Records how long the first result of the running load took since it was requested,
+     * queuing included.
+     */
+    private void recordFirstDelivery() {
+        if (!firstResultDelivered) {
+            firstResultDelivered = true;
+            Metrics.LOADER_FIRST_DELIVERY_NANOS.recordSince(loadRequestedNanos);
+        }
+    }
+
+    /**
+     * Loads the news. This is on a thread of the {@link NewsExecutor}.
+     */
+    private List<News> load(CancellationToken token) {
+        if (articleUrls == null || articleUrls.isEmpty()) {
+            return null;
+        }
+        if (isDelta()) {
+            return loadDelta(token);
+        }
+
+        // Show the matching articles stored locally while the network is queried
+        NewsStore store = NewsStore.getInstance(getContext());
+        List<News> localNews = Collections.emptyList();
+        boolean newFeed = articlePage == 1 && !articleEarlierPage;
+        if (newFeed) {
+            localNews = searchLocally(store);
+            if (!localNews.isEmpty()) {
+                deliverPartialResult(token, localNews);
+            }
+        }
+        if (token.isCanceled()) {
             return null;
         }
 
         // Perform the network request, parse the response, and extract a list of news.
-        List<News> news = QueryUtils.fetchNewsData(articleUrl);
-        return news;
+        // Recent queries are answered from memory, and results already stored on disk
+        // are only revalidated with the server.
+        CachedFetcher fetcher = new CachedFetcher(NewsDiskCache.getInstance(getContext()),
+                store, token);
+        List<News> news = fetch(articleUrls, fetcher, token, newFeed);
+
+        // Show the lean page, then fetch its fields. It stays the feed if that fails.
+        if (articleEnrichUrls != null && news != null && !news.isEmpty()
+                && !token.isCanceled()) {
+            deliverPartialResult(token, news);
+            // A part of the sections would replace the whole lean page, it is not delivered
+            List<News> enrichedNews = fetch(articleEnrichUrls, fetcher, token, false);
+            if (enrichedNews != null && !enrichedNews.isEmpty()) {
+                news = enrichedNews;
+            }
+        }
+        Log.v(LOG_TAG, NewsQueryCache.getInstance().toString());
+
+        // Without an answer from the network the local articles are the feed
+        if ((news == null || news.isEmpty()) && !localNews.isEmpty()) {
+            return rank(localNews);
+        }
+        return rank(news);
+    }
+
+    /**
+     * Returns the news ranked by the ranker of the loader, or as they are without one.
+     */
+    private List<News> rank(List<News> news) {
+        if (articleRanker == null || news == null || news.isEmpty()) {
+            return news;
+        }
+        return articleRanker.rank(news, articleRankKeyword, System.currentTimeMillis());
+    }
+
+    /**
+     * Loads the articles published since the newest one shown. A delta is never requested
+     * twice, so it skips the caches and only costs what changed.
+     */
+    private List<News> loadDelta(CancellationToken token) {
+        NetworkFetcher fetcher = new NetworkFetcher(null, NewsStore.getInstance(getContext()),
+                token);
+        List<News> news = fetch(articleUrls, fetcher, token, false);
+        if (news == null) {
+            return null;
+        }
+        // The older articles of the same day come back if only the date of from-date is used
+        NewsList newerNews = new NewsList(news.size());
+        for (News item : news) {
+            if (item.getPublicationTime() >= articleNewerThan) {
+                newerNews.add(item);
+            }
+        }
+        return newerNews;
+    }
+
+    /**
+     * Fetches and merges the news of the URLs, delivering the merged feed as soon as each
+     * section arrives if asked to.
+     */
+    private List<News> fetch(List<String> urls, NewsQueryCache.Fetcher fetcher,
+                             final CancellationToken token, boolean deliverSections) {
+        if (urls.size() == 1) {
+            return fetcher.fetch(urls.get(0));
+        }
+        // One round trip for every section, and one for each only if it fails. The batched
+        // feed is already in the order asked, across its pages too.
+        List<News> batchedNews = QueryBatcher.fetch(urls, fetcher);
+        if (batchedNews != null) {
+            return batchedNews;
+        }
+        if (token.isCanceled()) {
+            return null;
+        }
+        MultiSectionFetcher.Listener listener = null;
+        if (deliverSections) {
+            listener = new MultiSectionFetcher.Listener() {
+                @Override
+                public void onPartialResult(List<News> news, int completed, int total) {
+                    if (completed < total && !news.isEmpty()) {
+                        deliverPartialResult(token, news);
+                    }
+                }
+            };
+        }
+        return MultiSectionFetcher.getInstance().fetchAll(urls, fetcher, listener);
+    }
+
+    /**
+     * Returns the first page of the stored news matching the keyword.
+     */
+    private List<News> searchLocally(NewsStore store) {
+        try {
+            return store.search(articleKeyword,
+                    getContext().getResources().getInteger(R.integer.feed_page_size));
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Problem searching the stored news.", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Delivers a part of the feed on the main thread while the rest is still loading.
+     */
+    private void deliverPartialResult(final CancellationToken token, List<News> partialNews) {
+        final List<News> news = rank(partialNews);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token == cancellation && isStarted() && !isReset() && !isAbandoned()) {
+                    recordFirstDelivery();
+                    deliveringPartialResult = true;
+                    deliverResult(news);
+                    deliveringPartialResult = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches the news through the {@link NewsQueryCache} shared by the app.
+     */
+    private static final class CachedFetcher implements NewsQueryCache.Fetcher {
+
+        private final NetworkFetcher networkFetcher;
+        private final CancellationToken cancellation;
+
+        CachedFetcher(NewsDiskCache diskCache, NewsStore store, CancellationToken cancellation) {
+            networkFetcher = new NetworkFetcher(diskCache, store, cancellation);
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public List<News> fetch(String query) {
+            // A load restarted for the same query never joins the fetch of the aborted one
+            return NewsQueryCache.getInstance().get(query, networkFetcher, cancellation);
+        }
+    }
+
+    /**
+     * Fetches the news from the network for the {@link NewsQueryCache} and stores them for
+     * offline searches. It is a static class so a background revalidation never holds on to
+     * the loader.
+     */
+    private static final class NetworkFetcher implements NewsQueryCache.Fetcher {
+
+        private final NewsDiskCache diskCache;
+        private final NewsStore store;
+        private final CancellationToken cancellation;
+
+        NetworkFetcher(NewsDiskCache diskCache, NewsStore store,
+                       CancellationToken cancellation) {
+            this.diskCache = diskCache;
+            this.store = store;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public List<News> fetch(String query) {
+            List<News> news = QueryUtils.fetchNewsData(query, diskCache, cancellation);
+            if (news != null && !news.isEmpty()) {
+                try {
+                    store.save(news);
+                } catch (SQLException e) {
+                    Log.e(LOG_TAG, "Problem storing the news.", e);
+                }
+            }
+            return news;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+package com.kikisnight.newstheguardian;
+
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link NewsQueryCache} keeps the news of the latest queries in memory, for the whole process.
+ * The cache is bounded by the total number of articles it holds and evicts the least recently
+ * used queries first. Results older than the TTL are still returned at once while a single
+ * background fetch revalidates them, and concurrent fetches of the same query share one request.
+ */
+public final class NewsQueryCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsQueryCache.class.getName();
+
+    /** Default number of articles kept in memory across every query */
+    private static final int DEFAULT_MAX_ARTICLES = 2000;
+
+    /** Default time after which cached results are revalidated */
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Fetches the news of a query when they are not cached or are stale.
+     */
+    public interface Fetcher {
+        /**
+         * Returns the news of the query, or null if they could not be fetched.
+         * This is called on a background thread.
+         */
+        List<News> fetch(String query);
+    }
+
+    private static NewsQueryCache sInstance;
+
+    private final int maxArticles;
+    private final long ttlNanos;
+    private final Executor revalidationExecutor;
+
+    /** Entries in access order, so the eldest one is the least recently used */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, InFlightFetch> inFlight = new HashMap<>();
+    private int articleCount;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Returns the cache shared by the whole app.
+     */
+    public static synchronized NewsQueryCache getInstance() {
+        if (sInstance == null) {
+            // Revalidations wait behind the queries the user is looking at
+            sInstance = new NewsQueryCache(DEFAULT_MAX_ARTICLES, DEFAULT_TTL_MILLIS,
+                    NewsExecutor.getInstance().asExecutor(NewsExecutor.Priority.BACKGROUND));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsQueryCache}.
+     *
+     * @param maxArticles is the number of articles over which queries are evicted
+     * @param ttlMillis is the time after which cached results are revalidated
+     * @param revalidationExecutor runs the background revalidations of stale results
+     */
+    public NewsQueryCache(int maxArticles, long ttlMillis, Executor revalidationExecutor) {
+        this.maxArticles = maxArticles;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.revalidationExecutor = revalidationExecutor;
+    }
+
+    /**
+     * Returns the news of the query, from memory if possible. A missing query is fetched on
+     * the calling thread, or awaited if another thread is already fetching it. A stale query
+     * is returned as it is while it is revalidated in the background.
+     */
+    public List<News> get(String query, Fetcher fetcher) {
+        return get(query, fetcher, null);
+    }
+
+    /**
+     * Returns the news of the query like {@link #get(String, Fetcher)}, for a load canceled
+     * with the token. The fetch it starts is shared until the token is canceled: a later
+     * caller then starts a new fetch, and a caller already waiting for it fetches again
+     * rather than getting the null of the canceled one.
+     *
+     * @param token cancels the requests of the fetcher, or null
+     */
+    public List<News> get(String query, Fetcher fetcher, CancellationToken token) {
+        String key = NewsDiskCache.normalizeUrl(query);
+        boolean missCounted = false;
+
+        while (true) {
+            InFlightFetch fetch;
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    if (System.nanoTime() - entry.createdAt < ttlNanos) {
+                        hitCount.incrementAndGet();
+                        return entry.news;
+                    }
+                    // Stale-while-revalidate, only one revalidation per query at a time
+                    staleHitCount.incrementAndGet();
+                    if (!inFlight.containsKey(key)) {
+                        revalidationExecutor.execute(startFetch(key, query, fetcher, token).task);
+                    }
+                    return entry.news;
+                }
+
+                if (!missCounted) {
+                    missCount.incrementAndGet();
+                    missCounted = true;
+                }
+                fetch = inFlight.get(key);
+                if (fetch == null) {
+                    fetch = startFetch(key, query, fetcher, token);
+                }
+            }
+
+            // A revalidation awaited before it started is run here rather than waiting for a
+            // thread of the executor, which may all be busy awaiting it too. Running a task
+            // that already started does nothing.
+            fetch.task.run();
+            List<News> news;
+            try {
+                news = fetch.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem fetching the news of " + query, e.getCause());
+                news = null;
+            }
+
+            // The fetch joined was canceled by the load that started it, not by this one
+            boolean abandoned = fetch.token != null && fetch.token != token
+                    && fetch.token.isCanceled() && (token == null || !token.isCanceled());
+            if (news != null || !abandoned) {
+                return news;
+            }
+        }
+    }
+
+    /**
+     * Removes every cached query.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        articleCount = 0;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public synchronized int getArticleCount() {
+        return articleCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NewsQueryCache[queries=" + entries.size() + ", articles=" + articleCount
+                + "/" + maxArticles + ", hits=" + hitCount + ", staleHits=" + staleHitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    /**
+     * Creates the fetch of the query and makes it the one in flight, until it finishes or
+     * its token is canceled. The caller must hold the lock of the cache.
+     */
+    private InFlightFetch startFetch(final String key, final String query, final Fetcher fetcher,
+                                     final CancellationToken token) {
+        final InFlightFetch[] fetch = new InFlightFetch[1];
+        FutureTask<List<News>> task = new FutureTask<>(new Callable<List<News>>() {
+            @Override
+            public List<News> call() {
+                List<News> news = null;
+                try {
+                    news = fetcher.fetch(query);
+                } finally {
+                    // Always release the in-flight slot, even if the fetch threw
+                    news = onFetchFinished(key, fetch[0], news);
+                }
+                return news;
+            }
+        });
+        Runnable abortAction = new Runnable() {
+            @Override
+            public void run() {
+                // The next caller does not join a fetch that is being aborted
+                releaseInFlight(key, fetch[0]);
+            }
+        };
+        fetch[0] = new InFlightFetch(task, token, abortAction);
+        inFlight.put(key, fetch[0]);
+        if (token != null) {
+            token.addAbortAction(abortAction);
+        }
+        return fetch[0];
+    }
+
+    private synchronized void releaseInFlight(String key, InFlightFetch fetch) {
+        if (inFlight.get(key) == fetch) {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Caches the news of a finished fetch and returns the list every waiting caller gets.
+     */
+    private synchronized List<News> onFetchFinished(String key, InFlightFetch fetch,
+                                                    List<News> news) {
+        releaseInFlight(key, fetch);
+        if (fetch.token != null) {
+            fetch.token.removeAbortAction(fetch.abortAction);
+        }
+        // Failed fetches are not cached, a stale entry stays until the next attempt
+        if (news == null) {
+            return null;
+        }
+        return put(key, news);
+    }
+
+    private List<News> put(String key, List<News> news) {
+        // A read-only NewsList keeps the columns and signatures the callers copy from
+        List<News> cachedNews = NewsList.readOnlyCopyOf(news);
+        Entry previous = entries.put(key, new Entry(cachedNews));
+        if (previous != null) {
+            articleCount -= previous.news.size();
+        }
+        articleCount += news.size();
+
+        // Evict the least recently used queries, but always keep the newest one
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (articleCount > maxArticles && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            articleCount -= eldest.getValue().news.size();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+        return cachedNews;
+    }
+
+    /**
+     * A fetch of a query shared by its callers, and the token of the load that started it.
+     */
+    private static final class InFlightFetch {
+        final FutureTask<List<News>> task;
+        final CancellationToken token;
+        final Runnable abortAction;
+
+        InFlightFetch(FutureTask<List<News>> task, CancellationToken token,
+                      Runnable abortAction) {
+            this.task = task;
+            this.token = token;
+            this.abortAction = abortAction;
+        }
+    }
+
+    /**
+     * The news of one query and the time they were fetched at.
+     */
+    private static final class Entry {
+        final List<News> news;
+        final long createdAt = System.nanoTime();
+
+        Entry(List<News> news) {
+            this.news = news;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link NewsRanker} orders fetched news on the device, without asking the server again. Each
+ * article is scored by how recent it is, how strongly its title matches the keyword and how
+ * often the user opens articles of its section, and the copies of a story already ranked
+ * higher are moved to the end. Ranking is a single pass over the columns of the news and a
+ * sort of primitive keys, so thousands of articles take a few milliseconds.
+ */
+public final class NewsRanker {
+
+    /** Name of the preferences file holding the affinity of every section */
+    private static final String PREFERENCES_NAME = "news_ranking";
+
+    /** Age at which the recency of an article is halved */
+    static final long RECENCY_HALF_LIFE_MILLIS = 6 * 60 * 60 * 1000;
+
+    private static final double LN_2 = Math.log(2);
+
+    /** Weights of the recency, the keyword match and the section affinity in a score */
+    private static final float RECENCY_WEIGHT = 0.5f;
+    private static final float KEYWORD_WEIGHT = 0.3f;
+    private static final float AFFINITY_WEIGHT = 0.2f;
+
+    /** Match strength of a title word starting with a keyword word, a whole word is 1 */
+    private static final float PREFIX_MATCH = 0.5f;
+
+    /** Every opened article makes the previous ones count this much less */
+    private static final float AFFINITY_DECAY = 0.9f;
+
+    /** Title words this short are left out of the duplicate key */
+    private static final int MIN_KEY_WORD_LENGTH = 3;
+
+    private static NewsRanker sInstance;
+
+    /** Weight of every section name, grown by each opened article of the section */
+    private final Map<String, Float> sectionAffinities;
+
+    /** Where the affinities are saved, or null to keep them in memory */
+    private final SharedPreferences preferences;
+
+    /**
+     * Returns the ranker shared by the whole app, with the affinities learned so far.
+     */
+    public static synchronized NewsRanker getInstance(Context context) {
+        if (sInstance == null) {
+            SharedPreferences preferences = context.getApplicationContext()
+                    .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+            Map<String, Float> affinities = new HashMap<>();
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof Float) {
+                    affinities.put(entry.getKey(), (Float) entry.getValue());
+                }
+            }
+            sInstance = new NewsRanker(affinities, preferences);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsRanker}.
+     *
+     * @param affinities is the weight of every section name learned so far
+     * @param preferences is where the affinities are saved, or null
+     */
+    NewsRanker(Map<String, Float> affinities, SharedPreferences preferences) {
+        sectionAffinities = new HashMap<>(affinities);
+        this.preferences = preferences;
+    }
+
+    /**
+     * Learns that the user opened an article of the section.
+     *
+     * @param topic is the section name of the article, or null
+     */
+    public synchronized void recordOpened(String topic) {
+        if (topic == null) {
+            return;
+        }
+        for (Map.Entry<String, Float> entry : sectionAffinities.entrySet()) {
+            entry.setValue(entry.getValue() * AFFINITY_DECAY);
+        }
+        Float affinity = sectionAffinities.get(topic);
+        sectionAffinities.put(topic, (affinity != null ? affinity : 0) + 1);
+
+        if (preferences != null) {
+            SharedPreferences.Editor editor = preferences.edit().clear();
+            for (Map.Entry<String, Float> entry : sectionAffinities.entrySet()) {
+                editor.putFloat(entry.getKey(), entry.getValue());
+            }
+            editor.apply();
+        }
+    }
+
+    /**
+     * Returns the share of the opened articles that were of each section, recent ones
+     * counting more.
+     */
+    synchronized Map<String, Float> getAffinities() {
+        float total = 0;
+        for (float affinity : sectionAffinities.values()) {
+            total += affinity;
+        }
+        Map<String, Float> shares = new HashMap<>(sectionAffinities.size() * 2);
+        for (Map.Entry<String, Float> entry : sectionAffinities.entrySet()) {
+            shares.put(entry.getKey(), total > 0 ? entry.getValue() / total : 0);
+        }
+        return shares;
+    }
+
+    /**
+     * Returns a new list of the news, the best ranked first and the copies of a story
+     * ranked higher at the end. This can be called from any thread.
+     *
+     * @param news are the news to rank
+     * @param keyword is the keyword searched, or null for the latest news
+     * @param now is the current time in milliseconds (from the Epoch)
+     */
+    public NewsList rank(List<News> news, String keyword, long now) {
+        NewsList list = news instanceof NewsList ? (NewsList) news : NewsList.copyOf(news);
+        int count = list.size();
+        Map<String, Float> affinities = getAffinities();
+        List<String> keywordWords = NewsStore.toWords(keyword);
+
+        // The score in the high bits and the index in the low bits, so sorting the keys
+        // sorts the news. Scores are positive, their bits sort like them.
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            float score = RECENCY_WEIGHT * recency(list.getPublicationTime(i), now);
+            if (!keywordWords.isEmpty()) {
+                score += KEYWORD_WEIGHT * matchStrength(list.getTitle(i), keywordWords);
+            }
+            Float affinity = affinities.get(list.getTopic(i));
+            if (affinity != null) {
+                score += AFFINITY_WEIGHT * affinity;
+            }
+            // Equal scores keep the order of the news
+            keys[i] = ((long) Float.floatToIntBits(score) << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(keys);
+
+        NewsList ranked = new NewsList(Math.max(count, 1));
+        int[] duplicates = new int[count];
+        int duplicateCount = 0;
+        Set<Long> storyKeys = new HashSet<>(count * 2);
+        for (int k = count - 1; k >= 0; k--) {
+            int index = Integer.MAX_VALUE - (int) keys[k];
+            long storyKey = storyKey(list.getTitle(index));
+            if (storyKey != 0 && !storyKeys.add(storyKey)) {
+                duplicates[duplicateCount++] = index;
+            } else {
+                ranked.addFrom(list, index);
+            }
+        }
+        for (int i = 0; i < duplicateCount; i++) {
+            ranked.addFrom(list, duplicates[i]);
+        }
+        return ranked;
+    }
+
+    /**
+     * Returns 1 for an article published now, halved every
+     * {@link #RECENCY_HALF_LIFE_MILLIS}, and 0 without a date.
+     */
+    static float recency(long time, long now) {
+        if (time == PublicationDates.NO_DATE) {
+            return 0;
+        }
+        long age = Math.max(0, now - time);
+        return (float) Math.exp(-LN_2 * age / RECENCY_HALF_LIFE_MILLIS);
+    }
+
+    /**
+     * Returns how strongly the title matches the keyword words, from 0 when none of them
+     * starts a word of the title to 1 when all of them are whole words of it.
+     *
+     * @param keywordWords are lower case words, as returned by {@link NewsStore#toWords}
+     */
+    static float matchStrength(String title, List<String> keywordWords) {
+        if (title == null || keywordWords.isEmpty()) {
+            return 0;
+        }
+        float strength = 0;
+        for (String word : keywordWords) {
+            float best = 0;
+            int length = title.length();
+            int start = 0;
+            while (start < length && best < 1) {
+                // Find the next word of the title
+                while (start < length && !Character.isLetterOrDigit(title.charAt(start))) {
+                    start++;
+                }
+                int end = start;
+                while (end < length && Character.isLetterOrDigit(title.charAt(end))) {
+                    end++;
+                }
+                if (end - start >= word.length()
+                        && title.regionMatches(true, start, word, 0, word.length())) {
+                    best = end - start == word.length() ? 1 : Math.max(best, PREFIX_MATCH);
+                }
+                start = end;
+            }
+            strength += best;
+        }
+        return strength / keywordWords.size();
+    }
+
+    /**
+     * Returns a key shared by the titles made of the same words, whatever their case, order
+     * and punctuation, or 0 for a title without any word long enough.
+     */
+    static long storyKey(String title) {
+        if (title == null) {
+            return 0;
+        }
+        long key = 0;
+        int length = title.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(title.charAt(start))) {
+                start++;
+            }
+            long hash = 1125899906842597L;
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(title.charAt(end))) {
+                hash = 31 * hash + Character.toLowerCase(title.charAt(end));
+                end++;
+            }
+            if (end - start >= MIN_KEY_WORD_LENGTH) {
+                // Mixed so a sum of words does not collide with another sum
+                hash *= 0x9E3779B97F4A7C15L;
+                key += hash ^ (hash >>> 29);
+            }
+            start = end;
+        }
+        return key;
+    }
+}
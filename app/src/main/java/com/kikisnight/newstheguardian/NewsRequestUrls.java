@@ -0,0 +1,201 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds the URLs of The Guardian API requests for a page of the feed from the user
+ * preferences, so the feed shown by {@link NewsActivity} and the one refreshed in the
+ * background are exactly the same requests.
+ */
+public final class NewsRequestUrls {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsRequestUrls.class.getName();
+
+    /** Keyword searching every news */
+    public static final String DEFAULT_KEYWORD = "all";
+
+    /** Fields of the articles shown by the feed, besides the default ones */
+    private static final String FEED_FIELDS = "trailText,thumbnail";
+
+    /** Host of The Guardian API, whose requests count against the quota of the key */
+    static final String API_HOST = "content.guardianapis.com";
+
+    /** URL for news data from the The Guardian dataset */
+    private static final String API_REQUEST_URL = "https://" + API_HOST + "/search";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsRequestUrls}
+     * object.
+     */
+    private NewsRequestUrls() {
+    }
+
+    /**
+     * Returns the URLs of the given page of the feed with the default page size and every
+     * field: one URL, or one for each followed section.
+     *
+     * @param context of the app
+     * @param keyword is the searched keyword
+     * @param page is the page of the results, starting at 1
+     */
+    public static List<String> build(Context context, String keyword, int page) {
+        return build(context, keyword, page,
+                context.getResources().getInteger(R.integer.feed_page_size), true);
+    }
+
+    /**
+     * Returns the page size suited to the network. Every page of a feed must have the same
+     * size, the API pages are offsets in multiples of it.
+     */
+    public static int pageSizeFor(Context context, NetworkQualityEstimator.Quality quality) {
+        switch (quality) {
+            case SLOW:
+                return context.getResources().getInteger(R.integer.feed_page_size_slow);
+            case FAST:
+                return context.getResources().getInteger(R.integer.feed_page_size_fast);
+            default:
+                return context.getResources().getInteger(R.integer.feed_page_size);
+        }
+    }
+
+    /**
+     * Returns true if the first page should be requested without its fields first on such a
+     * network, and enriched afterwards, so the headlines arrive sooner.
+     */
+    public static boolean isLeanFirstPage(NetworkQualityEstimator.Quality quality) {
+        return quality == NetworkQualityEstimator.Quality.SLOW;
+    }
+
+    /**
+     * Returns the URLs of the given page of the feed: one URL, or one for each followed
+     * section.
+     *
+     * @param context of the app
+     * @param keyword is the searched keyword
+     * @param page is the page of the results, starting at 1
+     * @param pageSize is the number of articles of every page
+     * @param withFields is false to leave out the trail texts and the thumbnails
+     */
+    public static List<String> build(Context context, String keyword, int page, int pageSize,
+                                     boolean withFields) {
+        return build(context, keyword, page, pageSize, withFields, null);
+    }
+
+    /**
+     * Returns the URLs of the articles of the feed published since the given time, newest
+     * first, to add them at the head of the feed already shown: one URL, or one for each
+     * followed section.
+     *
+     * @param context of the app
+     * @param keyword is the searched keyword
+     * @param newerThan is the publication time of the newest article shown, in milliseconds
+     *  from the Epoch, it is returned again
+     * @param pageSize is the number of articles of every page
+     */
+    public static List<String> buildSince(Context context, String keyword, long newerThan,
+                                          int pageSize) {
+        return build(context, keyword, 1, pageSize, true,
+                PublicationDates.formatIso(newerThan));
+    }
+
+    /**
+     * Returns true if the feed is ordered newest first, so the new articles go at its head.
+     */
+    public static boolean isNewestFirst(Context context) {
+        return context.getString(R.string.settings_order_by_newest_date).equals(
+                getOrderBy(PreferenceManager.getDefaultSharedPreferences(context), context));
+    }
+
+    private static List<String> build(Context context, String keyword, int page, int pageSize,
+                                      boolean withFields, String fromDate) {
+        // Get an instance of SharedPreferences
+        SharedPreferences sharedPreferences =
+                PreferenceManager.getDefaultSharedPreferences(context);
+
+        // Get order by preference, the new articles are always requested newest first
+        String orderBy = fromDate != null
+                ? context.getString(R.string.settings_order_by_newest_date)
+                : getOrderBy(sharedPreferences, context);
+        // A ranked feed is ranked from the latest news
+        if (context.getString(R.string.settings_order_by_ranked).equals(orderBy)) {
+            orderBy = context.getString(R.string.settings_order_by_newest_date);
+        }
+
+        // Get the followed sections preference, none by default
+        Set<String> sections = sharedPreferences.getStringSet(context.getString(R.string
+                .settings_sections_key), Collections.<String>emptySet());
+
+        // Build the Uri based on the preferences
+        Uri baseIri = Uri.parse(API_REQUEST_URL);
+        Uri.Builder uriBuilder = baseIri.buildUpon();
+
+        uriBuilder.appendQueryParameter("q", keyword);
+        uriBuilder.appendQueryParameter("order-by", orderBy);
+        uriBuilder.appendQueryParameter("page", String.valueOf(page));
+        uriBuilder.appendQueryParameter("page-size", String.valueOf(pageSize));
+        if (fromDate != null) {
+            uriBuilder.appendQueryParameter("from-date", fromDate);
+        }
+        if (withFields) {
+            uriBuilder.appendQueryParameter("show-fields", FEED_FIELDS);
+        }
+        uriBuilder.appendQueryParameter("api-key", "test");
+        Log.v(LOG_TAG, "Uri: " + uriBuilder);
+
+        if (sections.isEmpty()) {
+            return Collections.singletonList(uriBuilder.toString());
+        }
+
+        // One query for each followed section
+        List<String> sectionUrls = new ArrayList<>(sections.size());
+        for (String section : new TreeSet<>(sections)) {
+            Uri.Builder sectionUriBuilder = Uri.parse(uriBuilder.toString()).buildUpon();
+            sectionUriBuilder.appendQueryParameter("section", section);
+            sectionUrls.add(sectionUriBuilder.toString());
+        }
+        return sectionUrls;
+    }
+
+    /**
+     * Returns true if the feed is ranked on the device by the {@link NewsRanker}.
+     */
+    public static boolean isRanked(Context context) {
+        return context.getString(R.string.settings_order_by_ranked).equals(
+                getOrderBy(PreferenceManager.getDefaultSharedPreferences(context), context));
+    }
+
+    private static String getOrderBy(SharedPreferences sharedPreferences, Context context) {
+        return sharedPreferences.getString(context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+    }
+
+    /**
+     * Returns the URL requesting the bodies of the articles with the given ids, as returned
+     * by {@link ArticleBodies#articleId(String)}, all in one response.
+     */
+    public static String buildBodies(List<String> articleIds) {
+        StringBuilder ids = new StringBuilder();
+        for (String articleId : articleIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(articleId);
+        }
+        Uri.Builder uriBuilder = Uri.parse(API_REQUEST_URL).buildUpon();
+        uriBuilder.appendQueryParameter("ids", ids.toString());
+        uriBuilder.appendQueryParameter("page-size", String.valueOf(articleIds.size()));
+        uriBuilder.appendQueryParameter("show-fields", "body");
+        uriBuilder.appendQueryParameter("api-key", "test");
+        return uriBuilder.toString();
+    }
+}
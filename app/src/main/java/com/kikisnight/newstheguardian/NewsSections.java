@@ -0,0 +1,62 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link NewsSections} is the table of the section names shared by the whole app. The API
+ * only has a few dozen sections, so every article refers to its section by a small id
+ * instead of holding its own copy of the name.
+ */
+public final class NewsSections {
+
+    /** Id of the missing section */
+    public static final int NO_SECTION = -1;
+
+    /** Ids of the section names */
+    private static final Map<String, Integer> IDS = new HashMap<>();
+
+    /** Section names by id, replaced by a longer copy when a section is added */
+    private static volatile String[] sNames = new String[16];
+
+    /** Number of sections in the table */
+    private static int sCount;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsSections}
+     * object.
+     */
+    private NewsSections() {
+    }
+
+    /**
+     * Returns the id of the section name, adding it to the table the first time it is seen.
+     */
+    public static synchronized int idOf(String name) {
+        if (name == null) {
+            return NO_SECTION;
+        }
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        String[] names = sNames;
+        if (sCount == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[sCount] = name;
+        // Publish the new name before its id can be read without the lock
+        sNames = names;
+        IDS.put(name, sCount);
+        return sCount++;
+    }
+
+    /**
+     * Returns the section name of the id, or null for {@link #NO_SECTION}.
+     */
+    public static String nameOf(int id) {
+        return id == NO_SECTION ? null : sNames[id];
+    }
+}
@@ -0,0 +1,287 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.kikisnight.newstheguardian.NewsContract.ArticleEntry;
+import com.kikisnight.newstheguardian.NewsContract.BodyEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link NewsStore} persists every fetched {@link News} in a local SQLite database with a
+ * full-text index over the title, section and trail text, so keyword searches can be answered
+ * at once and without any connectivity. It also keeps the compressed bodies of the articles
+ * read in the {@link ReaderActivity}.
+ */
+public final class NewsStore {
+
+    /** Number of articles kept in the store, the oldest ones are deleted after that */
+    private static final int MAX_ARTICLES = 50000;
+
+    /** Number of article bodies kept, the ones fetched first are deleted after that */
+    private static final int MAX_BODIES = 500;
+
+    /** Columns read to build a {@link News} */
+    private static final String ARTICLE_COLUMNS = "a." + ArticleEntry.COLUMN_URL + ", a."
+            + ArticleEntry.COLUMN_TITLE + ", a." + ArticleEntry.COLUMN_SECTION + ", a."
+            + ArticleEntry.COLUMN_PUBLISHED + ", a." + ArticleEntry.COLUMN_TRAIL_TEXT + ", a."
+            + ArticleEntry.COLUMN_THUMBNAIL;
+
+    /** Inserts an article unless its URL is already stored */
+    private static final String SQL_INSERT = "INSERT OR IGNORE INTO " + ArticleEntry.TABLE_NAME
+            + " (" + ArticleEntry.COLUMN_URL + ", " + ArticleEntry.COLUMN_TITLE + ", "
+            + ArticleEntry.COLUMN_SECTION + ", " + ArticleEntry.COLUMN_PUBLISHED + ", "
+            + ArticleEntry.COLUMN_TRAIL_TEXT + ", " + ArticleEntry.COLUMN_THUMBNAIL
+            + ") VALUES (?1, ?2, ?3, ?4, ?5, ?6)";
+
+    /**
+     * Updates a stored article, but only if something changed so the full-text index is not
+     * rewritten for nothing. A missing trail text or thumbnail never replaces a stored one.
+     */
+    private static final String SQL_UPDATE = "UPDATE " + ArticleEntry.TABLE_NAME + " SET "
+            + ArticleEntry.COLUMN_TITLE + " = ?2, "
+            + ArticleEntry.COLUMN_SECTION + " = ?3, "
+            + ArticleEntry.COLUMN_PUBLISHED + " = ?4, "
+            + ArticleEntry.COLUMN_TRAIL_TEXT + " = COALESCE(?5, "
+            + ArticleEntry.COLUMN_TRAIL_TEXT + "), "
+            + ArticleEntry.COLUMN_THUMBNAIL + " = COALESCE(?6, "
+            + ArticleEntry.COLUMN_THUMBNAIL + ") WHERE " + ArticleEntry.COLUMN_URL + " = ?1 AND ("
+            + ArticleEntry.COLUMN_TITLE + " IS NOT ?2 OR "
+            + ArticleEntry.COLUMN_SECTION + " IS NOT ?3 OR "
+            + ArticleEntry.COLUMN_PUBLISHED + " IS NOT ?4 OR (?5 IS NOT NULL AND "
+            + ArticleEntry.COLUMN_TRAIL_TEXT + " IS NOT ?5) OR (?6 IS NOT NULL AND "
+            + ArticleEntry.COLUMN_THUMBNAIL + " IS NOT ?6))";
+
+    private static NewsStore sInstance;
+
+    private final NewsDbHelper dbHelper;
+
+    /**
+     * Returns the store shared by the whole app.
+     */
+    public static synchronized NewsStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NewsStore(new NewsDbHelper(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsStore}.
+     *
+     * @param dbHelper opens the database of the store
+     */
+    NewsStore(NewsDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Inserts the news that are not stored yet and updates the ones that changed.
+     * This must be called on a background thread.
+     */
+    public void save(List<News> news) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE);
+
+        db.beginTransaction();
+        try {
+            for (News item : news) {
+                if (item.getUrl() == null) {
+                    continue;
+                }
+                bindArticle(insert, item);
+                if (insert.executeInsert() == -1) {
+                    // Already stored
+                    bindArticle(update, item);
+                    update.executeUpdateDelete();
+                }
+            }
+            trimToSize(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Stores the bodies of the articles, by URL, replacing the ones already stored.
+     * This must be called on a background thread.
+     */
+    public void saveBodies(Map<String, String> bodies) {
+        if (bodies.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO "
+                + BodyEntry.TABLE_NAME + " (" + BodyEntry.COLUMN_URL + ", "
+                + BodyEntry.COLUMN_BODY + ", " + BodyEntry.COLUMN_FETCHED + ") VALUES (?, ?, ?)");
+        long now = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, String> body : bodies.entrySet()) {
+                insert.clearBindings();
+                insert.bindString(1, body.getKey());
+                insert.bindBlob(2, ArticleBodies.compress(body.getValue()));
+                insert.bindLong(3, now);
+                insert.executeInsert();
+            }
+            db.execSQL("DELETE FROM " + BodyEntry.TABLE_NAME + " WHERE " + BodyEntry.COLUMN_URL
+                    + " IN (SELECT " + BodyEntry.COLUMN_URL + " FROM " + BodyEntry.TABLE_NAME
+                    + " ORDER BY " + BodyEntry.COLUMN_FETCHED + " DESC LIMIT -1 OFFSET "
+                    + MAX_BODIES + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the stored body of the article with the URL, or null if it is not stored.
+     * This must be called on a background thread.
+     */
+    public String getBody(String url) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + BodyEntry.COLUMN_BODY + " FROM "
+                + BodyEntry.TABLE_NAME + " WHERE " + BodyEntry.COLUMN_URL + " = ?",
+                new String[]{url});
+        try {
+            return cursor.moveToNext() ? ArticleBodies.decompress(cursor.getBlob(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the URLs of the list whose body is stored.
+     * This must be called on a background thread.
+     */
+    public Set<String> getUrlsWithBody(List<String> urls) {
+        Set<String> stored = new HashSet<>();
+        if (urls.isEmpty()) {
+            return stored;
+        }
+        StringBuilder placeholders = new StringBuilder("?");
+        for (int i = 1; i < urls.size(); i++) {
+            placeholders.append(", ?");
+        }
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + BodyEntry.COLUMN_URL + " FROM "
+                + BodyEntry.TABLE_NAME + " WHERE " + BodyEntry.COLUMN_URL + " IN ("
+                + placeholders + ")", urls.toArray(new String[urls.size()]));
+        try {
+            while (cursor.moveToNext()) {
+                stored.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the newest stored news matching every word of the keyword, even partially typed
+     * ones. An empty keyword matches every stored news.
+     * This must be called on a background thread.
+     */
+    public List<News> search(String keyword, int limit) {
+        String matchQuery = toMatchQuery(keyword);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor;
+        if (matchQuery == null) {
+            cursor = db.rawQuery("SELECT " + ARTICLE_COLUMNS + " FROM "
+                    + ArticleEntry.TABLE_NAME + " a ORDER BY a." + ArticleEntry.COLUMN_PUBLISHED
+                    + " DESC LIMIT " + limit, null);
+        } else {
+            cursor = db.rawQuery("SELECT " + ARTICLE_COLUMNS + " FROM "
+                    + ArticleEntry.TABLE_NAME + " a JOIN " + ArticleEntry.FTS_TABLE_NAME
+                    + " f ON f.docid = a." + ArticleEntry._ID + " WHERE "
+                    + ArticleEntry.FTS_TABLE_NAME + " MATCH ? ORDER BY a."
+                    + ArticleEntry.COLUMN_PUBLISHED + " DESC LIMIT " + limit,
+                    new String[]{matchQuery});
+        }
+
+        NewsList news = new NewsList(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                news.add(cursor.getString(1), cursor.getString(2), cursor.getLong(3),
+                        cursor.getString(0), cursor.getString(4), cursor.getString(5));
+            }
+        } finally {
+            cursor.close();
+        }
+        return news;
+    }
+
+    /**
+     * Turns the keyword into a full-text query where every word is a prefix, or returns null
+     * if the keyword has no word at all.
+     */
+    static String toMatchQuery(String keyword) {
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : toWords(keyword)) {
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append(word).append('*');
+        }
+        return matchQuery.length() > 0 ? matchQuery.toString() : null;
+    }
+
+    /**
+     * Splits the keyword into its lower case words, the way the full-text index splits
+     * the articles.
+     */
+    static List<String> toWords(String keyword) {
+        List<String> words = new ArrayList<>();
+        if (keyword == null) {
+            return words;
+        }
+        for (String word : keyword.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static void bindArticle(SQLiteStatement statement, News item) {
+        statement.clearBindings();
+        statement.bindString(1, item.getUrl());
+        bindNullableString(statement, 2, item.getTitle());
+        bindNullableString(statement, 3, item.getTopic());
+        statement.bindLong(4, item.getPublicationTime());
+        bindNullableString(statement, 5, item.getTrailText());
+        bindNullableString(statement, 6, item.getThumbnailUrl());
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Deletes the oldest articles when there are more than {@link #MAX_ARTICLES}.
+     */
+    private static void trimToSize(SQLiteDatabase db) {
+        long count = db.compileStatement("SELECT COUNT(*) FROM " + ArticleEntry.TABLE_NAME)
+                .simpleQueryForLong();
+        if (count > MAX_ARTICLES) {
+            db.execSQL("DELETE FROM " + ArticleEntry.TABLE_NAME + " WHERE " + ArticleEntry._ID
+                    + " IN (SELECT " + ArticleEntry._ID + " FROM " + ArticleEntry.TABLE_NAME
+                    + " ORDER BY " + ArticleEntry.COLUMN_PUBLISHED + " DESC LIMIT -1 OFFSET "
+                    + MAX_ARTICLES + ")");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.kikisnight.newstheguardian;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.SQLException;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsSyncJobService} refreshes the first page of the feed in the background at a set
+ * interval, so the next launch of the app shows it from the {@link NewsStore} and the
+ * {@link NewsDiskCache} without waiting on the network, and opens its first articles in the
+ * {@link ReaderActivity} offline. The job only runs on an unmetered network while charging,
+ * and a failed sync is retried with an exponential backoff.
+ */
+public class NewsSyncJobService extends JobService {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsSyncJobService.class.getName();
+
+    /** ID of the sync job, unique within the app */
+    private static final int SYNC_JOB_ID = 1;
+
+    /** The current sync, null when there is none */
+    private Future<?> syncTask;
+
+    /**
+     * Schedules the periodic sync, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == SYNC_JOB_ID) {
+                // Scheduling it again would restart its interval
+                return;
+            }
+        }
+
+        Resources resources = context.getResources();
+        JobInfo job = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(context, NewsSyncJobService.class))
+                .setPeriodic(TimeUnit.MINUTES.toMillis(
+                        resources.getInteger(R.integer.sync_interval_minutes)))
+                .setRequiredNetworkType(
+                        resources.getBoolean(R.bool.sync_requires_unmetered_network)
+                                ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(resources.getBoolean(R.bool.sync_requires_charging))
+                .setBackoffCriteria(resources.getInteger(R.integer.sync_initial_backoff_millis),
+                        JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Unable to schedule the sync of the feed");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // The sync gives way to the loads of the activity if it is open
+        syncTask = NewsExecutor.getInstance().submit(NewsExecutor.Priority.BACKGROUND,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean succeeded = sync();
+                        if (!Thread.currentThread().isInterrupted()) {
+                            // A failed sync is retried after the backoff delay
+                            jobFinished(params, !succeeded);
+                        }
+                    }
+                });
+        // The job goes on until the sync task finishes it
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are not met anymore, try again later
+        if (syncTask != null) {
+            syncTask.cancel(true);
+            syncTask = null;
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the first page of the feed, stores it and records the metrics of the sync.
+     * This is on a thread of the {@link NewsExecutor}.
+     *
+     * @return true if every request succeeded
+     */
+    private boolean sync() {
+        long start = SystemClock.elapsedRealtime();
+        long bytesBefore = NewsHttpClient.getBytesReceivedOnThisThread();
+
+        NewsDiskCache diskCache = NewsDiskCache.getInstance(this);
+        NewsStore store = NewsStore.getInstance(this);
+        boolean succeeded = true;
+        // Sized for the network like the first page of the activity, so the entry of the
+        // NewsDiskCache is the one its next request revalidates. A new process knows nothing
+        // of the network yet, like the next launch, and syncs the default page.
+        NetworkQualityEstimator.Quality quality =
+                NetworkQualityEstimator.getInstance().getQuality();
+        // The followed sections are synced with a single request when they can be
+        List<String> requestUrls = NewsRequestUrls.build(this, NewsRequestUrls.DEFAULT_KEYWORD,
+                1, NewsRequestUrls.pageSizeFor(this, quality),
+                !NewsRequestUrls.isLeanFirstPage(quality));
+        String batchUrl = QueryBatcher.batch(requestUrls);
+        if (batchUrl != null) {
+            requestUrls = Collections.singletonList(batchUrl);
+        }
+        // The requests are made one after another on this thread, so the bytes it receives
+        // in the meantime are counted for this sync only
+        for (String requestUrl : requestUrls) {
+            if (Thread.currentThread().isInterrupted()) {
+                succeeded = false;
+                break;
+            }
+            List<News> news = QueryUtils.fetchNewsData(requestUrl, diskCache);
+            if (news == null) {
+                succeeded = false;
+                continue;
+            }
+            try {
+                store.save(news);
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Problem storing the synced news.", e);
+                succeeded = false;
+            }
+            // Store the bodies of the first articles too, so they can be read offline
+            if (!ArticleBodyFetcher.prefetchNow(this, ArticleBodyFetcher.firstUrls(news,
+                    getResources().getInteger(R.integer.reader_prefetch_articles)), null)) {
+                succeeded = false;
+            }
+        }
+
+        NewsSyncStats stats = new NewsSyncStats(this);
+        stats.record(succeeded, SystemClock.elapsedRealtime() - start,
+                NewsHttpClient.getBytesReceivedOnThisThread() - bytesBefore);
+        Log.i(LOG_TAG, stats.toString());
+        return succeeded;
+    }
+}
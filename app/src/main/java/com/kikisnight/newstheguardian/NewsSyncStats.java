@@ -0,0 +1,102 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.util.Locale;
+
+/**
+ * {@link NewsSyncStats} keeps the metrics of the background syncs across restarts: how many
+ * ran and failed, how long they took and how many bytes they received.
+ */
+public final class NewsSyncStats {
+
+    /** Name of the preferences file holding the metrics */
+    private static final String PREFERENCES_NAME = "sync_stats";
+
+    private static final String KEY_SYNC_COUNT = "sync_count";
+    private static final String KEY_FAILURE_COUNT = "failure_count";
+    private static final String KEY_TOTAL_DURATION_MILLIS = "total_duration_millis";
+    private static final String KEY_TOTAL_BYTES = "total_bytes";
+    private static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    private static final String KEY_LAST_DURATION_MILLIS = "last_duration_millis";
+    private static final String KEY_LAST_BYTES = "last_bytes";
+    private static final String KEY_LAST_SUCCEEDED = "last_succeeded";
+
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructs a new {@link NewsSyncStats}.
+     *
+     * @param context of the app
+     */
+    public NewsSyncStats(Context context) {
+        preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds a completed sync to the metrics.
+     *
+     * @param succeeded is false if any request of the sync failed
+     * @param durationMillis is the time the sync took
+     * @param bytes is the number of bytes received by the sync
+     */
+    public synchronized void record(boolean succeeded, long durationMillis, long bytes) {
+        preferences.edit()
+                .putInt(KEY_SYNC_COUNT, getSyncCount() + 1)
+                .putInt(KEY_FAILURE_COUNT, getFailureCount() + (succeeded ? 0 : 1))
+                .putLong(KEY_TOTAL_DURATION_MILLIS, getTotalDurationMillis() + durationMillis)
+                .putLong(KEY_TOTAL_BYTES, getTotalBytes() + bytes)
+                .putLong(KEY_LAST_SYNC_TIME, System.currentTimeMillis())
+                .putLong(KEY_LAST_DURATION_MILLIS, durationMillis)
+                .putLong(KEY_LAST_BYTES, bytes)
+                .putBoolean(KEY_LAST_SUCCEEDED, succeeded)
+                .apply();
+    }
+
+    public int getSyncCount() {
+        return preferences.getInt(KEY_SYNC_COUNT, 0);
+    }
+
+    public int getFailureCount() {
+        return preferences.getInt(KEY_FAILURE_COUNT, 0);
+    }
+
+    public long getTotalDurationMillis() {
+        return preferences.getLong(KEY_TOTAL_DURATION_MILLIS, 0);
+    }
+
+    public long getTotalBytes() {
+        return preferences.getLong(KEY_TOTAL_BYTES, 0);
+    }
+
+    /**
+     * Returns the time the last sync completed at, in epoch milliseconds, or 0 if none did.
+     */
+    public long getLastSyncTime() {
+        return preferences.getLong(KEY_LAST_SYNC_TIME, 0);
+    }
+
+    public long getLastDurationMillis() {
+        return preferences.getLong(KEY_LAST_DURATION_MILLIS, 0);
+    }
+
+    public long getLastBytes() {
+        return preferences.getLong(KEY_LAST_BYTES, 0);
+    }
+
+    public boolean isLastSucceeded() {
+        return preferences.getBoolean(KEY_LAST_SUCCEEDED, false);
+    }
+
+    @Override
+    public String toString() {
+        int syncCount = getSyncCount();
+        return String.format(Locale.US, "NewsSyncStats[syncs=%d, failures=%d, "
+                        + "lastDuration=%dms, lastBytes=%d, averageDuration=%dms, "
+                        + "averageBytes=%d]",
+                syncCount, getFailureCount(), getLastDurationMillis(), getLastBytes(),
+                syncCount > 0 ? getTotalDurationMillis() / syncCount : 0,
+                syncCount > 0 ? getTotalBytes() / syncCount : 0);
+    }
+}
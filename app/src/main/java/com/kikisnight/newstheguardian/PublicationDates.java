@@ -0,0 +1,228 @@
+package com.kikisnight.newstheguardian;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Helper methods to parse the webPublicationDate of The Guardian API once, and to format
+ * the resulting time for display without creating formatters on every bind.
+ */
+public final class PublicationDates {
+
+    /** Value used when a news has no (valid) publication date */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    /** Number of formatted dates and times remembered, must be a power of two */
+    private static final int MEMO_SIZE = 64;
+
+    /**
+     * The API dates are in UTC and have always been displayed as such, so the formatters
+     * use UTC as well. SimpleDateFormat is not thread-safe, so each thread has its own.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return utcFormat("dd-MM-yyyy");
+                }
+            };
+    private static final ThreadLocal<SimpleDateFormat> ISO_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return utcFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+                }
+            };
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return utcFormat("HH:mm");
+                }
+            };
+
+    /**
+     * Direct-mapped memos of the last formatted days and minutes. Each slot holds an
+     * immutable {@link Memo}, so reading and replacing a slot is safe from any thread.
+     */
+    private static final Memo[] DATE_MEMO = new Memo[MEMO_SIZE];
+    private static final Memo[] TIME_MEMO = new Memo[MEMO_SIZE];
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link PublicationDates} object.
+     */
+    private PublicationDates() {
+    }
+
+    /**
+     * Parses an ISO-8601 date such as "2017-06-20T17:38:16Z" into milliseconds from the
+     * Epoch, without allocating anything. Fractions of a second and "+hh:mm" offsets are
+     * accepted. Returns {@link #NO_DATE} if the date is null or malformed.
+     */
+    public static long parse(String isoDate) {
+        if (isoDate == null || isoDate.length() < 19
+                || isoDate.charAt(4) != '-' || isoDate.charAt(7) != '-'
+                || (isoDate.charAt(10) != 'T' && isoDate.charAt(10) != ' ')
+                || isoDate.charAt(13) != ':' || isoDate.charAt(16) != ':') {
+            return NO_DATE;
+        }
+
+        int year = digits(isoDate, 0, 4);
+        int month = digits(isoDate, 5, 2);
+        int day = digits(isoDate, 8, 2);
+        int hour = digits(isoDate, 11, 2);
+        int minute = digits(isoDate, 14, 2);
+        int second = digits(isoDate, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 60) {
+            return NO_DATE;
+        }
+
+        int position = 19;
+        int length = isoDate.length();
+        int millis = 0;
+
+        // Optional fraction of a second, only the milliseconds are kept
+        if (position < length && isoDate.charAt(position) == '.') {
+            position++;
+            int scale = 100;
+            while (position < length && Character.isDigit(isoDate.charAt(position))) {
+                millis += (isoDate.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+
+        // Time zone designator, "Z" or an offset from UTC
+        int offsetMinutes = 0;
+        if (position < length) {
+            char designator = isoDate.charAt(position);
+            if (designator == '+' || designator == '-') {
+                if (length < position + 6 || isoDate.charAt(position + 3) != ':') {
+                    return NO_DATE;
+                }
+                int offsetHours = digits(isoDate, position + 1, 2);
+                int offsetMinutesPart = digits(isoDate, position + 4, 2);
+                if (offsetHours < 0 || offsetMinutesPart < 0) {
+                    return NO_DATE;
+                }
+                offsetMinutes = offsetHours * 60 + offsetMinutesPart;
+                if (designator == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+            } else if (designator != 'Z') {
+                return NO_DATE;
+            }
+        }
+
+        long days = daysFromCivil(year, month, day);
+        return days * MILLIS_PER_DAY
+                + ((hour * 60L + minute - offsetMinutes) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * Returns the date of the publication time as "dd-MM-yyyy", or an empty String
+     * if there is no date.
+     */
+    public static String formatDate(long time) {
+        if (time == NO_DATE) {
+            return "";
+        }
+        long day = floorDiv(time, MILLIS_PER_DAY);
+        return format(DATE_MEMO, day, day * MILLIS_PER_DAY, DATE_FORMAT);
+    }
+
+    /**
+     * Returns the time of the publication time as "HH:mm", or an empty String
+     * if there is no date.
+     */
+    public static String formatTime(long time) {
+        if (time == NO_DATE) {
+            return "";
+        }
+        long minute = floorDiv(time, MILLIS_PER_MINUTE);
+        return format(TIME_MEMO, minute, minute * MILLIS_PER_MINUTE, TIME_FORMAT);
+    }
+
+    /**
+     * Returns the publication time as an ISO-8601 date in UTC like the ones of the API, such
+     * as "2017-06-20T17:38:16Z", to be sent back to it.
+     */
+    public static String formatIso(long time) {
+        return ISO_FORMAT.get().format(new Date(time));
+    }
+
+    private static String format(Memo[] memo, long key, long time,
+                                 ThreadLocal<SimpleDateFormat> formatter) {
+        int slot = (int) (key & (MEMO_SIZE - 1));
+        Memo cached = memo[slot];
+        if (cached != null && cached.key == key) {
+            return cached.text;
+        }
+        String text = formatter.get().format(new Date(time));
+        memo[slot] = new Memo(key, text);
+        return text;
+    }
+
+    private static SimpleDateFormat utcFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    /**
+     * Floor division, the one of java.lang.Math needs API 24.
+     */
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        if ((value % divisor != 0) && ((value < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    /**
+     * Returns the number of the given decimal digits, or -1 if one of them is not a digit.
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given date of the Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /** A formatted day or minute */
+    private static final class Memo {
+        final long key;
+        final String text;
+
+        Memo(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+}
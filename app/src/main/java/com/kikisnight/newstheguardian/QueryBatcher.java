@@ -0,0 +1,130 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link QueryBatcher} answers the queries of several followed sections with a single request
+ * instead of one each. The queries of a page only differ by their section, so they are combined
+ * into one query of every section (section=a|b|c) with a page as large as all of theirs, and
+ * the server orders and pages the results of every section together.
+ */
+public final class QueryBatcher {
+
+    /** Largest page size accepted by The Guardian API */
+    static final int MAX_PAGE_SIZE = 200;
+
+    private static final String PARAMETER_SECTION = "section=";
+    private static final String PARAMETER_PAGE_SIZE = "page-size=";
+
+    /** Separator of the alternatives of a filter of The Guardian API, URL encoded */
+    private static final String OR_SEPARATOR = "%7C";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryBatcher}
+     * object.
+     */
+    private QueryBatcher() {
+    }
+
+    /**
+     * Fetches the queries with a single request and returns the feed of all of them, in the
+     * order of the server, or null if they can not be batched or the request failed. The
+     * server orders and pages every section together, so the pages of the feed follow each
+     * other in its order.
+     *
+     * @param requestUrls are the URLs of the queries, one for each section
+     * @param fetcher fetches the news of the batched URL
+     */
+    public static List<News> fetch(List<String> requestUrls, NewsQueryCache.Fetcher fetcher) {
+        String batchUrl = batch(requestUrls);
+        if (batchUrl == null) {
+            return null;
+        }
+        List<News> news = fetcher.fetch(batchUrl);
+        if (news == null) {
+            return null;
+        }
+        Metrics.HTTP_BATCHED_QUERIES.add(requestUrls.size());
+        return news;
+    }
+
+    /**
+     * Returns the URL of the single request answering every query, or null if there are less
+     * than two of them or they differ by more than their section.
+     */
+    static String batch(List<String> requestUrls) {
+        if (requestUrls.size() < 2) {
+            return null;
+        }
+        String first = requestUrls.get(0);
+        int queryStart = first.indexOf('?');
+        if (queryStart < 0) {
+            return null;
+        }
+        String base = first.substring(0, queryStart + 1);
+        List<String> commonParameters = withoutSection(first.substring(queryStart + 1));
+
+        StringBuilder sections = new StringBuilder();
+        for (String requestUrl : requestUrls) {
+            String section = sectionOf(requestUrl);
+            if (section == null || section.contains(OR_SEPARATOR)
+                    || !requestUrl.startsWith(base)
+                    || !commonParameters.equals(
+                            withoutSection(requestUrl.substring(base.length())))) {
+                return null;
+            }
+            if (sections.length() > 0) {
+                sections.append(OR_SEPARATOR);
+            }
+            sections.append(section);
+        }
+
+        StringBuilder batchUrl = new StringBuilder(base);
+        for (String parameter : commonParameters) {
+            if (parameter.startsWith(PARAMETER_PAGE_SIZE)) {
+                int pageSize;
+                try {
+                    pageSize = Integer.parseInt(
+                            parameter.substring(PARAMETER_PAGE_SIZE.length()));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                // The sections share the page, as many articles as their pages together
+                parameter = PARAMETER_PAGE_SIZE
+                        + Math.min(MAX_PAGE_SIZE, pageSize * requestUrls.size());
+            }
+            batchUrl.append(parameter).append('&');
+        }
+        return batchUrl.append(PARAMETER_SECTION).append(sections).toString();
+    }
+
+    /**
+     * Returns the parameters of the query of a URL, the section left out.
+     */
+    private static List<String> withoutSection(String query) {
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !parameter.startsWith(PARAMETER_SECTION)) {
+                parameters.add(parameter);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the section of the query of a URL, or null if it has none.
+     */
+    private static String sectionOf(String requestUrl) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            return null;
+        }
+        for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+            if (parameter.startsWith(PARAMETER_SECTION)) {
+                return parameter.substring(PARAMETER_SECTION.length());
+            }
+        }
+        return null;
+    }
+}
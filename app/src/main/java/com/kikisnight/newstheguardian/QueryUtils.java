@@ -1,11 +1,9 @@
 package com.kikisnight.newstheguardian;
 
-import android.text.TextUtils;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import java.io.BufferedReader;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -13,8 +11,10 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.kikisnight.newstheguardian.NewsActivity.LOG_TAG;
 
@@ -30,83 +30,185 @@ public final class QueryUtils {
     private static final String KEY_TOPIC = "sectionName";
     private static final String KEY_DATE = "webPublicationDate";
     private static final String KEY_WEB_URL = "webUrl";
+    private static final String KEY_FIELDS = "fields";
+    private static final String KEY_TRAIL_TEXT = "trailText";
+    private static final String KEY_THUMBNAIL = "thumbnail";
+    private static final String KEY_BODY = "body";
+
+    /** HTTP headers used to revalidate the cached responses */
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /** Charset used by The Guardian API responses */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     public static List<News> fetchNewsData(String requestUrl) {
+        return fetchNewsData(requestUrl, null);
+    }
+
+    /**
+     * Fetch the news of the given URL, revalidating the entry of the {@link NewsDiskCache}
+     * (if any) instead of downloading the results again when they did not change.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsDiskCache diskCache) {
+        return fetchNewsData(requestUrl, diskCache, null);
+    }
+
+    /**
+     * Fetch the news of the given URL like {@link #fetchNewsData(String, NewsDiskCache)},
+     * unless the token is canceled first. A canceled fetch is aborted at once, even in the
+     * middle of the response, and returns null.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsDiskCache diskCache,
+                                           CancellationToken cancellation) {
+        return fetchNewsData(requestUrl, diskCache, cancellation,
+                ResilientHttpClient.getInstance());
+    }
+
+    /**
+     * Fetch the news of the given URL with the given client. If the server still fails once
+     * the client gave up, the results of the {@link NewsDiskCache} are served even if stale.
+     */
+    static List<News> fetchNewsData(String requestUrl, NewsDiskCache diskCache,
+                                    CancellationToken cancellation, ResilientHttpClient client) {
 
         // Create URL object
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the JSON response as it arrives
+        List<News> news = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            news = makeHttpRequest(url, requestUrl, diskCache, cancellation, client);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error closing input stream", e);
         }
 
-        // Extract relevant fields from the JSON response and create an {@link News} object
-        List<News> news = extractNews(jsonResponse);
-
-        // Return the {@link Event}
+        // Return the list of {@link News}
         return news;
     }
 
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static List<News> makeHttpRequest(URL url, String requestUrl,
+                                              NewsDiskCache diskCache,
+                                              CancellationToken cancellation,
+                                              ResilientHttpClient client)
+            throws IOException {
+        List<News> news = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return news;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        // Get what was stored the last time this request was answered
+        NewsDiskCache.Entry cachedEntry = diskCache != null ? diskCache.get(requestUrl) : null;
+
+        // Ask the server to answer 304 without a body if the results did not change
+        Map<String, String> headers = new HashMap<>();
+        if (cachedEntry != null) {
+            if (cachedEntry.getEtag() != null) {
+                headers.put(HEADER_IF_NONE_MATCH, cachedEntry.getEtag());
+            }
+            if (cachedEntry.getLastModified() != null) {
+                headers.put(HEADER_IF_MODIFIED_SINCE, cachedEntry.getLastModified());
+            }
+        }
+
+        NewsHttpClient.Response response = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            response = client.get(url, headers, cancellation);
+
+            int responseCode = response.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                // The cached results are still valid, decoded only now
+                Metrics.HTTP_NOT_MODIFIED.increment();
+                diskCache.touch(requestUrl);
+                news = cachedEntry.getNews();
+                if (news == null) {
+                    Log.e(LOG_TAG, "The cached news were evicted before being read.");
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (response code 200),
+                // then parse the input stream while it is being read.
+                NewsList parsedNews = new NewsList();
+                boolean complete = parseNews(response.getBody(), parsedNews, cancellation);
+                news = parsedNews;
+                // A truncated list would be served again for as long as the server answers 304
+                if (complete && diskCache != null) {
+                    diskCache.put(requestUrl, new NewsDiskCache.Entry(
+                            response.getHeader(HEADER_ETAG),
+                            response.getHeader(HEADER_LAST_MODIFIED), news));
+                }
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Metrics.HTTP_FAILURES.increment();
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
+                news = serveStale(cachedEntry);
             }
+        } catch (ResilientHttpClient.CircuitOpenException e) {
+            // The server is failing, do not wait for it
+            Log.w(LOG_TAG, e.getMessage());
+            news = serveStale(cachedEntry);
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (cancellation != null && cancellation.isCanceled()) {
+                Log.v(LOG_TAG, "Canceled " + requestUrl);
+            } else {
+                Log.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
+                news = serveStale(cachedEntry);
             }
-            if (inputStream != null) {
-                inputStream.close();
+        } finally {
+            // Closing the response keeps its connection alive for the next request
+            if (response != null) {
+                response.close();
             }
         }
-        return jsonResponse;
+        return news;
     }
 
     /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * Returns the news of the cached entry, if any, when the server could not answer: old news
+     * are better than no news at all.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
-            }
+    private static List<News> serveStale(NewsDiskCache.Entry cachedEntry) {
+        List<News> news = cachedEntry != null ? cachedEntry.getNews() : null;
+        if (news != null) {
+            Metrics.HTTP_STALE_SERVED.increment();
         }
-        return output.toString();
+        return news;
     }
 
+    /**
+     * Fetch the bodies of the articles of the given URL, built by
+     * {@link NewsRequestUrls#buildBodies(List)}. Returns them by article URL, or null if the
+     * request failed or the token was canceled.
+     */
+    public static Map<String, String> fetchArticleBodies(String requestUrl,
+                                                         CancellationToken cancellation) {
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            return null;
+        }
+
+        NewsHttpClient.Response response = null;
+        try {
+            response = ResilientHttpClient.getInstance().get(url, null, cancellation);
+            if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Metrics.HTTP_FAILURES.increment();
+                Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+                return null;
+            }
+            return extractBodies(response.getBody());
+        } catch (IOException e) {
+            if (cancellation == null || !cancellation.isCanceled()) {
+                Log.e(LOG_TAG, "Problem retrieving the article bodies.", e);
+            }
+            return null;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
 
     private static URL createUrl(String stringUrl) {
         URL url = null;
@@ -126,71 +228,225 @@ public final class QueryUtils {
     }
 
     /**
-     * Return a list of {@link News} objects that has been built up from
-     * parsing a JSON response.
+     * Return a list of {@link News} objects read straight from the JSON response stream.
+     * Only the response.results[] array is walked, every other value is skipped without
+     * being materialized, so neither the whole body nor a JSON tree is ever held in memory.
      */
-    private static List<News> extractNews(String newsJSON) {
+    static NewsList extractNews(InputStream inputStream) throws IOException {
+        return extractNews(inputStream, null);
+    }
 
-        // Create an empty ArrayList that we can start adding news to
-        List<News> news = new ArrayList<>();
+    /**
+     * Return a list of {@link News} objects like {@link #extractNews(InputStream)}, but stop
+     * reading as soon as the token is canceled.
+     */
+    static NewsList extractNews(InputStream inputStream, CancellationToken cancellation)
+            throws IOException {
+        // Create an empty NewsList that we can start adding news to
+        NewsList news = new NewsList();
+        parseNews(inputStream, news, cancellation);
 
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(newsJSON)) {
-            return null;
-        }
+        // Return the list of news
+        return news;
+    }
 
-        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+    /**
+     * Add the news read from the JSON response stream to the list, like
+     * {@link #extractNews(InputStream, CancellationToken)}. Returns false if the JSON was
+     * malformed, the list then only holds the news read until then.
+     */
+    private static boolean parseNews(InputStream inputStream, NewsList news,
+                                     CancellationToken cancellation) throws IOException {
+        // The parsing time leaves out the time waiting for the network
+        long parseStart = System.nanoTime();
+        long readNanosBefore = NewsHttpClient.getReadNanosOnThisThread();
+        boolean complete = true;
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+
+        // Try to parse the response. If there's a problem with the way the JSON
+        // is formatted, an IllegalStateException or a MalformedJsonException will be thrown.
+        // Catch them so the app doesn't crash and keep what was read until then, any other
+        // IOException is a failure of the network.
         try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (KEY_RESPONSE.equals(reader.nextName())) {
+                    readResponse(reader, news, cancellation);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            // Print a log message with the message from the exception.
+            Log.e("QueryUtils", "Problem parsing the news JSON results", e);
+            complete = false;
+        }
 
-            JSONObject baseJsonResponse = new JSONObject(newsJSON);
-            JSONObject responseJSONObject = baseJsonResponse.getJSONObject(KEY_RESPONSE);
-            JSONArray newsArray = responseJSONObject.getJSONArray(KEY_RESULTS);
+        // Release the unused capacity, the list may be kept in the caches for a while
+        news.trimToSize();
 
-            //Variables defined for JSON parse
-            String title = "";
-            String topic = "";
-            String publicationDate = "";
-            String webUrl = "";
+        Metrics.PARSE_NANOS.record(System.nanoTime() - parseStart
+                - (NewsHttpClient.getReadNanosOnThisThread() - readNanosBefore));
+        Metrics.PARSE_ARTICLES.record(news.size());
+        return complete;
+    }
 
+    /**
+     * Read the "response" object and hand its "results" array to {@link #readResults}.
+     */
+    private static void readResponse(JsonReader reader, NewsList news,
+                                     CancellationToken cancellation) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (KEY_RESULTS.equals(reader.nextName())) {
+                readResults(reader, news, cancellation);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read every article of the "results" array and add a {@link News} for each one.
+     */
+    private static void readResults(JsonReader reader, NewsList news,
+                                    CancellationToken cancellation) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            // The buffered part of the body would still be parsed after a disconnection
+            if (cancellation != null) {
+                cancellation.throwIfCanceled();
+            }
 
-            for (int i = 0; i < newsArray.length(); i++) {
+            //Variables defined for JSON parse, null when the field does not exist
+            String title = null;
+            String topic = null;
+            long publicationTime = PublicationDates.NO_DATE;
+            String webUrl = null;
+            String trailText = null;
+            String thumbnailUrl = null;
 
-                JSONObject currentNews = newsArray.getJSONObject(i);
-                // Check if webTitle exists fields exists and pass the value
-                if (currentNews.has(KEY_TITLE)) {
-                    title = currentNews.getString(KEY_TITLE);
-                } else title = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (KEY_TITLE.equals(name)) {
+                    title = nextStringOrNull(reader);
+                } else if (KEY_TOPIC.equals(name)) {
+                    topic = nextStringOrNull(reader);
+                } else if (KEY_DATE.equals(name)) {
+                    // Parsed once here instead of on every bind of the row
+                    publicationTime = PublicationDates.parse(nextStringOrNull(reader));
+                } else if (KEY_WEB_URL.equals(name)) {
+                    webUrl = nextStringOrNull(reader);
+                } else if (KEY_FIELDS.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    // Only there when show-fields was requested, the body is skipped
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (KEY_TRAIL_TEXT.equals(field)) {
+                            trailText = nextStringOrNull(reader);
+                        } else if (KEY_THUMBNAIL.equals(field)) {
+                            thumbnailUrl = nextStringOrNull(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    // Unknown fields (e.g. "fields" with the whole body) are never built
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-                // Check if sectionName fields exists and pass the value
-                if (currentNews.has(KEY_TOPIC)) {
-                    topic = currentNews.getString(KEY_TOPIC);
-                } else topic = null;
+            // Add a news with the title, topic, publicationTime, url, trailText and thumbnail
+            // from the JSON response, the topic is shared with the other news of the same
+            // section.
+            news.add(title, topic, publicationTime, webUrl, trailText, thumbnailUrl);
+        }
+        reader.endArray();
+    }
 
-                // Check if webPublicationDate fields exists and pass the value
-                if (currentNews.has(KEY_DATE)) {
-                    publicationDate = currentNews.getString(KEY_DATE);
-                } else publicationDate = null;
+    /**
+     * Return the HTML bodies of the articles of the JSON response, cleaned by
+     * {@link ArticleBodies#clean(String)}, by article URL. Results without a body are left out.
+     */
+    static Map<String, String> extractBodies(InputStream inputStream) throws IOException {
+        Map<String, String> bodies = new LinkedHashMap<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!KEY_RESPONSE.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (KEY_RESULTS.equals(reader.nextName())) {
+                        readBodies(reader, bodies);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException e) {
+            Log.e(LOG_TAG, "Problem parsing the article bodies", e);
+        }
+        return bodies;
+    }
 
-                // Check if sectionName fields exists and pass the value
-                if (currentNews.has(KEY_WEB_URL)) {
-                    webUrl = currentNews.getString(KEY_WEB_URL);
-                } else webUrl = null;
+    /**
+     * Read the URL and the body of every article of the "results" array.
+     */
+    private static void readBodies(JsonReader reader, Map<String, String> bodies)
+            throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String webUrl = null;
+            String body = null;
 
-                // Create a new {@link News} object with the title, topic, publicationDate,
-                // and url from the JSON response.
-                news.add(new News(title, topic, publicationDate, webUrl));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (KEY_WEB_URL.equals(name)) {
+                    webUrl = nextStringOrNull(reader);
+                } else if (KEY_FIELDS.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (KEY_BODY.equals(reader.nextName())) {
+                            body = nextStringOrNull(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
             }
+            reader.endObject();
 
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the news JSON results", e);
+            if (webUrl != null && body != null) {
+                bodies.put(webUrl, ArticleBodies.clean(body));
+            }
         }
+        reader.endArray();
+    }
 
-        // Return the list of news
-        return news;
+    /**
+     * Returns the next string value, or null if the value is a JSON null.
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
     }
-}
\ No newline at end of file
+}
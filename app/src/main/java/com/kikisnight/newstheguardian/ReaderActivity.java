@@ -0,0 +1,186 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.text.Html;
+import android.text.Spanned;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ReaderActivity} shows an article natively instead of loading its page in a browser.
+ * The title is shown at once from the feed and the body from the {@link NewsStore}, where the
+ * first articles of the feed are prefetched, so opening them needs no network at all. Other
+ * articles are fetched when they are opened.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    /** Extras of the intent, the fields of the opened article */
+    private static final String EXTRA_URL = "com.kikisnight.newstheguardian.extra.URL";
+    private static final String EXTRA_TITLE = "com.kikisnight.newstheguardian.extra.TITLE";
+    private static final String EXTRA_TOPIC = "com.kikisnight.newstheguardian.extra.TOPIC";
+    private static final String EXTRA_TIME = "com.kikisnight.newstheguardian.extra.TIME";
+
+    /** Delay after which the progress bar is shown, a stored body is shown before that */
+    private static final long PROGRESS_DELAY_MILLIS = 150;
+
+    /** Aborts the fetch of a closed article, closing its connection may block */
+    private static final Executor CANCELLATION_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private String articleUrl;
+    private TextView bodyTextView;
+    private TextView messageTextView;
+    private ProgressBar progressBar;
+
+    /** The load of the body, and the token aborting its fetch */
+    private Future<?> bodyLoad;
+    private final CancellationToken cancellation = new CancellationToken();
+    private boolean destroyed;
+
+    private final Runnable showProgress = new Runnable() {
+        @Override
+        public void run() {
+            progressBar.setVisibility(View.VISIBLE);
+        }
+    };
+
+    /**
+     * Returns the intent opening the article in the reader.
+     */
+    public static Intent newIntent(Context context, String url, String title, String topic,
+                                   long time) {
+        Intent intent = new Intent(context, ReaderActivity.class);
+        intent.putExtra(EXTRA_URL, url);
+        intent.putExtra(EXTRA_TITLE, title);
+        intent.putExtra(EXTRA_TOPIC, topic);
+        intent.putExtra(EXTRA_TIME, time);
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        final long openStart = System.nanoTime();
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reader);
+
+        Intent intent = getIntent();
+        articleUrl = intent.getStringExtra(EXTRA_URL);
+        long publicationTime = intent.getLongExtra(EXTRA_TIME, PublicationDates.NO_DATE);
+
+        // Everything but the body comes from the feed, it is shown right away
+        ((TextView) findViewById(R.id.reader_title)).setText(intent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.reader_topic)).setText(intent.getStringExtra(EXTRA_TOPIC));
+        ((TextView) findViewById(R.id.reader_date)).setText(
+                PublicationDates.formatDate(publicationTime) + " "
+                        + PublicationDates.formatTime(publicationTime));
+        bodyTextView = (TextView) findViewById(R.id.reader_body);
+        messageTextView = (TextView) findViewById(R.id.reader_message);
+        progressBar = (ProgressBar) findViewById(R.id.reader_progress);
+
+        loadBody(openStart);
+    }
+
+    /**
+     * Reads the body from the store, or fetches it, and parses its HTML off the main thread.
+     */
+    private void loadBody(final long openStart) {
+        final Context appContext = getApplicationContext();
+        final boolean connected = isConnected();
+        mainHandler.postDelayed(showProgress, PROGRESS_DELAY_MILLIS);
+        bodyLoad = NewsExecutor.getInstance().submit(NewsExecutor.Priority.VISIBLE,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        String body = ArticleBodyFetcher.getBody(appContext, articleUrl,
+                                connected, cancellation);
+                        final Spanned text = body != null ? Html.fromHtml(body) : null;
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                showBody(text, openStart);
+                            }
+                        });
+                    }
+                });
+    }
+
+    private void showBody(Spanned text, long openStart) {
+        if (destroyed) {
+            return;
+        }
+        mainHandler.removeCallbacks(showProgress);
+        progressBar.setVisibility(View.GONE);
+        if (text == null) {
+            messageTextView.setText(R.string.reader_no_body);
+            messageTextView.setVisibility(View.VISIBLE);
+            return;
+        }
+        bodyTextView.setText(text);
+        Metrics.READER_OPEN_NANOS.recordSince(openStart);
+    }
+
+    @Override
+    protected void onDestroy() {
+        destroyed = true;
+        mainHandler.removeCallbacks(showProgress);
+        if (bodyLoad != null) {
+            bodyLoad.cancel(false);
+            CANCELLATION_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cancellation.cancel();
+                }
+            });
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            openInBrowser();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void openInBrowser() {
+        // Create new intent to view the article's URL
+        Intent websiteIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(articleUrl));
+        // Check if there is an app installed on the phone able to handle it before launching it
+        if (websiteIntent.resolveActivity(getPackageManager()) != null) {
+            startActivity(websiteIntent);
+        } else {
+            Toast.makeText(this, R.string.reader_no_browser, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private boolean isConnected() {
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+}
@@ -0,0 +1,282 @@
+package com.kikisnight.newstheguardian;
+
+import android.util.Log;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ResilientHttpClient} sends the requests of a {@link NewsHttpClient} again when they
+ * fail for a transient reason, after a jittered exponential delay or the delay asked by the
+ * server. Each host has a {@link CircuitBreaker}, so a server that keeps failing is left alone
+ * for a while and the callers serve their cached results at once instead of waiting for it.
+ * The requests to The Guardian API also go through a {@link TokenBucket}, which keeps them
+ * under the rate limit of the key rather than having them answered 429 Too Many Requests.
+ */
+public final class ResilientHttpClient {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ResilientHttpClient.class.getName();
+
+    /** Attempts of a request, and the delays between them */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_DELAY_MILLIS = 500;
+    private static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(8);
+
+    /** Failures in a row opening the circuit of a host, and the time it stays open */
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /** Rate limit of a developer key of The Guardian API */
+    private static final int API_BURST = 5;
+    private static final double API_REQUESTS_PER_SECOND = 1;
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /**
+     * Waits between the attempts of a request, replaced in the tests so they do not have to.
+     */
+    interface Sleeper {
+        /**
+         * Waits for the delay, unless the token is canceled first.
+         */
+        void sleep(long millis, CancellationToken cancellation) throws IOException;
+    }
+
+    /** Waits for real, until the delay is over or the token is canceled */
+    private static final Sleeper REAL_SLEEPER = new Sleeper() {
+        @Override
+        public void sleep(long millis, CancellationToken cancellation) throws IOException {
+            ResilientHttpClient.sleep(millis, cancellation);
+        }
+    };
+
+    private static ResilientHttpClient sInstance;
+
+    private final NewsHttpClient client;
+    private final RetryPolicy retryPolicy;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenNanos;
+    private final Sleeper retrySleeper;
+
+    /** Rate limits by host, the other hosts are not limited */
+    private final Map<String, TokenBucket> rateLimits;
+
+    /** Circuit breakers by host and port, created on their first request */
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+    /**
+     * Returns the client shared by the whole app.
+     */
+    public static synchronized ResilientHttpClient getInstance() {
+        if (sInstance == null) {
+            Map<String, TokenBucket> rateLimits = new HashMap<>();
+            rateLimits.put(NewsRequestUrls.API_HOST,
+                    new TokenBucket(API_BURST, API_REQUESTS_PER_SECOND));
+            sInstance = new ResilientHttpClient(NewsHttpClient.getInstance(),
+                    new RetryPolicy(MAX_ATTEMPTS, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS,
+                            new Random()),
+                    BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS, rateLimits);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ResilientHttpClient}.
+     *
+     * @param client sends the attempts
+     * @param retryPolicy decides which failures are retried and when
+     * @param breakerFailureThreshold is the number of failed requests in a row opening the
+     *  circuit of a host
+     * @param breakerOpenMillis is the time a circuit stays open
+     * @param rateLimits are the rate limits by host
+     */
+    ResilientHttpClient(NewsHttpClient client, RetryPolicy retryPolicy,
+                        int breakerFailureThreshold, long breakerOpenMillis,
+                        Map<String, TokenBucket> rateLimits) {
+        this(client, retryPolicy, breakerFailureThreshold, breakerOpenMillis, rateLimits,
+                REAL_SLEEPER);
+    }
+
+    /**
+     * Constructs a new {@link ResilientHttpClient} waiting between the attempts of a request
+     * with the given {@link Sleeper}.
+     */
+    ResilientHttpClient(NewsHttpClient client, RetryPolicy retryPolicy,
+                        int breakerFailureThreshold, long breakerOpenMillis,
+                        Map<String, TokenBucket> rateLimits, Sleeper retrySleeper) {
+        this.client = client;
+        this.retryPolicy = retryPolicy;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenNanos = TimeUnit.MILLISECONDS.toNanos(breakerOpenMillis);
+        this.rateLimits = rateLimits;
+        this.retrySleeper = retrySleeper;
+    }
+
+    /**
+     * Sends a GET request to the URL like {@link NewsHttpClient#get(URL, Map,
+     * CancellationToken)}, retrying its transient failures, and returns its response, which
+     * must be closed. Once the retries are exhausted the last response is returned as is, or
+     * the last error thrown.
+     *
+     * @param url to request
+     * @param headers are additional request headers, or null
+     * @param cancellation aborts the request and its delays, or null
+     * @throws CircuitOpenException if the host failed too often lately to be requested
+     */
+    public NewsHttpClient.Response get(URL url, Map<String, String> headers,
+                                       CancellationToken cancellation) throws IOException {
+        CircuitBreaker breaker = getBreaker(url.getAuthority());
+        if (!breaker.allowRequest(System.nanoTime())) {
+            Metrics.HTTP_CIRCUIT_OPEN.increment();
+            throw new CircuitOpenException(url.getAuthority());
+        }
+        TokenBucket rateLimit = rateLimits.get(url.getHost());
+
+        boolean reported = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                if (rateLimit != null) {
+                    acquire(rateLimit, cancellation);
+                }
+
+                long delayMillis = retryPolicy.backoffMillis(attempt - 1);
+                NewsHttpClient.Response response;
+                try {
+                    response = client.get(url, headers, cancellation);
+                } catch (IOException e) {
+                    if (cancellation != null && cancellation.isCanceled()) {
+                        throw e;
+                    }
+                    if (attempt >= retryPolicy.getMaxAttempts()) {
+                        breaker.onFailure(System.nanoTime(), 0);
+                        reported = true;
+                        throw e;
+                    }
+                    Log.w(LOG_TAG, "Attempt " + attempt + " of " + url + " failed.", e);
+                    response = null;
+                }
+
+                if (response != null) {
+                    int responseCode = response.getResponseCode();
+                    if (!retryPolicy.isRetryable(responseCode)) {
+                        // Even an error means the server is up and answering
+                        breaker.onSuccess();
+                        reported = true;
+                        return response;
+                    }
+
+                    long retryAfterMillis = RetryPolicy.parseRetryAfterMillis(
+                            response.getHeader(HEADER_RETRY_AFTER), System.currentTimeMillis());
+                    if (retryAfterMillis >= 0) {
+                        delayMillis = retryAfterMillis;
+                    }
+                    if (delayMillis > retryPolicy.getMaxDelayMillis()) {
+                        // Too long to wait here, the circuit stays open until then instead
+                        breaker.onFailure(System.nanoTime(),
+                                TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                        reported = true;
+                        return response;
+                    }
+                    if (responseCode == RetryPolicy.HTTP_TOO_MANY_REQUESTS && rateLimit != null) {
+                        // Every request to the host waits, not only this one
+                        rateLimit.pauseUntil(System.nanoTime()
+                                + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                    }
+                    if (attempt >= retryPolicy.getMaxAttempts()) {
+                        breaker.onFailure(System.nanoTime(), 0);
+                        reported = true;
+                        return response;
+                    }
+                    Log.w(LOG_TAG, "Attempt " + attempt + " of " + url + " answered "
+                            + responseCode + ", retrying in " + delayMillis + "ms.");
+                    response.close();
+                }
+
+                Metrics.HTTP_RETRIES.increment();
+                retrySleeper.sleep(delayMillis, cancellation);
+            }
+        } finally {
+            if (!reported) {
+                breaker.onAbandoned();
+            }
+        }
+    }
+
+    /**
+     * Returns the state of the circuit of the host and port, for the tests.
+     */
+    CircuitBreaker.State getCircuitState(String authority) {
+        return getBreaker(authority).getState();
+    }
+
+    private CircuitBreaker getBreaker(String authority) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(authority);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenNanos);
+                breakers.put(authority, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Waits for a token of the rate limit.
+     */
+    private static void acquire(TokenBucket rateLimit, CancellationToken cancellation)
+            throws IOException {
+        long start = System.nanoTime();
+        long waitNanos;
+        while ((waitNanos = rateLimit.tryAcquire(System.nanoTime())) > 0) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1, cancellation);
+        }
+        Metrics.HTTP_THROTTLE_NANOS.recordSince(start);
+    }
+
+    /**
+     * Waits for the delay, unless the token is canceled first.
+     */
+    private static void sleep(long millis, CancellationToken cancellation) throws IOException {
+        final CountDownLatch canceled = new CountDownLatch(1);
+        Runnable abort = null;
+        if (cancellation != null) {
+            abort = new Runnable() {
+                @Override
+                public void run() {
+                    canceled.countDown();
+                }
+            };
+            cancellation.addAbortAction(abort);
+        }
+        try {
+            canceled.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        } finally {
+            if (cancellation != null) {
+                cancellation.removeAbortAction(abort);
+            }
+        }
+        if (cancellation != null) {
+            cancellation.throwIfCanceled();
+        }
+    }
+
+    /**
+     * {@link CircuitOpenException} fails a request to a host whose circuit is open, without it
+     * reaching the network.
+     */
+    public static final class CircuitOpenException extends IOException {
+
+        CircuitOpenException(String authority) {
+            super("Circuit open for " + authority);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.kikisnight.newstheguardian;
+
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * {@link RetryPolicy} decides which failed requests are tried again and after how long. The
+ * delays grow exponentially with a full jitter, so the clients that failed together do not
+ * retry together, unless the server said when to come back with a Retry-After header.
+ */
+final class RetryPolicy {
+
+    /** Status code of a response to a client sending too many requests */
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    /**
+     * Constructs a new {@link RetryPolicy}.
+     *
+     * @param maxAttempts is the number of attempts of a request, the first one included
+     * @param baseDelayMillis is the largest delay before the first retry
+     * @param maxDelayMillis is the largest delay before any retry, a server asking to wait
+     *  longer is not retried
+     * @param random draws the jitter of the delays
+     */
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Returns true if a response with the status code is a transient failure, which may
+     * succeed if it is sent again.
+     */
+    boolean isRetryable(int responseCode) {
+        return responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || responseCode == HTTP_TOO_MANY_REQUESTS
+                || responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+                || responseCode == HttpURLConnection.HTTP_UNAVAILABLE
+                || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Returns the delay before the retry following the given failed attempt, starting at 0:
+     * a random delay up to the base delay doubled for each attempt.
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = baseDelayMillis << Math.min(attempt, 20);
+        ceiling = Math.min(maxDelayMillis, ceiling);
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    /**
+     * Returns the delay asked by a Retry-After header, in seconds or as an HTTP date, or -1
+     * if there is none or it can not be read.
+     *
+     * @param retryAfter is the value of the header, or null
+     * @param nowMillis is the current time in milliseconds from the Epoch
+     */
+    static long parseRetryAfterMillis(String retryAfter, long nowMillis) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, it may be a date
+        }
+        SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = httpDate.parse(value);
+            return Math.max(0, date.getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -3,10 +3,16 @@ package com.kikisnight.newstheguardian;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 public class SettingsActivity extends AppCompatActivity {
 
@@ -26,10 +32,33 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            Preference sections = findPreference(getString(R.string.settings_sections_key));
+            bindPreferenceSummaryToValue(sections);
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
+            if (preference instanceof MultiSelectListPreference) {
+                // Show the labels of the selected sections, or that every section is shown
+                MultiSelectListPreference multiSelectListPreference =
+                        (MultiSelectListPreference) preference;
+                CharSequence[] labels = multiSelectListPreference.getEntries();
+                List<CharSequence> selectedLabels = new ArrayList<>();
+                for (Object section : (Set<?>) value) {
+                    int prefIndex = multiSelectListPreference.findIndexOfValue(section.toString());
+                    if (prefIndex >= 0) {
+                        selectedLabels.add(labels[prefIndex]);
+                    }
+                }
+                if (selectedLabels.isEmpty()) {
+                    preference.setSummary(getString(R.string.settings_sections_all));
+                } else {
+                    preference.setSummary(TextUtils.join(", ", selectedLabels));
+                }
+                return true;
+            }
+
             String stringValue = value.toString();
             if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
@@ -48,6 +77,12 @@ public class SettingsActivity extends AppCompatActivity {
             preference.setOnPreferenceChangeListener(this);
             SharedPreferences preferences =
                     PreferenceManager.getDefaultSharedPreferences(preference.getContext());
+            if (preference instanceof MultiSelectListPreference) {
+                Set<String> preferenceSet = preferences.getStringSet(preference.getKey(),
+                        Collections.<String>emptySet());
+                onPreferenceChange(preference, preferenceSet);
+                return;
+            }
             String preferenceString = preferences.getString(preference.getKey(), "");
             onPreferenceChange(preference, preferenceString);
         }
@@ -0,0 +1,323 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link StoryClusters} groups the articles of the feed telling the same story, such as the
+ * live blog, the report and the updates of an event, so only the first one is shown with
+ * the count of the others. Every title has a MinHash signature of its words, packed in a
+ * long kept by the {@link NewsList} with the article. The signatures are indexed by bands
+ * (locality sensitive hashing), so an article is only compared with the stories sharing a
+ * band with it, and a new page costs the number of its articles whatever the number of
+ * stories already seen.
+ *
+ * <p>This is used on the main thread, or by a single thread at a time.
+ */
+public final class StoryClusters {
+
+    /**
+     * Number of MinHash values of a title signature. Only the lowest byte of each is kept, so
+     * a signature fits in a long; unrelated values are equal once in 256, which the threshold
+     * absorbs.
+     */
+    static final int SIGNATURE_LENGTH = 8;
+
+    /** The signatures are indexed by BANDS bands of ROWS values each */
+    private static final int BANDS = 4;
+    private static final int ROWS = SIGNATURE_LENGTH / BANDS;
+
+    /** Bits of a band of a signature */
+    private static final long BAND_MASK = (1L << (ROWS * Byte.SIZE)) - 1;
+
+    /** Share of the signature values two titles must have in common to tell the same story */
+    static final float SIMILARITY_THRESHOLD = 0.5f;
+
+    /** Value of a signature of a title without any word, which tells no story */
+    static final long NO_WORDS = 0;
+
+    /** Title words this short are left out of the signature, like "a", "of" or "to" */
+    private static final int MIN_WORD_LENGTH = 3;
+
+    /** Seeds of the hash functions of the signature values, one for each */
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** Stories by the band keys of their first article */
+    private final Map<Long, Story> storiesByBand = new HashMap<>();
+
+    /** Stories by the compact URL of their first article, the one shown */
+    private final Map<String, Story> storiesByUrl = new HashMap<>();
+
+    /** Compact URLs of every article added, shown or not */
+    private final Set<String> addedUrls = new HashSet<>();
+
+    /**
+     * A story, its first article and the articles of the same story hidden behind it.
+     */
+    private static final class Story {
+        final String compactUrl;
+        final long signature;
+        final long[] bandKeys;
+        final NewsList hiddenNews = new NewsList(1);
+        boolean expanded;
+
+        Story(String compactUrl, long signature, long[] bandKeys) {
+            this.compactUrl = compactUrl;
+            this.signature = signature;
+            this.bandKeys = bandKeys;
+        }
+    }
+
+    /**
+     * Returns the MinHash signature of the title: for each hash function, the lowest byte of
+     * the smallest hash of the words of the title. Two titles have the same value as often as
+     * they share words, relative to all their words. A title without any word long enough
+     * has the signature {@link #NO_WORDS}.
+     */
+    static long sign(String title) {
+        if (title == null) {
+            return NO_WORDS;
+        }
+        long[] minimums = null;
+        int length = title.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(title.charAt(start))) {
+                start++;
+            }
+            long wordHash = 1125899906842597L;
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(title.charAt(end))) {
+                wordHash = 31 * wordHash + Character.toLowerCase(title.charAt(end));
+                end++;
+            }
+            if (end - start >= MIN_WORD_LENGTH) {
+                if (minimums == null) {
+                    minimums = new long[SIGNATURE_LENGTH];
+                    for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                        minimums[i] = Long.MAX_VALUE;
+                    }
+                }
+                for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                    long hash = mix(wordHash ^ SEEDS[i]) >>> 1;
+                    if (hash < minimums[i]) {
+                        minimums[i] = hash;
+                    }
+                }
+            }
+            start = end;
+        }
+        if (minimums == null) {
+            return NO_WORDS;
+        }
+        long signature = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            signature |= (minimums[i] & 0xFF) << (i * Byte.SIZE);
+        }
+        // A title with words always has a signature, even in the rare case its bytes are 0
+        return signature == NO_WORDS ? 1 : signature;
+    }
+
+    /**
+     * Returns the estimated share of the words two titles have in common, from their
+     * signatures.
+     */
+    static float similarity(long signature, long otherSignature) {
+        long difference = signature ^ otherSignature;
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if ((difference & 0xFF) == 0) {
+                same++;
+            }
+            difference >>>= Byte.SIZE;
+        }
+        return (float) same / SIGNATURE_LENGTH;
+    }
+
+    /**
+     * Adds the news to the stories and returns the ones to show: the first article of every
+     * new story and the articles of the stories already expanded. The others are hidden
+     * behind the first article of their story.
+     *
+     * @param news are the news to add, in the order they are shown
+     * @param grownStoryUrls receives the compact URLs of the articles shown before whose
+     *  story got more hidden articles, or null
+     */
+    public NewsList add(NewsList news, List<String> grownStoryUrls) {
+        NewsList shownNews = new NewsList(Math.max(news.size(), 1));
+        Set<Story> newStories = new HashSet<>();
+        for (int i = 0; i < news.size(); i++) {
+            String compactUrl = news.getCompactUrl(i);
+            if (compactUrl != null && !addedUrls.add(compactUrl)) {
+                // The same article twice is only shown once
+                continue;
+            }
+            long signature = news.getTitleSignature(i);
+            Story story = findStory(signature);
+            if (story == null) {
+                newStories.add(addStory(compactUrl, signature));
+                shownNews.addFrom(news, i);
+            } else if (story.expanded) {
+                shownNews.addFrom(news, i);
+            } else {
+                story.hiddenNews.addFrom(news, i);
+                Metrics.FEED_CLUSTERED_ARTICLES.increment();
+                if (grownStoryUrls != null && !newStories.contains(story)
+                        && !grownStoryUrls.contains(story.compactUrl)) {
+                    grownStoryUrls.add(story.compactUrl);
+                }
+            }
+        }
+        return shownNews;
+    }
+
+    /**
+     * Adds news already shown, so the following ones can join their stories. None of them is
+     * hidden, even when they tell the same story.
+     */
+    public void addShown(NewsList news) {
+        for (int i = 0; i < news.size(); i++) {
+            String compactUrl = news.getCompactUrl(i);
+            if (compactUrl != null && !addedUrls.add(compactUrl)) {
+                continue;
+            }
+            long signature = news.getTitleSignature(i);
+            if (findStory(signature) == null) {
+                addStory(compactUrl, signature);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the article of the compact URL was added, shown or not.
+     */
+    public boolean contains(String compactUrl) {
+        return addedUrls.contains(compactUrl);
+    }
+
+    /**
+     * Returns the number of articles hidden behind the article of the compact URL.
+     */
+    public int getHiddenCount(String compactUrl) {
+        Story story = storiesByUrl.get(compactUrl);
+        return story == null ? 0 : story.hiddenNews.size();
+    }
+
+    /**
+     * Returns the number of articles hidden behind each of the news.
+     */
+    public int[] getHiddenCounts(NewsList news) {
+        int[] counts = new int[news.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = getHiddenCount(news.getCompactUrl(i));
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the articles hidden behind the article of the compact URL, which are shown
+     * from now on like the next articles of its story.
+     */
+    public NewsList expand(String compactUrl) {
+        Story story = storiesByUrl.get(compactUrl);
+        NewsList hiddenNews = new NewsList(1);
+        if (story != null) {
+            story.expanded = true;
+            hiddenNews.addAll(story.hiddenNews);
+            story.hiddenNews.clear();
+        }
+        return hiddenNews;
+    }
+
+    /**
+     * Forgets the news from the index from to the index to, excluded, which are not shown
+     * anymore, and the articles hidden behind them.
+     */
+    public void remove(NewsList news, int from, int to) {
+        for (int index = from; index < to; index++) {
+            String compactUrl = news.getCompactUrl(index);
+            addedUrls.remove(compactUrl);
+            Story story = storiesByUrl.remove(compactUrl);
+            if (story == null) {
+                continue;
+            }
+            for (long bandKey : story.bandKeys) {
+                if (storiesByBand.get(bandKey) == story) {
+                    storiesByBand.remove(bandKey);
+                }
+            }
+            for (int i = 0; i < story.hiddenNews.size(); i++) {
+                addedUrls.remove(story.hiddenNews.getCompactUrl(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the story of the signature, or null if it tells a new one. Only the stories
+     * sharing a band of the signature are compared with it.
+     */
+    private Story findStory(long signature) {
+        if (signature == NO_WORDS) {
+            return null;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            Story story = storiesByBand.get(bandKey(signature, band));
+            if (story != null
+                    && similarity(signature, story.signature) >= SIMILARITY_THRESHOLD) {
+                return story;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the story of the article and returns it, or null for a title without a signature.
+     */
+    private Story addStory(String compactUrl, long signature) {
+        if (signature == NO_WORDS) {
+            return null;
+        }
+        long[] bandKeys = new long[BANDS];
+        Story story = new Story(compactUrl, signature, bandKeys);
+        for (int band = 0; band < BANDS; band++) {
+            bandKeys[band] = bandKey(signature, band);
+            // The first story of a band stays the one found by it
+            if (!storiesByBand.containsKey(bandKeys[band])) {
+                storiesByBand.put(bandKeys[band], story);
+            }
+        }
+        if (compactUrl != null) {
+            storiesByUrl.put(compactUrl, story);
+        }
+        return story;
+    }
+
+    /**
+     * Returns the key of a band of the signature, the band number included so equal values
+     * of different bands do not match.
+     */
+    private static long bandKey(long signature, int band) {
+        long bits = (signature >>> (band * ROWS * Byte.SIZE)) & BAND_MASK;
+        return ((long) band << 32) | bits;
+    }
+
+    /**
+     * Returns the bits of the value mixed, so close values have unrelated hashes.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,182 @@
+package com.kikisnight.newstheguardian;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link ThumbnailDiskCache} keeps the downloaded thumbnails on disk as they were received,
+ * keyed by their URL, so scrolling back or launching the app again does not download them
+ * again. The least recently used files are deleted once the cache grows over its size limit.
+ */
+public final class ThumbnailDiskCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ThumbnailDiskCache.class.getName();
+
+    /** Name of the folder inside the app cache directory */
+    private static final String CACHE_DIRECTORY = "thumbnails";
+
+    /** Default size limit of the cache, in bytes */
+    private static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024;
+
+    private static final String FILE_EXTENSION = ".img";
+
+    private static ThumbnailDiskCache sInstance;
+
+    private final File cacheDirectory;
+    private final long maxBytes;
+
+    /** Size of the files of the cache, -1 until it is first needed */
+    private long cacheBytes = -1;
+
+    /**
+     * Returns the cache shared by the whole app, stored in the app cache directory.
+     */
+    public static synchronized ThumbnailDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY);
+            sInstance = new ThumbnailDiskCache(directory, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ThumbnailDiskCache}.
+     *
+     * @param directory where the thumbnails are written
+     * @param maxBytes is the size over which least recently used thumbnails are evicted
+     */
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        cacheDirectory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the file holding the thumbnail of the URL, or null if it is not cached.
+     */
+    public synchronized File get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        // Reading a thumbnail makes it the most recently used one
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Writes the thumbnail of the URL from the stream, evicts old thumbnails if needed and
+     * returns its file, or null if it could not be written.
+     */
+    public File put(String url, InputStream body) {
+        File file = fileFor(url);
+        // The stream is read without holding the lock, it may wait on the network
+        File temporaryFile = new File(cacheDirectory,
+                file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        synchronized (this) {
+            if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+                Log.e(LOG_TAG, "Unable to create the cache directory " + cacheDirectory);
+                return null;
+            }
+        }
+
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(temporaryFile);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            output.close();
+            output = null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the thumbnail to the cache.", e);
+            temporaryFile.delete();
+            return null;
+        } finally {
+            closeQuietly(output);
+        }
+
+        synchronized (this) {
+            long replacedBytes = file.length();
+            // Replace the old thumbnail only once the new one is complete
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                return null;
+            }
+            if (cacheBytes >= 0) {
+                cacheBytes += file.length() - replacedBytes;
+            }
+            trimToSize();
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the cache fits in its size limit.
+     */
+    private void trimToSize() {
+        if (cacheBytes < 0) {
+            cacheBytes = 0;
+            File[] files = cacheDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    cacheBytes += file.length();
+                }
+            }
+        }
+        if (cacheBytes <= maxBytes) {
+            return;
+        }
+
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> oldestFirst = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(oldestFirst, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        // Go under the limit by a quarter so the next thumbnails do not trim again at once
+        long targetBytes = maxBytes - maxBytes / 4;
+        for (File file : oldestFirst) {
+            if (cacheBytes <= targetBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                cacheBytes -= length;
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(cacheDirectory, NewsDiskCache.hash(url) + FILE_EXTENSION);
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing the cache file", e);
+            }
+        }
+    }
+}
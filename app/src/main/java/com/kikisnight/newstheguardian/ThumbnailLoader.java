@@ -0,0 +1,312 @@
+package com.kikisnight.newstheguardian;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ThumbnailLoader} shows the thumbnails of the feed. A thumbnail is looked up in a
+ * memory cache bounded in bytes, then in the {@link ThumbnailDiskCache}, and downloaded
+ * otherwise. It is decoded off the main thread, downsampled to the size it is shown at, so
+ * the memory used stays the same however long the feed is.
+ *
+ * <p>Only the main thread calls its methods. The request of a view is canceled when the view
+ * is bound to another thumbnail or recycled, and the rows about to be shown are prefetched
+ * with a lower priority than the visible ones.
+ */
+public final class ThumbnailLoader {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ThumbnailLoader.class.getName();
+
+    /** Thumbnails downloaded and decoded at the same time */
+    private static final int THREADS = 3;
+
+    /** Share of the memory available to the app that the decoded thumbnails can use */
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    /** Aborts the downloads of the canceled requests, closing their connections may block */
+    private static final Executor CANCELLATION_EXECUTOR = Executors.newCachedThreadPool();
+
+    private static ThumbnailLoader sInstance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ThumbnailDiskCache diskCache;
+
+    /** Its own threads, so thumbnails never delay the loads of the feed */
+    private final NewsExecutor executor = new NewsExecutor(THREADS);
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Running requests by key, and the request each view waits for */
+    private final Map<String, Request> requests = new HashMap<>();
+    private final Map<ImageView, Request> viewRequests = new WeakHashMap<>();
+
+    /**
+     * Returns the loader shared by the whole app.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            ActivityManager activityManager = (ActivityManager)
+                    appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+            sInstance = new ThumbnailLoader(maxBytes, ThumbnailDiskCache.getInstance(appContext));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ThumbnailLoader}.
+     *
+     * @param maxBytes is the size of the decoded thumbnails kept in memory
+     * @param diskCache keeps the downloaded thumbnails
+     */
+    public ThumbnailLoader(int maxBytes, ThumbnailDiskCache diskCache) {
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Shows the thumbnail of the URL in the view, downsampled to the given size. The view is
+     * cleared until the thumbnail is ready.
+     */
+    public void load(ImageView view, String url, int width, int height) {
+        cancel(view);
+        String key = keyOf(url, width, height);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            Metrics.IMAGE_MEMORY_HITS.increment();
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageDrawable(null);
+
+        Request request = requests.get(key);
+        if (request == null || (!request.visible && request.future.cancel(false))) {
+            // A prefetch that did not start yet is queued again with the visible priority
+            request = new Request(key, url, width, height, true);
+            submit(request);
+        }
+        request.views.add(view);
+        viewRequests.put(view, request);
+    }
+
+    /**
+     * Loads the thumbnail of the URL into the memory cache, for a row about to be shown.
+     */
+    public void prefetch(String url, int width, int height) {
+        String key = keyOf(url, width, height);
+        if (requests.containsKey(key) || memoryCache.get(key) != null) {
+            return;
+        }
+        submit(new Request(key, url, width, height, false));
+    }
+
+    /**
+     * Cancels the request of the view, if no other view waits for the same thumbnail.
+     */
+    public void cancel(ImageView view) {
+        Request request = viewRequests.remove(view);
+        if (request == null) {
+            return;
+        }
+        request.views.remove(view);
+        if (request.views.isEmpty() && requests.get(request.key) == request) {
+            requests.remove(request.key);
+            request.future.cancel(false);
+            final CancellationToken cancellation = request.cancellation;
+            CANCELLATION_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cancellation.cancel();
+                }
+            });
+        }
+    }
+
+    /**
+     * Releases the thumbnails kept in memory when the system runs low on it.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            memoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+
+    private void submit(final Request request) {
+        requests.put(request.key, request);
+        request.future = executor.submit(request.visible
+                ? NewsExecutor.Priority.VISIBLE : NewsExecutor.Priority.BACKGROUND,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final Bitmap bitmap = fetch(request);
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                deliver(request, bitmap);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Shows the thumbnail in the views still waiting for it. This is on the main thread.
+     */
+    private void deliver(Request request, Bitmap bitmap) {
+        if (requests.get(request.key) == request) {
+            requests.remove(request.key);
+        }
+        for (ImageView view : request.views) {
+            if (viewRequests.get(view) == request) {
+                viewRequests.remove(view);
+                if (bitmap != null) {
+                    view.setImageBitmap(bitmap);
+                }
+            }
+        }
+        request.views.clear();
+    }
+
+    /**
+     * Returns the decoded thumbnail of the request, from the memory cache, the disk cache or
+     * the network, or null. This is on a thread of the executor.
+     */
+    private Bitmap fetch(Request request) {
+        Bitmap bitmap = memoryCache.get(request.key);
+        if (bitmap != null || request.cancellation.isCanceled()) {
+            return bitmap;
+        }
+
+        File file = diskCache.get(request.url);
+        if (file != null) {
+            Metrics.IMAGE_DISK_HITS.increment();
+        } else {
+            file = download(request);
+            if (file == null) {
+                return null;
+            }
+        }
+
+        long decodeStart = System.nanoTime();
+        bitmap = decode(file, request.width, request.height);
+        Metrics.IMAGE_DECODE_NANOS.recordSince(decodeStart);
+        if (bitmap != null) {
+            memoryCache.put(request.key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private File download(Request request) {
+        NewsHttpClient.Response response = null;
+        try {
+            Metrics.IMAGE_DOWNLOADS.increment();
+            response = NewsHttpClient.getInstance().get(new URL(request.url), null,
+                    request.cancellation);
+            if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+                return null;
+            }
+            return diskCache.put(request.url, response.getBody());
+        } catch (IOException e) {
+            if (!request.cancellation.isCanceled()) {
+                Log.e(LOG_TAG, "Problem downloading the thumbnail " + request.url, e);
+            }
+            return null;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Decodes the image of the file with the largest sample size that keeps it at least as
+     * large as the target size, in 16 bits per pixel since thumbnails are never translucent.
+     */
+    private static Bitmap decode(File file, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not an image, it must not be read again
+            file.delete();
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight,
+                width, height);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    /**
+     * Returns the largest power of two dividing the size of the image that keeps both of its
+     * dimensions at least as large as the target ones.
+     */
+    static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth
+                && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static String keyOf(String url, int width, int height) {
+        return width + "x" + height + ":" + url;
+    }
+
+    /**
+     * {@link Request} loads one thumbnail at one size, for any number of views.
+     */
+    private static final class Request {
+        final String key;
+        final String url;
+        final int width;
+        final int height;
+        final boolean visible;
+        final CancellationToken cancellation = new CancellationToken();
+        final List<ImageView> views = new ArrayList<>();
+        Future<?> future;
+
+        Request(String key, String url, int width, int height, boolean visible) {
+            this.key = key;
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.visible = visible;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.kikisnight.newstheguardian;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TokenBucket} keeps the requests to a server under its rate limit: every request takes
+ * a token, and tokens come back at a steady rate up to a burst capacity. The bucket can also be
+ * paused, when the server answered that the limit was reached anyway.
+ *
+ * <p>Times are given as returned by {@link System#nanoTime()}.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private boolean started;
+    private long lastRefillNanos;
+    private boolean paused;
+    private long pausedUntilNanos;
+
+    /**
+     * Constructs a new {@link TokenBucket}, full.
+     *
+     * @param capacity is the number of requests that can be sent at once
+     * @param permitsPerSecond is the sustained rate of the requests
+     */
+    TokenBucket(int capacity, double permitsPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+    }
+
+    /**
+     * Takes a token if there is one and returns 0, or returns the time to wait before trying
+     * again.
+     */
+    synchronized long tryAcquire(long now) {
+        if (paused) {
+            if (now - pausedUntilNanos < 0) {
+                return pausedUntilNanos - now;
+            }
+            paused = false;
+        }
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+
+    /**
+     * Gives no token until the given time, and empties the bucket so the requests resume at
+     * the sustained rate.
+     */
+    synchronized void pauseUntil(long untilNanos) {
+        if (!paused || untilNanos - pausedUntilNanos > 0) {
+            pausedUntilNanos = untilNanos;
+            lastRefillNanos = untilNanos;
+        }
+        paused = true;
+        started = true;
+        tokens = 0;
+    }
+
+    private void refill(long now) {
+        if (!started) {
+            started = true;
+            lastRefillNanos = now;
+            return;
+        }
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
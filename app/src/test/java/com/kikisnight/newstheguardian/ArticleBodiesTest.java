@@ -0,0 +1,53 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the cleaning and the compression of the article bodies.
+ */
+public class ArticleBodiesTest {
+
+    @Test
+    public void compress_roundTripsAndShrinksTheBody() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            body.append("<p>Paragraph ").append(i)
+                    .append(" of the article, with some accents: \u00e9 \u00e0 \u00fc.</p>");
+        }
+
+        byte[] compressed = ArticleBodies.compress(body.toString());
+
+        assertTrue(compressed.length < body.length() / 3);
+        assertEquals(body.toString(), ArticleBodies.decompress(compressed));
+        assertEquals("", ArticleBodies.decompress(ArticleBodies.compress("")));
+    }
+
+    @Test
+    public void decompress_returnsNullForCorruptedData() {
+        byte[] compressed = ArticleBodies.compress("<p>Some body</p><p>Some more</p>");
+
+        assertNull(ArticleBodies.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+        assertNull(ArticleBodies.decompress(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void clean_removesTheMediaAndKeepsTheText() {
+        String body = "<p>First</p><figure class=\"element\"><img src=\"a.jpg\" alt=\"\">"
+                + "<figcaption>Caption</figcaption></figure><p>Second <IMG src=\"b.jpg\"/>"
+                + "</p><aside><p>Related</p></aside><script>var a;</script><p>Third</p>";
+
+        assertEquals("<p>First</p><p>Second </p><p>Third</p>", ArticleBodies.clean(body));
+    }
+
+    @Test
+    public void articleId_isThePathOfTheGuardianUrls() {
+        assertEquals("world/2017/jun/20/story",
+                ArticleBodies.articleId("https://www.theguardian.com/world/2017/jun/20/story"));
+        assertNull(ArticleBodies.articleId("https://example.com/story"));
+        assertNull(ArticleBodies.articleId(null));
+    }
+}
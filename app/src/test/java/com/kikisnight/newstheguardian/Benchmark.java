@@ -0,0 +1,217 @@
+package com.kikisnight.newstheguardian;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Benchmark} is a small JMH-style harness for the JVM benchmarks of the pipeline. Each
+ * operation is warmed up, then timed in samples of a calibrated number of operations, and the
+ * results of a suite are written as JSON to {@code build/benchmarks/<suite>.json}.
+ *
+ * <p>The output directory can be changed with the {@code benchmark.output} system property.
+ * When {@code benchmark.baseline} names a directory of previous results,
+ * {@link #checkRegressions()} fails for any benchmark whose median got slower than the
+ * baseline by more than {@code benchmark.tolerance} (1.5 by default).
+ */
+final class Benchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int SAMPLES = 10;
+
+    /** An operation to measure, returning a value so its work can not be optimized away */
+    interface Operation {
+        long run() throws Exception;
+    }
+
+    private final Report report;
+
+    /** Sum of the values returned by the operations, printed so the JIT must compute them */
+    private long sink;
+
+    Benchmark(String suite) {
+        report = new Report();
+        report.suite = suite;
+        report.jvm = System.getProperty("java.vm.name") + " " + System.getProperty("java.version");
+        report.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Measures the operation and records its result under the name and the parameter, such
+     * as the fixture it runs on.
+     */
+    Result measure(String name, String param, Operation operation) throws Exception {
+        // Warm up, which also tells how many operations fit in a sample
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += operation.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < WARMUP_NANOS);
+        long perSample = Math.max(1, operations * SAMPLE_NANOS / elapsed);
+
+        double[] nanosPerOp = new double[SAMPLES];
+        long allocatedBefore = allocatedBytes();
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            start = System.nanoTime();
+            for (long i = 0; i < perSample; i++) {
+                sink += operation.run();
+            }
+            nanosPerOp[sample] = (double) (System.nanoTime() - start) / perSample;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Arrays.sort(nanosPerOp);
+        Result result = new Result();
+        result.benchmark = name;
+        result.param = param;
+        result.samples = SAMPLES;
+        result.opsPerSample = perSample;
+        result.minNanosPerOp = nanosPerOp[0];
+        result.medianNanosPerOp = (nanosPerOp[(SAMPLES - 1) / 2] + nanosPerOp[SAMPLES / 2]) / 2;
+        result.maxNanosPerOp = nanosPerOp[SAMPLES - 1];
+        double sum = 0;
+        for (double value : nanosPerOp) {
+            sum += value;
+        }
+        result.meanNanosPerOp = sum / SAMPLES;
+        result.bytesPerOp = allocated > 0 ? allocated / (SAMPLES * perSample) : -1;
+        report.results.add(result);
+
+        System.out.println(String.format("%-18s %-24s %12.0f ns/op (min %.0f, max %.0f) %10d B/op",
+                name, param, result.medianNanosPerOp, result.minNanosPerOp,
+                result.maxNanosPerOp, result.bytesPerOp));
+        return result;
+    }
+
+    /**
+     * Writes the results of the suite as JSON and returns the file.
+     */
+    File writeResults() throws IOException {
+        File directory = new File(System.getProperty("benchmark.output", "build/benchmarks"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File file = new File(directory, report.suite + ".json");
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            gson.toJson(report, writer);
+        } finally {
+            writer.close();
+        }
+        System.out.println(report.suite + ": results written to " + file.getAbsolutePath()
+                + " (sink " + sink + ")");
+        return file;
+    }
+
+    /**
+     * Returns the benchmarks slower than the baseline given by the {@code benchmark.baseline}
+     * property, empty when there is no baseline.
+     */
+    List<String> checkRegressions() throws IOException {
+        List<String> regressions = new ArrayList<>();
+        String baselineDirectory = System.getProperty("benchmark.baseline");
+        if (baselineDirectory == null) {
+            return regressions;
+        }
+        File file = new File(baselineDirectory, report.suite + ".json");
+        if (!file.isFile()) {
+            return regressions;
+        }
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "1.5"));
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        Report baseline;
+        try {
+            baseline = new Gson().fromJson(reader, Report.class);
+        } finally {
+            reader.close();
+        }
+        for (Result result : report.results) {
+            for (Result previous : baseline.results) {
+                if (result.benchmark.equals(previous.benchmark)
+                        && result.param.equals(previous.param)
+                        && result.medianNanosPerOp > previous.medianNanosPerOp * tolerance) {
+                    regressions.add(String.format("%s %s: %.0f ns/op, baseline %.0f ns/op",
+                            result.benchmark, result.param, result.medianNanosPerOp,
+                            previous.medianNanosPerOp));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /** Bytes allocated so far by this thread, or 0 when the JVM can not tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the content of a recorded response of the test resources.
+     */
+    static byte[] readFixture(String name) throws IOException {
+        InputStream inputStream = Benchmark.class.getResourceAsStream("/fixtures/" + name);
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        try {
+            while ((read = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return output.toByteArray();
+    }
+
+    /** The results of a suite, as written to its JSON file */
+    static final class Report {
+        String suite;
+        String jvm;
+        long timestamp;
+        List<Result> results = new ArrayList<>();
+    }
+
+    /** The result of a benchmark, as written to the JSON file of its suite */
+    static final class Result {
+        String benchmark;
+        String param;
+        int samples;
+        long opsPerSample;
+        double meanNanosPerOp;
+        double medianNanosPerOp;
+        double minNanosPerOp;
+        double maxNanosPerOp;
+        /** Bytes allocated by each operation, or -1 when the JVM can not tell */
+        long bytesPerOp;
+    }
+}
@@ -0,0 +1,99 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FeedSnapshot}.
+ */
+public class FeedSnapshotTest {
+
+    private static final String QUERY = "https://content.guardianapis.com/search?q=all";
+    private static final long SAVED_AT = 1497952800000L;
+    private static final long MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("news-snapshot").toFile();
+        file = new File(directory, "feed.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<News> sampleNews() {
+        List<News> news = new ArrayList<>();
+        news.add(new News("Vote \u00e9lection", "Politics", SAVED_AT - 1000,
+                "https://www.theguardian.com/politics/a", "Summary",
+                "https://media.guim.co.uk/a/500.jpg"));
+        news.add(new News("Summit", null, PublicationDates.NO_DATE, "https://example.com/b"));
+        news.add(new News("Flood", "World news", SAVED_AT - 3000,
+                "https://www.theguardian.com/world/c"));
+        news.add(new News("Debate", "Politics", SAVED_AT - 4000,
+                "https://www.theguardian.com/politics/d"));
+        return news;
+    }
+
+    @Test
+    public void writeThenRead_roundTripsTheNews() {
+        List<News> news = sampleNews();
+        assertTrue(FeedSnapshot.write(file, QUERY, SAVED_AT, news));
+
+        NewsList snapshot = FeedSnapshot.read(file, QUERY, SAVED_AT + 1000, MAX_AGE_MILLIS);
+
+        assertEquals(news, snapshot);
+        assertEquals("Politics", snapshot.getTopic(3));
+        assertEquals("https://media.guim.co.uk/a/500.jpg", snapshot.getThumbnailUrl(0));
+        assertFalse(new File(directory, "feed.snapshot.tmp").exists());
+    }
+
+    @Test
+    public void read_ignoresAnotherQueryOrAnOldSnapshot() {
+        assertTrue(FeedSnapshot.write(file, QUERY, SAVED_AT, sampleNews()));
+
+        assertNull(FeedSnapshot.read(file, QUERY + "&section=world", SAVED_AT, MAX_AGE_MILLIS));
+        assertNull(FeedSnapshot.read(file, QUERY, SAVED_AT + MAX_AGE_MILLIS + 1,
+                MAX_AGE_MILLIS));
+        assertNotNull(FeedSnapshot.read(file, QUERY, SAVED_AT, MAX_AGE_MILLIS));
+    }
+
+    @Test
+    public void read_ignoresAnotherVersionAndDeletesADamagedSnapshot() throws IOException {
+        assertTrue(FeedSnapshot.write(file, QUERY, SAVED_AT, sampleNews()));
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        output.seek(4);
+        output.writeInt(FeedSnapshot.FORMAT_VERSION + 1);
+        output.close();
+
+        assertNull(FeedSnapshot.read(file, QUERY, SAVED_AT, MAX_AGE_MILLIS));
+
+        assertTrue(FeedSnapshot.write(file, QUERY, SAVED_AT, sampleNews()));
+        output = new RandomAccessFile(file, "rw");
+        output.setLength(file.length() - 10);
+        output.close();
+
+        assertNull(FeedSnapshot.read(file, QUERY, SAVED_AT, MAX_AGE_MILLIS));
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,81 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameMonitor}.
+ */
+public class FrameMonitorTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void recordFrame_reportsThePercentilesOfTheScroll() {
+        FrameMonitor monitor = new FrameMonitor(null);
+        monitor.startScroll();
+        for (int i = 1; i <= 100; i++) {
+            monitor.recordFrame(i * MILLIS);
+        }
+
+        assertEquals(50 * MILLIS, monitor.getPercentile(50));
+        assertEquals(95 * MILLIS, monitor.getPercentile(95));
+        assertEquals(99 * MILLIS, monitor.getPercentile(99));
+        assertTrue(monitor.endScroll().startsWith("frames=100 p50=50.0ms p95=95.0ms p99=99.0ms"));
+
+        // A new scroll only reports its own frames
+        monitor.startScroll();
+        monitor.recordFrame(16 * MILLIS);
+        assertEquals(16 * MILLIS, monitor.getPercentile(99));
+    }
+
+    @Test
+    public void recordFrame_blamesASlowFrameOnTheLongestWork() {
+        FrameMonitor monitor = new FrameMonitor(null);
+        monitor.startScroll();
+
+        // The rows bound during the layout are not counted twice
+        monitor.addWork(FrameMonitor.Phase.BIND, 20 * MILLIS);
+        monitor.addWork(FrameMonitor.Phase.LAYOUT, 24 * MILLIS);
+        monitor.recordFrame(33 * MILLIS);
+        monitor.addWork(FrameMonitor.Phase.DELIVERY, 30 * MILLIS);
+        monitor.addWork(FrameMonitor.Phase.LAYOUT, 10 * MILLIS);
+        monitor.recordFrame(50 * MILLIS);
+        // Too little work to explain the frame
+        monitor.addWork(FrameMonitor.Phase.BIND, MILLIS);
+        monitor.recordFrame(33 * MILLIS);
+        // A frame on time is not blamed on anything
+        monitor.addWork(FrameMonitor.Phase.BIND, 10 * MILLIS);
+        monitor.recordFrame(16 * MILLIS);
+
+        assertEquals(1, monitor.getSlowFrames(FrameMonitor.Phase.BIND));
+        assertEquals(0, monitor.getSlowFrames(FrameMonitor.Phase.LAYOUT));
+        assertEquals(1, monitor.getSlowFrames(FrameMonitor.Phase.DELIVERY));
+        assertEquals(1, monitor.getSlowFrames(FrameMonitor.Phase.OTHER));
+        assertTrue(monitor.toString().contains("slow=3 (bind 1, layout 0, delivery 1, other 1)"));
+    }
+
+    @Test
+    public void appendToLog_startsAgainOnceTooBig() throws IOException {
+        File file = Files.createTempFile("frames", ".log").toFile();
+        try {
+            assertTrue(FrameMonitor.appendToLog(file, "first\n"));
+            assertTrue(FrameMonitor.appendToLog(file, "second\n"));
+            assertEquals("first\nsecond\n",
+                    new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+
+            Files.write(file.toPath(), new byte[(int) FrameMonitor.MAX_LOG_BYTES]);
+            assertTrue(FrameMonitor.appendToLog(file, "third\n"));
+            assertEquals(6, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+}
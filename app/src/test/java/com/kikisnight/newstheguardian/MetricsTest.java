@@ -0,0 +1,57 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the counters and histograms of {@link Metrics}.
+ */
+public class MetricsTest {
+
+    @Test
+    public void histogram_estimatesPercentilesWithinAFactorOfTwo() {
+        Metrics.Histogram histogram = new Metrics.Histogram(Metrics.Unit.NANOS);
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 < 1000);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        // Never above the largest value recorded
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void histogram_recordsNegativeValuesAsZero() {
+        Metrics.Histogram histogram = new Metrics.Histogram(Metrics.Unit.COUNT);
+        assertEquals(0, histogram.getPercentile(50));
+
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void reset_clearsEveryMetric() {
+        Metrics.Counter counter = Metrics.counter("test.counter");
+        Metrics.Histogram histogram = Metrics.histogram("test.histogram", Metrics.Unit.BYTES);
+        counter.add(3);
+        histogram.record(2048);
+        assertSame(counter, Metrics.counter("test.counter"));
+        assertTrue(Metrics.dump().contains("test.histogram"));
+
+        Metrics.reset();
+
+        assertEquals(0, counter.get());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,192 @@
+package com.kikisnight.newstheguardian;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MultiSectionFetcher}, against a mock HTTP server which answers
+ * each section once the queries expected are all running, and the slow section never in time.
+ */
+public class MultiSectionFetcherTest {
+
+    /** Longest wait of the server, so a test never hangs */
+    private static final long MAX_WAIT_MILLIS = 5000;
+
+    private static final NewsQueryCache.Fetcher NETWORK = new NewsQueryCache.Fetcher() {
+        @Override
+        public List<News> fetch(String query) {
+            return QueryUtils.fetchNewsData(query);
+        }
+    };
+
+    private HttpServer server;
+
+    /** Counted down by every query but the slow one, which are answered once it is zero */
+    private volatile CountDownLatch arrivals;
+
+    /** Released at the end of the test, the slow section is only answered then */
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+
+    /** Queries running at the same time, and the most of them seen */
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String section = exchange.getRequestURI().getQuery().replace("section=", "");
+                int now = running.incrementAndGet();
+                while (now > maxRunning.get()) {
+                    maxRunning.compareAndSet(maxRunning.get(), now);
+                }
+                try {
+                    if ("slow".equals(section)) {
+                        slowRelease.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    } else {
+                        arrivals.countDown();
+                        arrivals.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                // Every section also returns the same shared article
+                byte[] body = ("{\"response\":{\"results\":["
+                        + result(section + " story", "2017-06-20T" + (10 + section.length())
+                        + ":00:00Z", section)
+                        + "," + result("Shared story", "2017-06-20T09:00:00Z", "shared")
+                        + "]}}").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        server.stop(0);
+    }
+
+    private static String result(String title, String date, String path) {
+        return "{\"webTitle\":\"" + title + "\",\"webPublicationDate\":\"" + date
+                + "\",\"webUrl\":\"https://www.theguardian.com/" + path + "\"}";
+    }
+
+    private static News news(String title, long hour) {
+        return new News(title, "World news", hour * 3600000L,
+                "https://www.theguardian.com/world/" + title);
+    }
+
+    private static List<News> reversed(List<News> news) {
+        List<News> reversed = new ArrayList<>(news);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> titles = new ArrayList<>();
+        for (News item : news) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+
+    private String url(String section) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/search?section=" + section;
+    }
+
+    @Test
+    public void fetchAll_runsQueriesConcurrentlyAndMerges() {
+        MultiSectionFetcher fetcher =
+                new MultiSectionFetcher(MultiSectionFetcher.newExecutor(4), 5000);
+        final List<Integer> partialSizes = new ArrayList<>();
+        arrivals = new CountDownLatch(3);
+
+        List<News> news = fetcher.fetchAll(
+                Arrays.asList(url("sport"), url("politics"), url("technology")), NETWORK,
+                new MultiSectionFetcher.Listener() {
+                    @Override
+                    public void onPartialResult(List<News> news, int completed, int total) {
+                        assertEquals(3, total);
+                        partialSizes.add(news.size());
+                    }
+                });
+
+        // The three queries ran at the same time, none was answered before all were sent
+        assertEquals(3, maxRunning.get());
+        // Newest first, and the shared story only once
+        assertEquals(4, news.size());
+        assertEquals("technology story", news.get(0).getTitle());
+        assertEquals("politics story", news.get(1).getTitle());
+        assertEquals("sport story", news.get(2).getTitle());
+        assertEquals("Shared story", news.get(3).getTitle());
+        assertEquals(Arrays.asList(2, 3, 4), partialSizes);
+    }
+
+    @Test
+    public void merge_keepsTheOrderAsked() {
+        List<News> first = Arrays.asList(news("a1", 4), news("a2", 1));
+        List<News> second = Arrays.asList(news("b1", 3), news("b2", 2), news("a2", 1));
+
+        assertEquals(Arrays.asList("a1", "b1", "b2", "a2"), titles(MultiSectionFetcher.merge(
+                MultiSectionFetcher.Order.NEWEST, Arrays.asList(first, second))));
+        assertEquals(Arrays.asList("a2", "b2", "b1", "a1"), titles(MultiSectionFetcher.merge(
+                MultiSectionFetcher.Order.OLDEST, Arrays.asList(reversed(first),
+                        reversed(second)))));
+        // The order of the server can not be compared, its ranks are interleaved
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2"), titles(MultiSectionFetcher.merge(
+                MultiSectionFetcher.Order.RELEVANCE, Arrays.asList(first, second))));
+    }
+
+    @Test
+    public void order_isReadFromTheQuery() {
+        assertEquals(MultiSectionFetcher.Order.OLDEST,
+                MultiSectionFetcher.Order.of("https://h/search?q=a&order-by=oldest&page=1"));
+        assertEquals(MultiSectionFetcher.Order.RELEVANCE,
+                MultiSectionFetcher.Order.of("https://h/search?order-by=relevance"));
+        assertEquals(MultiSectionFetcher.Order.NEWEST,
+                MultiSectionFetcher.Order.of("https://h/search?q=a&order-by=newest"));
+        assertEquals(MultiSectionFetcher.Order.NEWEST, MultiSectionFetcher.Order.of(url("a")));
+    }
+
+    @Test
+    public void fetchAll_leavesOutQueriesThatTimeOut() {
+        // The slow section is only answered after the test, well past the timeout
+        MultiSectionFetcher fetcher =
+                new MultiSectionFetcher(MultiSectionFetcher.newExecutor(4), MAX_WAIT_MILLIS / 2);
+        arrivals = new CountDownLatch(1);
+
+        List<News> news = fetcher.fetchAll(Arrays.asList(url("sport"), url("slow")), NETWORK,
+                null);
+
+        assertEquals(2, news.size());
+        assertEquals("sport story", news.get(0).getTitle());
+    }
+}
@@ -0,0 +1,63 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.kikisnight.newstheguardian.NetworkQualityEstimator.Quality;
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the classification of the network by {@link NetworkQualityEstimator}.
+ */
+public class NetworkQualityEstimatorTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void getQuality_isUnknownWithoutResponses() {
+        assertEquals(Quality.UNKNOWN, new NetworkQualityEstimator().getQuality(0));
+    }
+
+    @Test
+    public void getQuality_classifiesLatencyAndThroughput() {
+        // Wi-Fi: 80 ms to the first byte, 60 KB in 50 ms
+        NetworkQualityEstimator wifi = new NetworkQualityEstimator();
+        wifi.onResponse(80 * MILLIS, 60 * 1024, 50 * MILLIS, 0);
+        assertEquals(Quality.FAST, wifi.getQuality(0));
+
+        // 3G: 400 ms to the first byte, 60 KB in 600 ms
+        NetworkQualityEstimator mobile = new NetworkQualityEstimator();
+        mobile.onResponse(400 * MILLIS, 60 * 1024, 600 * MILLIS, 0);
+        assertEquals(Quality.MODERATE, mobile.getQuality(0));
+
+        // 2G: 60 KB in 4 s, whatever the latency
+        NetworkQualityEstimator edge = new NetworkQualityEstimator();
+        edge.onResponse(400 * MILLIS, 60 * 1024, 4000 * MILLIS, 0);
+        assertEquals(Quality.SLOW, edge.getQuality(0));
+    }
+
+    @Test
+    public void onResponse_smallBodiesOnlyMeasureTheLatency() {
+        NetworkQualityEstimator estimator = new NetworkQualityEstimator();
+        // A 304 or a tiny body read slowly says nothing of the throughput
+        estimator.onResponse(100 * MILLIS, 300, 500 * MILLIS, 0);
+        assertEquals(Quality.MODERATE, estimator.getQuality(0));
+
+        estimator.onResponse(100 * MILLIS, 60 * 1024, 50 * MILLIS, 0);
+        assertEquals(Quality.FAST, estimator.getQuality(0));
+    }
+
+    @Test
+    public void getQuality_followsTheNetworkAndForgetsOldSamples() {
+        NetworkQualityEstimator estimator = new NetworkQualityEstimator();
+        estimator.onResponse(80 * MILLIS, 60 * 1024, 50 * MILLIS, 0);
+        // The link degrades, a few slow responses are enough to notice it
+        for (int i = 0; i < 5; i++) {
+            estimator.onResponse(2000 * MILLIS, 60 * 1024, 3000 * MILLIS, 0);
+        }
+        assertEquals(Quality.SLOW, estimator.getQuality(0));
+
+        assertEquals(Quality.UNKNOWN, estimator.getQuality(TimeUnit.MINUTES.toNanos(11)));
+    }
+}
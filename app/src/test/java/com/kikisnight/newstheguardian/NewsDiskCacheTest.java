@@ -0,0 +1,194 @@
+package com.kikisnight.newstheguardian;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsDiskCache} and the conditional requests of {@link QueryUtils}.
+ */
+public class NewsDiskCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("news-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<News> sampleNews(int count) {
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            news.add(new News("Title " + i, i % 2 == 0 ? "Politics" : null,
+                    1497952800000L + i * 1000L,
+                    "https://www.theguardian.com/politics/" + i));
+        }
+        return news;
+    }
+
+    @Test
+    public void putThenGet_roundTripsEntry() {
+        NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024);
+        cache.put("https://content.guardianapis.com/search?q=brexit&order-by=newest",
+                new NewsDiskCache.Entry("\"abc\"", null, sampleNews(3)));
+
+        // Same parameters in another order hit the same entry
+        NewsDiskCache.Entry entry =
+                cache.get("https://content.guardianapis.com/search?order-by=newest&q=brexit");
+
+        assertNotNull(entry);
+        assertEquals("\"abc\"", entry.getEtag());
+        assertNull(entry.getLastModified());
+        assertEquals(3, entry.getNews().size());
+        assertEquals("Title 2", entry.getNews().get(2).getTitle());
+        assertNull(entry.getNews().get(1).getTopic());
+        assertEquals(1497952801000L, entry.getNews().get(1).getPublicationTime());
+        assertEquals("https://www.theguardian.com/politics/1", entry.getNews().get(1).getUrl());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedEntries() throws InterruptedException {
+        NewsDiskCache cache = new NewsDiskCache(directory, 6 * 1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put("https://content.guardianapis.com/search?q=" + i,
+                    new NewsDiskCache.Entry(null, null, sampleNews(20)));
+            // Keep the first entry in use so it is never the eldest
+            cache.get("https://content.guardianapis.com/search?q=0");
+            // Let the file system tell the access times apart
+            Thread.sleep(10);
+        }
+
+        long size = 0;
+        for (File file : directory.listFiles()) {
+            size += file.length();
+        }
+        assertTrue(size <= 6 * 1024);
+        assertNotNull(cache.get("https://content.guardianapis.com/search?q=0"));
+        assertNull(cache.get("https://content.guardianapis.com/search?q=1"));
+    }
+
+    @Test
+    public void normalizeUrl_sortsParameters() {
+        assertEquals("https://content.guardianapis.com/search?api-key=test&order-by=newest&q=a",
+                NewsDiskCache.normalizeUrl(
+                        "https://content.guardianapis.com/search?q=a&order-by=newest&api-key=test"));
+        assertEquals("https://content.guardianapis.com/search",
+                NewsDiskCache.normalizeUrl("https://content.guardianapis.com/search"));
+    }
+
+    @Test
+    public void fetchNewsData_notModifiedServesCachedNews() throws Exception {
+        final AtomicInteger bodies = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = ("{\"response\":{\"results\":[{\"webTitle\":\"Cached\","
+                        + "\"webUrl\":\"https://www.theguardian.com/a\"}]}}").getBytes("UTF-8");
+                bodies.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=a";
+            NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024);
+
+            List<News> first = QueryUtils.fetchNewsData(url, cache);
+            List<News> second = QueryUtils.fetchNewsData(url, cache);
+
+            assertEquals(1, bodies.get());
+            assertEquals(Arrays.asList("Cached"), titles(first));
+            assertEquals(Arrays.asList("Cached"), titles(second));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void get_decodesTheNewsOfTheEntryReadOnly() {
+        NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024);
+        String url = "https://content.guardianapis.com/search?q=a";
+        cache.put(url, new NewsDiskCache.Entry("\"v1\"", null, sampleNews(2)));
+
+        NewsDiskCache.Entry entry = cache.get(url);
+        // Replaced before its news were decoded
+        cache.put(url, new NewsDiskCache.Entry("\"v2\"", null, sampleNews(3)));
+
+        assertEquals("\"v1\"", entry.getEtag());
+        assertNull(entry.getNews());
+        assertEquals(3, cache.get(url).getNews().size());
+    }
+
+    @Test
+    public void fetchNewsData_truncatedResultsAreNotCached() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // The second result is not an object, the parse stops there
+                byte[] body = ("{\"response\":{\"results\":[{\"webTitle\":\"First\"},"
+                        + "42]}}").getBytes("UTF-8");
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=a";
+            NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024);
+
+            assertEquals(Arrays.asList("First"), titles(QueryUtils.fetchNewsData(url, cache)));
+            assertNull(cache.get(url));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> titles = new ArrayList<>();
+        for (News item : news) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,87 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ordering and the cancellation of the {@link NewsExecutor} tasks.
+ */
+public class NewsExecutorTest {
+
+    @Test
+    public void submit_runsVisibleTasksFirstThenInOrder() throws InterruptedException {
+        NewsExecutor executor = new NewsExecutor(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+
+        // Keep the only thread busy while the other tasks are queued
+        executor.submit(NewsExecutor.Priority.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        executor.submit(NewsExecutor.Priority.BACKGROUND, record("sync", order, done));
+        executor.submit(NewsExecutor.Priority.BACKGROUND, record("revalidation", order, done));
+        executor.submit(NewsExecutor.Priority.VISIBLE, record("page 1", order, done));
+        executor.submit(NewsExecutor.Priority.VISIBLE, record("page 2", order, done));
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("page 1", "page 2", "sync", "revalidation"), order);
+    }
+
+    @Test
+    public void cancel_skipsQueuedTasks() throws InterruptedException {
+        NewsExecutor executor = new NewsExecutor(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.submit(NewsExecutor.Priority.VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Future<?> canceled = executor.submit(NewsExecutor.Priority.VISIBLE,
+                record("canceled", order, done));
+        executor.submit(NewsExecutor.Priority.VISIBLE, record("kept", order, done));
+
+        assertTrue(canceled.cancel(false));
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("kept"), order);
+    }
+
+    private static Runnable record(final String name, final List<String> order,
+                                   final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+}
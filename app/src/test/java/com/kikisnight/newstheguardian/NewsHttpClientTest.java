@@ -0,0 +1,165 @@
+package com.kikisnight.newstheguardian;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsHttpClient}, against a local server serving a recorded
+ * search response compressed when the client accepts gzip.
+ */
+public class NewsHttpClientTest {
+
+    private HttpServer server;
+    private byte[] fixture;
+    private final Set<Integer> clientPorts = new HashSet<>();
+    private long bytesSent;
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = read(getClass().getResourceAsStream("/fixtures/search_50.json"));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (clientPorts) {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+                byte[] body = fixture;
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(body);
+                    gzip.close();
+                    body = compressed.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                bytesSent += body.length;
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=a");
+    }
+
+    @Test
+    public void get_decompressesGzipBody() throws IOException {
+        NewsHttpClient client = new NewsHttpClient(1000, 1000);
+
+        NewsHttpClient.Response response = client.get(url(), null);
+        byte[] body = read(response.getBody());
+        response.close();
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(new String(fixture, "UTF-8"), new String(body, "UTF-8"));
+        // JSON compresses well, a lot less has to travel over the network
+        assertTrue(bytesSent * 5 < fixture.length);
+    }
+
+    @Test
+    public void get_countsTheCompressedBytesReceived() throws IOException {
+        NewsHttpClient client = new NewsHttpClient(1000, 1000);
+        long bytesBefore = NewsHttpClient.getBytesReceivedOnThisThread();
+
+        NewsHttpClient.Response response = client.get(url(), null);
+        read(response.getBody());
+        response.close();
+
+        assertEquals(bytesSent, NewsHttpClient.getBytesReceivedOnThisThread() - bytesBefore);
+    }
+
+    @Test
+    public void cancel_stopsTheParsingOfTheBody() throws IOException {
+        NewsHttpClient client = new NewsHttpClient(1000, 1000);
+        final CancellationToken cancellation = new CancellationToken();
+
+        NewsHttpClient.Response response = client.get(url(), null, cancellation);
+        // Cancel once the first bytes were read, the rest of the body is already buffered
+        InputStream body = new java.io.FilterInputStream(response.getBody()) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                cancellation.cancel();
+                return read;
+            }
+        };
+        try {
+            QueryUtils.extractNews(body, cancellation);
+            fail("The canceled request must not complete");
+        } catch (java.io.InterruptedIOException expected) {
+            // Parsing stopped at the next article
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void get_failsOnceCanceled() throws IOException {
+        NewsHttpClient client = new NewsHttpClient(1000, 1000);
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        try {
+            client.get(url(), null, cancellation);
+            fail("A canceled token must not send requests");
+        } catch (java.io.InterruptedIOException expected) {
+            // Nothing was sent
+        }
+        assertTrue(clientPorts.isEmpty());
+    }
+
+    @Test
+    public void get_reusesTheConnection() throws IOException {
+        NewsHttpClient client = new NewsHttpClient(1000, 1000);
+
+        for (int i = 0; i < 3; i++) {
+            NewsHttpClient.Response response = client.get(url(), null);
+            List<News> news = QueryUtils.extractNews(response.getBody());
+            response.close();
+            assertEquals(50, news.size());
+        }
+
+        assertEquals(1, clientPorts.size());
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,162 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsList} and the compact fields of {@link News}.
+ */
+public class NewsListTest {
+
+    private static final String URL = "https://www.theguardian.com/sport/2017/jun/20/final";
+
+    @Test
+    public void news_keepsTheUrlWithoutItsPrefix() {
+        News news = new News("Final", "Sport", 1000, URL);
+
+        assertEquals("sport/2017/jun/20/final", news.getCompactUrl());
+        assertEquals(URL, news.getUrl());
+        // Other sites keep their whole URL
+        assertEquals("https://example.com/a", new News("A", "Sport", 0,
+                "https://example.com/a").getUrl());
+        assertNull(new News("A", "Sport", 0, null).getUrl());
+    }
+
+    @Test
+    public void news_shareTheirSectionName() {
+        News first = new News("A", new String("Technology"), 0, URL);
+        News second = new News("B", new String("Technology"), 0, URL);
+
+        assertEquals(first.getSectionId(), second.getSectionId());
+        assertSame(first.getTopic(), second.getTopic());
+        assertNull(new News("C", null, 0, URL).getTopic());
+    }
+
+    @Test
+    public void list_readsTheColumnsByIndex() {
+        NewsList list = new NewsList(1);
+        list.add("First", "World", 2000, URL + "1", "Trail",
+                "https://media.guim.co.uk/first/500.jpg");
+        list.add(new News("Second", "Sport", 1000, URL + "2"));
+
+        assertEquals(2, list.size());
+        assertEquals("First", list.getTitle(0));
+        assertEquals("World", list.getTopic(0));
+        assertEquals(2000, list.getPublicationTime(0));
+        assertEquals(URL + "1", list.getUrl(0));
+        assertEquals("Trail", list.getTrailText(0));
+        assertEquals("https://media.guim.co.uk/first/500.jpg", list.getThumbnailUrl(0));
+        assertNull(list.getThumbnailUrl(1));
+        assertEquals(new News("Second", "Sport", 1000, URL + "2"), list.get(1));
+    }
+
+    @Test
+    public void list_removesRanges() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("A", "World", 3, URL + "a"),
+                new News("B", "World", 2, URL + "b"),
+                new News("C", "World", 1, URL + "c")));
+
+        list.subList(0, 2).clear();
+
+        assertEquals(1, list.size());
+        assertEquals("C", list.getTitle(0));
+        assertTrue(list.isSameArticle(0, NewsList.copyOf(list), 0));
+    }
+
+    @Test
+    public void list_insertsNewsAtTheHead() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("B", "World", 2, URL + "b"),
+                new News("C", "World", 1, URL + "c")));
+
+        list.addAll(0, Arrays.asList(new News("Z", "Sport", 4, URL + "z"),
+                new News("A", "World", 3, URL + "a")));
+
+        assertEquals(4, list.size());
+        assertEquals(Arrays.asList("Z", "A", "B", "C"), Arrays.asList(list.getTitle(0),
+                list.getTitle(1), list.getTitle(2), list.getTitle(3)));
+        assertEquals("Sport", list.getTopic(0));
+        assertEquals(1, list.getPublicationTime(3));
+    }
+
+    @Test
+    public void list_keepsTheTitleSignaturesOfItsNews() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("Markets rally", "Business", 2, URL + "b"),
+                new News("Storm hits the coast", "World", 1, URL + "c")));
+        list.addAll(0, Arrays.asList(new News("Police review", "Politics", 3, URL + "a")));
+        list.remove(1);
+
+        NewsList copy = NewsList.copyOf(list).filter(NewsStore.toWords("storm"));
+
+        assertEquals(StoryClusters.sign("Storm hits the coast"), copy.getTitleSignature(0));
+        assertEquals(StoryClusters.sign("Police review"), list.getTitleSignature(0));
+    }
+
+    @Test
+    public void copyOf_copiesARangeOfTheColumns() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("Markets rally", "Business", 3, URL + "a"),
+                new News("Storm hits the coast", "World", 2, URL + "b"),
+                new News("Police review", "Politics", 1, URL + "c")));
+
+        NewsList copy = NewsList.copyOf(list, 1, 3);
+
+        assertEquals(2, copy.size());
+        assertEquals(list.get(1), copy.get(0));
+        assertEquals(list.get(2), copy.get(1));
+        assertEquals(list.getTitleSignature(1), copy.getTitleSignature(0));
+        // The copy is a list of its own
+        copy.remove(0);
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void readOnlyCopyOf_keepsTheSignaturesAndRefusesChanges() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("Markets rally", "Business", 2, URL + "a"),
+                new News("Storm hits the coast", "World", 1, URL + "b")));
+
+        NewsList readOnly = NewsList.readOnlyCopyOf(list);
+        list.clear();
+
+        assertEquals(2, readOnly.size());
+        assertEquals(StoryClusters.sign("Storm hits the coast"), readOnly.getTitleSignature(1));
+        try {
+            readOnly.add(new News("Police review", "Politics", 3, URL + "c"));
+            fail("A read-only list was changed");
+        } catch (UnsupportedOperationException expected) {
+            assertEquals(2, readOnly.size());
+        }
+        try {
+            readOnly.subList(0, 1).clear();
+            fail("A read-only list was changed");
+        } catch (UnsupportedOperationException expected) {
+            assertEquals(2, readOnly.size());
+        }
+        // Copying it gives a list that can be changed
+        NewsList copy = NewsList.copyOf(readOnly);
+        copy.remove(0);
+        assertEquals(1, copy.size());
+    }
+
+    @Test
+    public void filter_matchesEveryWordAsPrefix() {
+        NewsList list = NewsList.copyOf(Arrays.asList(
+                new News("Football results", "Sport", 3, URL + "a"),
+                new News("Energy prices rise", "Business", 2, URL + "b"),
+                new News("Police review", "Politics", 1, URL + "c", "The energy regulator")));
+
+        NewsList energy = list.filter(NewsStore.toWords("Ener"));
+        assertEquals(2, energy.size());
+        assertEquals("Energy prices rise", energy.getTitle(0));
+        assertEquals(1, list.filter(NewsStore.toWords("energy pol")).size());
+        assertEquals(1, list.filter(NewsStore.toWords("spo")).size());
+        // Only the start of the words matches
+        assertEquals(0, list.filter(NewsStore.toWords("ball")).size());
+    }
+}
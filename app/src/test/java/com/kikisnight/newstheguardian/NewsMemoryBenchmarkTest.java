@@ -0,0 +1,244 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the heap retained by a feed of 10k articles. The {@link NewsList} is compared
+ * with a list of {@link News} and with a list of objects holding their own copy of every
+ * field, which is how the app stored the feed before. The objects reachable from each feed
+ * are counted and sized by their fields, like a heap dump would, so the result does not
+ * depend on the garbage collector of the JVM running the test.
+ */
+public class NewsMemoryBenchmarkTest {
+
+    /** The recorded response is parsed this many times, 200 articles each */
+    private static final int RESPONSES = 50;
+
+    @Test
+    public void retainedHeap_benchmark() throws Exception {
+        byte[] body = Benchmark.readFixture("search_200.json");
+
+        Footprint legacy = retained(body, new Builder() {
+            @Override
+            public Object build(NewsList parsed, Object feed) {
+                @SuppressWarnings("unchecked")
+                List<LegacyNews> legacyFeed = feed != null
+                        ? (List<LegacyNews>) feed : new ArrayList<LegacyNews>();
+                for (int i = 0; i < parsed.size(); i++) {
+                    // Every article had its own section name and complete URL
+                    legacyFeed.add(new LegacyNews(parsed.getTitle(i),
+                            new String(parsed.getTopic(i)), parsed.getPublicationTime(i),
+                            parsed.getUrl(i), parsed.getTrailText(i)));
+                }
+                return legacyFeed;
+            }
+        });
+        Footprint objects = retained(body, new Builder() {
+            @Override
+            public Object build(NewsList parsed, Object feed) {
+                @SuppressWarnings("unchecked")
+                List<News> newsFeed = feed != null ? (List<News>) feed : new ArrayList<News>();
+                newsFeed.addAll(parsed);
+                return newsFeed;
+            }
+        });
+        Footprint columns = retained(body, new Builder() {
+            @Override
+            public Object build(NewsList parsed, Object feed) {
+                NewsList newsFeed = feed != null ? (NewsList) feed : new NewsList();
+                newsFeed.addAll(parsed);
+                return newsFeed;
+            }
+        });
+
+        int articles = RESPONSES * 200;
+        System.out.println(String.format("%d articles | separate fields %d B, %d objects"
+                        + " | News %d B, %d objects | NewsList %d B, %d objects (per article)",
+                articles, legacy.bytes / articles, legacy.objects / articles,
+                objects.bytes / articles, objects.objects / articles,
+                columns.bytes / articles, columns.objects / articles));
+
+        // The columns hold no object of their own for an article, only its strings
+        assertTrue(columns.objects < objects.objects);
+        assertTrue(objects.objects < legacy.objects);
+        assertTrue(objects.bytes < legacy.bytes);
+        assertTrue(columns.bytes < objects.bytes);
+        assertTrue(columns.bytes * 100 < legacy.bytes * 85);
+    }
+
+    @Test
+    public void footprint_sizesObjectsByTheirFields() {
+        Footprint footprint = new Footprint();
+        footprint.add(new LegacyNews("ab", null, 0, "ab", null));
+
+        // The object, then its string and char array shared by two fields
+        assertEquals(3, footprint.objects);
+        assertEquals(40 + 24 + 24, footprint.bytes);
+    }
+
+    /**
+     * Adds the parsed news to a feed, creating it when it is null, and returns the feed.
+     */
+    private interface Builder {
+        Object build(NewsList parsed, Object feed);
+    }
+
+    private static Footprint retained(byte[] body, Builder builder) throws IOException {
+        Object feed = null;
+        for (int i = 0; i < RESPONSES; i++) {
+            feed = builder.build(QueryUtils.extractNews(new ByteArrayInputStream(body)), feed);
+        }
+        if (feed instanceof NewsList) {
+            ((NewsList) feed).trimToSize();
+        } else {
+            ((ArrayList<?>) feed).trimToSize();
+        }
+        assertEquals(RESPONSES * 200, ((List<?>) feed).size());
+
+        Footprint footprint = new Footprint();
+        footprint.add(feed);
+        return footprint;
+    }
+
+    /**
+     * {@link Footprint} counts the objects reachable from the ones added, each one once, and
+     * their size on a 64-bit VM with compressed references: a 12 bytes header, 16 for an
+     * array, 4 bytes references and every object aligned on 8 bytes. Strings are counted
+     * with a char array as on Android, and the other classes of the JDK are not walked.
+     */
+    private static final class Footprint {
+
+        private static final int OBJECT_HEADER = 12;
+        private static final int ARRAY_HEADER = 16;
+        private static final int REFERENCE = 4;
+        private static final int STRING_FIELDS = REFERENCE + 4;
+
+        private final Map<Object, Boolean> visited = new IdentityHashMap<>();
+        long bytes;
+        long objects;
+
+        void add(Object root) {
+            Deque<Object> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Object object = pending.pop();
+                if (visited.put(object, Boolean.TRUE) != null) {
+                    continue;
+                }
+                objects++;
+                if (object instanceof String) {
+                    // The String and its array of chars
+                    bytes += align(OBJECT_HEADER + STRING_FIELDS);
+                    bytes += align(ARRAY_HEADER + 2L * ((String) object).length());
+                    objects++;
+                } else if (object.getClass().isArray()) {
+                    addArray(object, pending);
+                } else if (object instanceof ArrayList) {
+                    // Its size and modCount, and its array of elements trimmed to its size
+                    bytes += align(OBJECT_HEADER + 4 + 4 + REFERENCE);
+                    Object[] elements = ((ArrayList<?>) object).toArray();
+                    visited.put(elements, Boolean.TRUE);
+                    objects++;
+                    bytes += align(ARRAY_HEADER + (long) REFERENCE * elements.length);
+                    for (Object element : elements) {
+                        if (element != null) {
+                            pending.push(element);
+                        }
+                    }
+                } else {
+                    addFields(object, pending);
+                }
+            }
+        }
+
+        private void addArray(Object array, Deque<Object> pending) {
+            Class<?> type = array.getClass().getComponentType();
+            int length = Array.getLength(array);
+            bytes += align(ARRAY_HEADER + (long) sizeOf(type) * length);
+            if (!type.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    Object element = Array.get(array, i);
+                    if (element != null) {
+                        pending.push(element);
+                    }
+                }
+            }
+        }
+
+        private void addFields(Object object, Deque<Object> pending) {
+            long size = OBJECT_HEADER;
+            for (Class<?> type = object.getClass(); type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    size += sizeOf(field.getType());
+                    if (field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    if (type.getName().startsWith("java.")) {
+                        throw new IllegalArgumentException("Not walked: " + type.getName());
+                    }
+                    field.setAccessible(true);
+                    try {
+                        Object value = field.get(object);
+                        if (value != null) {
+                            pending.push(value);
+                        }
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            bytes += align(size);
+        }
+
+        private static int sizeOf(Class<?> type) {
+            if (type == long.class || type == double.class) {
+                return 8;
+            } else if (type == int.class || type == float.class) {
+                return 4;
+            } else if (type == short.class || type == char.class) {
+                return 2;
+            } else if (type == byte.class || type == boolean.class) {
+                return 1;
+            }
+            return REFERENCE;
+        }
+
+        private static long align(long size) {
+            return (size + 7) & ~7L;
+        }
+    }
+
+    /** The news as the app stored them before, one copy of every field for each article */
+    private static final class LegacyNews {
+        final String title;
+        final String topic;
+        final long time;
+        final String url;
+        final String trailText;
+
+        LegacyNews(String title, String topic, long time, String url, String trailText) {
+            this.title = title;
+            this.topic = topic;
+            this.time = time;
+            this.url = url;
+            this.trailText = trailText;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsQueryCache}.
+ */
+public class NewsQueryCacheTest {
+
+    /** Runs revalidations right away on the calling thread */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static List<News> sampleNews(String prefix, int count) {
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            news.add(new News(prefix + i, "World news", 1497952800000L,
+                    "https://www.theguardian.com/world/" + prefix + i));
+        }
+        return news;
+    }
+
+    /** Returns a new list on every call and counts the calls */
+    private static class CountingFetcher implements NewsQueryCache.Fetcher {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public List<News> fetch(String query) {
+            return sampleNews(query + "#" + calls.incrementAndGet() + "-", 5);
+        }
+    }
+
+    @Test
+    public void get_freshEntryIsAHit() {
+        NewsQueryCache cache = new NewsQueryCache(100, 60000, DIRECT);
+        CountingFetcher fetcher = new CountingFetcher();
+
+        List<News> first = cache.get("q=a", fetcher);
+        List<News> second = cache.get("q=a", fetcher);
+
+        assertSame(first, second);
+        assertEquals(1, fetcher.calls.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void get_staleEntryIsServedWhileRevalidating() throws Exception {
+        NewsQueryCache cache = new NewsQueryCache(100, 1, DIRECT);
+        CountingFetcher fetcher = new CountingFetcher();
+
+        List<News> first = cache.get("q=a", fetcher);
+        Thread.sleep(5);
+        List<News> stale = cache.get("q=a", fetcher);
+        Thread.sleep(5);
+        List<News> revalidated = cache.get("q=a", fetcher);
+
+        assertSame(first, stale);
+        assertNotEquals(first.get(0).getTitle(), revalidated.get(0).getTitle());
+        assertEquals(2, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void get_failedFetchIsNotCached() {
+        NewsQueryCache cache = new NewsQueryCache(100, 60000, DIRECT);
+        final AtomicInteger calls = new AtomicInteger();
+        NewsQueryCache.Fetcher failing = new NewsQueryCache.Fetcher() {
+            @Override
+            public List<News> fetch(String query) {
+                calls.incrementAndGet();
+                return null;
+            }
+        };
+
+        assertNull(cache.get("q=a", failing));
+        assertNull(cache.get("q=a", failing));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void get_concurrentMissesShareOneFetch() throws Exception {
+        final NewsQueryCache cache = new NewsQueryCache(100, 60000, DIRECT);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final NewsQueryCache.Fetcher slow = new NewsQueryCache.Fetcher() {
+            @Override
+            public List<News> fetch(String query) {
+                calls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return sampleNews("a", 3);
+            }
+        };
+
+        final List<List<News>> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<News> news = cache.get("q=a", slow);
+                    synchronized (results) {
+                        results.add(news);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(8, results.size());
+        for (List<News> news : results) {
+            assertSame(results.get(0), news);
+        }
+    }
+
+    @Test
+    public void get_restartedLoadDoesNotJoinTheCanceledFetch() throws Exception {
+        final NewsQueryCache cache = new NewsQueryCache(100, 60000, DIRECT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // The aborted request of the first load fails
+        final NewsQueryCache.Fetcher aborted = new NewsQueryCache.Fetcher() {
+            @Override
+            public List<News> fetch(String query) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        final CancellationToken firstToken = new CancellationToken();
+        Thread firstLoad = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.get("q=a", aborted, firstToken);
+            }
+        });
+        firstLoad.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        firstToken.cancel();
+
+        CountingFetcher fetcher = new CountingFetcher();
+        List<News> news = cache.get("q=a", fetcher, new CancellationToken());
+        release.countDown();
+        firstLoad.join();
+
+        assertEquals(1, fetcher.calls.get());
+        assertEquals(5, news.size());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsedQueries() {
+        NewsQueryCache cache = new NewsQueryCache(10, 60000, DIRECT);
+        CountingFetcher fetcher = new CountingFetcher();
+
+        cache.get("q=a", fetcher);
+        cache.get("q=b", fetcher);
+        // Touch "a" so "b" is the least recently used query
+        cache.get("q=a", fetcher);
+        cache.get("q=c", fetcher);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(10, cache.getArticleCount());
+        cache.get("q=a", fetcher);
+        assertEquals(3, fetcher.calls.get());
+    }
+}
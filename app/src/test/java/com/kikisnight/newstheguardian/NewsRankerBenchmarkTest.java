@@ -0,0 +1,51 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM benchmark of {@link NewsRanker#rank} on feeds of a few thousand articles, built from
+ * the recorded response of 200 articles. The results are written by {@link Benchmark}.
+ */
+public class NewsRankerBenchmarkTest {
+
+    private static final int[] FEED_SIZES = {200, 1000, 5000};
+
+    @Test
+    public void rank_benchmark() throws Exception {
+        Benchmark benchmark = new Benchmark("ranking");
+        NewsList parsed = QueryUtils.extractNews(new ByteArrayInputStream(
+                Benchmark.readFixture("search_200_fields.json")));
+        final NewsRanker ranker = new NewsRanker(
+                Collections.singletonMap(parsed.getTopic(0), 1f), null);
+        final long now = System.currentTimeMillis();
+
+        for (int size : FEED_SIZES) {
+            final NewsList feed = new NewsList(size);
+            for (int i = 0; i < size; i++) {
+                News item = parsed.get(i % parsed.size());
+                // Every copy of the response is another story, published a bit earlier
+                feed.add(item.getTitle() + " " + i / parsed.size(), item.getTopic(),
+                        item.getPublicationTime() - i / parsed.size() * 60000L,
+                        item.getUrl() + "?copy=" + i / parsed.size(), item.getTrailText());
+            }
+
+            final List<News> input = feed;
+            benchmark.measure("rank", size + " articles", new Benchmark.Operation() {
+                @Override
+                public long run() {
+                    return ranker.rank(input, "brexit talks", now).size();
+                }
+            });
+        }
+
+        assertTrue(benchmark.writeResults().isFile());
+        List<String> regressions = benchmark.checkRegressions();
+        assertTrue("Slower than the baseline: " + regressions, regressions.isEmpty());
+    }
+}
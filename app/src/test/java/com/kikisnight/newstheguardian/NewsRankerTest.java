@@ -0,0 +1,110 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsRanker}.
+ */
+public class NewsRankerTest {
+
+    private static final long NOW = 1497952800000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static NewsRanker newRanker() {
+        return new NewsRanker(Collections.<String, Float>emptyMap(), null);
+    }
+
+    @Test
+    public void rank_putsTheRecentNewsFirst() {
+        List<News> news = Arrays.asList(
+                new News("Old", "Politics", NOW - 10 * HOUR, "https://example.com/a"),
+                new News("Undated", "Politics", PublicationDates.NO_DATE, "https://example.com/b"),
+                new News("Fresh", "Politics", NOW - HOUR, "https://example.com/c"));
+
+        assertEquals(Arrays.asList("Fresh", "Old", "Undated"),
+                titles(newRanker().rank(news, null, NOW)));
+    }
+
+    @Test
+    public void rank_favorsTitlesMatchingTheKeyword() {
+        List<News> news = Arrays.asList(
+                new News("Markets rally", "Business", NOW, "https://example.com/a"),
+                new News("Brexiteers meet", "Politics", NOW - HOUR, "https://example.com/b"),
+                new News("Brexit talks resume", "Politics", NOW - HOUR, "https://example.com/c"));
+
+        assertEquals(Arrays.asList("Brexit talks resume", "Brexiteers meet", "Markets rally"),
+                titles(newRanker().rank(news, "brexit", NOW)));
+    }
+
+    @Test
+    public void rank_learnsTheSectionsTheUserOpens() {
+        List<News> news = Arrays.asList(
+                new News("Vote", "Politics", NOW, "https://example.com/a"),
+                new News("Match", "Sport", NOW - HOUR / 2, "https://example.com/b"));
+        NewsRanker ranker = newRanker();
+        assertEquals("Vote", ranker.rank(news, null, NOW).get(0).getTitle());
+
+        ranker.recordOpened("Sport");
+        ranker.recordOpened("Sport");
+
+        assertEquals("Match", ranker.rank(news, null, NOW).get(0).getTitle());
+    }
+
+    @Test
+    public void recordOpened_decaysTheOlderAffinities() {
+        Map<String, Float> affinities = new HashMap<>();
+        affinities.put("Sport", 9f);
+        NewsRanker ranker = new NewsRanker(affinities, null);
+
+        ranker.recordOpened("Politics");
+
+        assertEquals(8.1f / 9.1f, ranker.getAffinities().get("Sport"), 1e-4f);
+        assertEquals(1 / 9.1f, ranker.getAffinities().get("Politics"), 1e-4f);
+    }
+
+    @Test
+    public void rank_movesTheCopiesOfAStoryToTheEnd() {
+        List<News> news = Arrays.asList(
+                new News("Storm hits the coast", "World news", NOW, "https://example.com/a"),
+                new News("Markets rally", "Business", NOW - 2 * HOUR, "https://example.com/b"),
+                new News("The coast: storm hits!", "UK news", NOW - HOUR,
+                        "https://example.com/c"));
+
+        assertEquals(Arrays.asList("Storm hits the coast", "Markets rally",
+                "The coast: storm hits!"), titles(newRanker().rank(news, null, NOW)));
+    }
+
+    @Test
+    public void matchStrength_weighsWholeWordsOverPrefixes() {
+        List<String> words = Arrays.asList("brexit", "talks");
+
+        assertEquals(1f, NewsRanker.matchStrength("Brexit: talks resume", words), 0);
+        assertEquals(0.75f, NewsRanker.matchStrength("Brexiteers' talks", words), 0);
+        assertEquals(0f, NewsRanker.matchStrength("Post-Brexit", Arrays.asList("exit")), 0);
+    }
+
+    @Test
+    public void recency_halvesEveryHalfLife() {
+        assertEquals(1f, NewsRanker.recency(NOW, NOW), 0);
+        assertEquals(0.5f, NewsRanker.recency(NOW - NewsRanker.RECENCY_HALF_LIFE_MILLIS, NOW),
+                1e-6f);
+        assertEquals(0f, NewsRanker.recency(PublicationDates.NO_DATE, NOW), 0);
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> titles = new ArrayList<>();
+        for (News item : news) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,160 @@
+package com.kikisnight.newstheguardian;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM benchmarks of every stage of the pipeline against recorded Guardian API responses:
+ * reading a body through {@link NewsHttpClient}, {@link QueryUtils#extractNews(InputStream)},
+ * the date formatting of {@link NewsAdapter} and {@link QueryUtils#fetchNewsData(String)} end
+ * to end against a local server. The results are written by {@link Benchmark}.
+ */
+public class PipelineBenchmarkTest {
+
+    private static final String[] FIXTURES = {
+            "search_10.json", "search_50.json", "search_200.json",
+            "search_10_fields.json", "search_50_fields.json", "search_200_fields.json"};
+
+    static {
+        // Otherwise Nagle's algorithm delays each response by the delayed ACK of the client
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Map<String, byte[]> bodies = new HashMap<>();
+    private final Map<String, byte[]> compressedBodies = new HashMap<>();
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        for (String fixture : FIXTURES) {
+            byte[] body = Benchmark.readFixture(fixture);
+            bodies.put(fixture, body);
+            // Compressed once, so the server costs the same for every request
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            compressedBodies.put(fixture, compressed.toByteArray());
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String fixture = exchange.getRequestURI().getPath().substring(1);
+                byte[] body = compressedBodies.get(fixture);
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String fixture) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + fixture;
+    }
+
+    @Test
+    public void pipeline_benchmark() throws Exception {
+        Benchmark benchmark = new Benchmark("pipeline");
+        final NewsHttpClient client = new NewsHttpClient(5000, 5000);
+
+        for (final String fixture : FIXTURES) {
+            final URL url = new URL(url(fixture));
+            final byte[] body = bodies.get(fixture);
+
+            // What readFromStream() did before the body was parsed while it is read
+            benchmark.measure("readBody", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() throws IOException {
+                    NewsHttpClient.Response response = client.get(url, null);
+                    try {
+                        return drain(response.getBody());
+                    } finally {
+                        response.close();
+                    }
+                }
+            });
+
+            benchmark.measure("extractNews", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() throws IOException {
+                    return QueryUtils.extractNews(new ByteArrayInputStream(body)).size();
+                }
+            });
+
+            final String requestUrl = url(fixture);
+            benchmark.measure("fetchNewsData", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() {
+                    List<News> news = QueryUtils.fetchNewsData(requestUrl);
+                    return news == null ? 0 : news.size();
+                }
+            });
+        }
+
+        // The dates of a whole page, as the adapter formats them when its rows are bound
+        final NewsList news = QueryUtils.extractNews(
+                new ByteArrayInputStream(bodies.get("search_200.json")));
+        assertEquals(200, news.size());
+        benchmark.measure("formatDates", "search_200.json", new Benchmark.Operation() {
+            @Override
+            public long run() {
+                long length = 0;
+                for (int i = 0; i < news.size(); i++) {
+                    long time = news.getPublicationTime(i);
+                    length += PublicationDates.formatDate(time).length()
+                            + PublicationDates.formatTime(time).length();
+                }
+                return length;
+            }
+        });
+
+        assertTrue(benchmark.writeResults().isFile());
+        List<String> regressions = benchmark.checkRegressions();
+        assertTrue("Slower than the baseline: " + regressions, regressions.isEmpty());
+    }
+
+    private static long drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,139 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PublicationDates}, with a micro benchmark of the date work done
+ * when a row is bound, before and after publication times were parsed once.
+ */
+public class PublicationDatesTest {
+
+    private static final int BENCHMARK_ROWS = 20000;
+
+    @Test
+    public void parse_matchesSimpleDateFormat() throws ParseException {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String[] dates = {"2017-06-20T17:38:16Z", "1970-01-01T00:00:00Z", "2000-02-29T23:59:59Z",
+                "1969-12-31T23:59:59Z", "2016-12-31T00:00:01Z", "2100-03-01T12:30:00Z"};
+
+        for (String date : dates) {
+            assertEquals(date, reference.parse(date).getTime(), PublicationDates.parse(date));
+        }
+    }
+
+    @Test
+    public void parse_acceptsFractionsAndOffsets() {
+        long utc = PublicationDates.parse("2017-06-20T17:38:16Z");
+
+        assertEquals(utc + 250, PublicationDates.parse("2017-06-20T17:38:16.25Z"));
+        assertEquals(utc, PublicationDates.parse("2017-06-20T19:38:16+02:00"));
+        assertEquals(utc, PublicationDates.parse("2017-06-20T12:08:16-05:30"));
+        assertEquals(utc, PublicationDates.parse("2017-06-20T17:38:16"));
+    }
+
+    @Test
+    public void parse_rejectsMalformedDates() {
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse(null));
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse(""));
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse("2017-06-20"));
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse("2017-13-20T17:38:16Z"));
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse("2017-06-20T17:3a:16Z"));
+        assertEquals(PublicationDates.NO_DATE, PublicationDates.parse("2017-06-20T17:38:16X"));
+    }
+
+    @Test
+    public void format_showsUtcDateAndTime() {
+        long time = PublicationDates.parse("2017-06-20T07:08:16Z");
+
+        assertEquals("20-06-2017", PublicationDates.formatDate(time));
+        assertEquals("07:08", PublicationDates.formatTime(time));
+        assertEquals("", PublicationDates.formatDate(PublicationDates.NO_DATE));
+        assertEquals("", PublicationDates.formatTime(PublicationDates.NO_DATE));
+    }
+
+    @Test
+    public void formatIso_roundTripsThroughParse() {
+        long time = PublicationDates.parse("2017-06-20T07:08:16Z");
+
+        assertEquals("2017-06-20T07:08:16Z", PublicationDates.formatIso(time));
+        assertEquals(time, PublicationDates.parse(PublicationDates.formatIso(time)));
+    }
+
+    @Test
+    public void format_matchesPreviousBind() throws ParseException {
+        long time = PublicationDates.parse("2017-01-02T23:59:00Z");
+
+        assertEquals(previousFormat("2017-01-02T23:59:00Z", "dd-MM-yyyy"),
+                PublicationDates.formatDate(time));
+        assertEquals(previousFormat("2017-01-02T23:59:00Z", "HH:mm"),
+                PublicationDates.formatTime(time));
+    }
+
+    @Test
+    public void bind_benchmark() throws Exception {
+        final String[] isoDates = new String[BENCHMARK_ROWS];
+        final long[] times = new long[BENCHMARK_ROWS];
+        long time = PublicationDates.parse("2017-06-20T18:00:00Z");
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < BENCHMARK_ROWS; i++) {
+            // About one article every 20 minutes, like a busy feed
+            time -= 20 * 60 * 1000L + i % 60 * 1000L;
+            times[i] = time;
+            isoDates[i] = iso.format(new Date(time));
+        }
+
+        // Both are timed by the harness, only a slowdown against the baseline fails the test
+        Benchmark benchmark = new Benchmark("dates");
+        benchmark.measure("bind", "previous", new Benchmark.Operation() {
+            private int row;
+
+            @Override
+            public long run() throws ParseException {
+                return previousBind(isoDates[row++ % BENCHMARK_ROWS]);
+            }
+        });
+        benchmark.measure("bind", "current", new Benchmark.Operation() {
+            private int row;
+
+            @Override
+            public long run() {
+                return currentBind(times[row++ % BENCHMARK_ROWS]);
+            }
+        });
+
+        assertTrue(benchmark.writeResults().isFile());
+        List<String> regressions = benchmark.checkRegressions();
+        assertTrue("Slower than the baseline: " + regressions, regressions.isEmpty());
+    }
+
+    /** What onBindViewHolder used to do for each row */
+    private static int previousBind(String isoDate) throws ParseException {
+        return previousFormat(isoDate, "dd-MM-yyyy").length()
+                + previousFormat(isoDate, "HH:mm").length();
+    }
+
+    private static int currentBind(long time) {
+        return PublicationDates.formatDate(time).length()
+                + PublicationDates.formatTime(time).length();
+    }
+
+    /** The former NewsAdapter.formatDate and formatTime */
+    private static String previousFormat(String completDate, String pattern)
+            throws ParseException {
+        completDate = completDate.substring(0, completDate.length() - 1);
+        SimpleDateFormat oldDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        SimpleDateFormat newDateFormat = new SimpleDateFormat(pattern);
+        Date date = oldDateFormat.parse(completDate);
+        return newDateFormat.format(date);
+    }
+}
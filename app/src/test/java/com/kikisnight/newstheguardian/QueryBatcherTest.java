@@ -0,0 +1,79 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link QueryBatcher}.
+ */
+public class QueryBatcherTest {
+
+    private static final String BASE_URL = "https://content.guardianapis.com/search?q=all"
+            + "&order-by=newest&page=1&page-size=20&api-key=test";
+
+    private static final List<String> SECTION_URLS = Arrays.asList(
+            BASE_URL + "&section=politics",
+            BASE_URL + "&section=world",
+            BASE_URL + "&section=us-news");
+
+    @Test
+    public void batch_combinesTheSectionsIntoOneQuery() {
+        assertEquals("https://content.guardianapis.com/search?q=all&order-by=newest&page=1"
+                        + "&page-size=60&api-key=test&section=politics%7Cworld%7Cus-news",
+                QueryBatcher.batch(SECTION_URLS));
+    }
+
+    @Test
+    public void batch_capsThePageSize() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            urls.add(BASE_URL + "&section=s" + i);
+        }
+
+        assertTrue(QueryBatcher.batch(urls).contains("&page-size=200&"));
+    }
+
+    @Test
+    public void batch_refusesQueriesDifferingByMoreThanTheirSection() {
+        assertNull(QueryBatcher.batch(Arrays.asList(BASE_URL + "&section=politics",
+                BASE_URL.replace("page=1", "page=2") + "&section=world")));
+        assertNull(QueryBatcher.batch(Arrays.asList(BASE_URL, BASE_URL + "&section=world")));
+        assertNull(QueryBatcher.batch(Arrays.asList(BASE_URL + "&section=world")));
+    }
+
+    @Test
+    public void fetch_keepsTheOrderOfTheServer() {
+        final List<String> fetched = new ArrayList<>();
+        NewsQueryCache.Fetcher fetcher = new NewsQueryCache.Fetcher() {
+            @Override
+            public List<News> fetch(String query) {
+                fetched.add(query);
+                return Arrays.asList(
+                        news("Summit", "World news", "https://www.theguardian.com/world/c/d"),
+                        news("Vote", "Politics", "https://www.theguardian.com/politics/a/b"));
+            }
+        };
+
+        assertEquals(Arrays.asList("Summit", "Vote"),
+                titles(QueryBatcher.fetch(SECTION_URLS, fetcher)));
+        assertEquals(Arrays.asList(QueryBatcher.batch(SECTION_URLS)), fetched);
+    }
+
+    private static News news(String title, String topic, String url) {
+        // Longer titles are older
+        return new News(title, topic, 1497952800000L - title.length(), url);
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> titles = new ArrayList<>();
+        for (News item : news) {
+            titles.add(item.getTitle());
+        }
+        return titles;
+    }
+}
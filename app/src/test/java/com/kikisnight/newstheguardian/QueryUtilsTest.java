@@ -0,0 +1,110 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the streaming JSON extraction of {@link QueryUtils}, run against
+ * recorded responses of The Guardian search API.
+ */
+public class QueryUtilsTest {
+
+    private static InputStream fixture(String name) {
+        return QueryUtilsTest.class.getResourceAsStream("/fixtures/" + name);
+    }
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void extractNews_readsEveryResult() throws Exception {
+        List<News> news = QueryUtils.extractNews(fixture("search_10.json"));
+
+        assertEquals(10, news.size());
+        News first = news.get(0);
+        assertEquals("Budget energy police shares football review talks trade", first.getTitle());
+        assertEquals("Technology", first.getTopic());
+        assertNull(first.getTrailText());
+        assertEquals(PublicationDates.parse("2017-06-20T17:38:16Z"), first.getPublicationTime());
+        assertEquals("https://www.theguardian.com/technology/2017/jun/20/"
+                + "budget-energy-police-shares-football-review-talks", first.getUrl());
+    }
+
+    @Test
+    public void extractNews_skipsShowFields() throws Exception {
+        List<News> news = QueryUtils.extractNews(fixture("search_200_fields.json"));
+
+        assertEquals(200, news.size());
+        for (News item : news) {
+            assertNotNull(item.getTitle());
+            assertNotNull(item.getUrl());
+            assertNotNull(item.getTrailText());
+        }
+    }
+
+    @Test
+    public void extractNews_readsTheThumbnail() throws Exception {
+        List<News> news = QueryUtils.extractNews(fixture("search_10_fields.json"));
+
+        News first = news.get(0);
+        assertEquals("https://media.guim.co.uk/8ea1e4843a1be5bb635f0704672a3eebc7b470a9/"
+                + "0_0_3500_2100/500.jpg", first.getThumbnailUrl());
+        assertEquals("8ea1e4843a1be5bb635f0704672a3eebc7b470a9/0_0_3500_2100/500.jpg",
+                first.getCompactThumbnailUrl());
+        assertNull(QueryUtils.extractNews(fixture("search_10.json")).get(0).getThumbnailUrl());
+    }
+
+    @Test
+    public void extractBodies_readsTheCleanedBodyOfEveryResult() throws Exception {
+        Map<String, String> bodies = QueryUtils.extractBodies(json("{\"response\":{"
+                + "\"status\":\"ok\",\"results\":["
+                + "{\"id\":\"a\",\"webUrl\":\"https://www.theguardian.com/a\","
+                + "\"fields\":{\"body\":\"<p>A</p><figure><img src=x></figure>\"}},"
+                + "{\"id\":\"b\",\"webUrl\":\"https://www.theguardian.com/b\"},"
+                + "{\"webUrl\":\"https://www.theguardian.com/c\","
+                + "\"fields\":{\"wordcount\":\"2\",\"body\":\"<p>C</p>\"}}]}}"));
+
+        assertEquals(2, bodies.size());
+        assertEquals("<p>A</p>", bodies.get("https://www.theguardian.com/a"));
+        assertEquals("<p>C</p>", bodies.get("https://www.theguardian.com/c"));
+    }
+
+    @Test
+    public void extractNews_missingAndNullFieldsAreNull() throws Exception {
+        List<News> news = QueryUtils.extractNews(json("{\"response\":{\"status\":\"ok\","
+                + "\"results\":[{\"webTitle\":null,\"sectionName\":\"World news\","
+                + "\"tags\":[{\"id\":\"a\"}]}]}}"));
+
+        assertEquals(1, news.size());
+        assertNull(news.get(0).getTitle());
+        assertEquals("World news", news.get(0).getTopic());
+        assertEquals(PublicationDates.NO_DATE, news.get(0).getPublicationTime());
+        assertNull(news.get(0).getUrl());
+    }
+
+    @Test
+    public void extractNews_unexpectedShapeKeepsWhatWasRead() throws Exception {
+        List<News> news = QueryUtils.extractNews(json("{\"response\":{\"results\":"
+                + "[{\"webTitle\":\"One\"},\"oops\"]}}"));
+
+        assertEquals(1, news.size());
+        assertEquals("One", news.get(0).getTitle());
+    }
+
+    @Test
+    public void extractNews_malformedJsonKeepsWhatWasRead() throws Exception {
+        List<News> news = QueryUtils.extractNews(json("{\"response\":{\"results\":"
+                + "[{\"webTitle\":\"One\"},{\"webTitle\" \"Two\"}]}}"));
+
+        assertEquals(1, news.size());
+        assertEquals("One", news.get(0).getTitle());
+    }
+}
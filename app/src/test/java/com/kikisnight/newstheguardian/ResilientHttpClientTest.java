@@ -0,0 +1,255 @@
+package com.kikisnight.newstheguardian;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ResilientHttpClient} against a server injecting faults, and for
+ * its {@link RetryPolicy}, {@link CircuitBreaker} and {@link TokenBucket}.
+ */
+public class ResilientHttpClientTest {
+
+    /** Faults answered by the server, in order, before it answers normally again */
+    private final Queue<String> faults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String fault = faults.poll();
+                if ("drop".equals(fault)) {
+                    // Close the connection without any response
+                    exchange.getResponseBody().close();
+                    exchange.close();
+                } else if (fault != null && fault.startsWith("429:")) {
+                    exchange.getResponseHeaders().add("Retry-After", fault.substring(4));
+                    exchange.sendResponseHeaders(429, -1);
+                    exchange.close();
+                } else if (fault != null) {
+                    exchange.sendResponseHeaders(Integer.parseInt(fault), -1);
+                    exchange.close();
+                } else {
+                    byte[] body = ("{\"response\":{\"results\":[{\"webTitle\":\"Fresh\","
+                            + "\"webUrl\":\"https://www.theguardian.com/a\"}]}}")
+                            .getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream output = exchange.getResponseBody();
+                    output.write(body);
+                    output.close();
+                }
+            }
+        });
+        server.start();
+        directory = Files.createTempDirectory("news-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=a";
+    }
+
+    private static ResilientHttpClient newClient(int maxAttempts, int breakerFailureThreshold,
+                                                 Map<String, TokenBucket> rateLimits) {
+        return new ResilientHttpClient(new NewsHttpClient(2000, 2000),
+                new RetryPolicy(maxAttempts, 10, 2000, new Random(42)),
+                breakerFailureThreshold, TimeUnit.MINUTES.toMillis(1), rateLimits);
+    }
+
+    @Test
+    public void get_retriesTransientFailuresThenSucceeds() throws IOException {
+        faults.addAll(Arrays.asList("503", "drop", "502"));
+        ResilientHttpClient client = newClient(4, 5,
+                Collections.<String, TokenBucket>emptyMap());
+        long retriesBefore = Metrics.HTTP_RETRIES.get();
+
+        NewsHttpClient.Response response = client.get(new URL(url()), null, null);
+        response.close();
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals(4, requests.get());
+        assertEquals(3, Metrics.HTTP_RETRIES.get() - retriesBefore);
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState(authority()));
+    }
+
+    @Test
+    public void get_returnsTheLastFailureOnceAttemptsAreExhausted() throws IOException {
+        faults.addAll(Arrays.asList("500", "500", "500", "500"));
+        ResilientHttpClient client = newClient(3, 5,
+                Collections.<String, TokenBucket>emptyMap());
+
+        NewsHttpClient.Response response = client.get(new URL(url()), null, null);
+        response.close();
+
+        assertEquals(500, response.getResponseCode());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void get_waitsForRetryAfterAndPausesTheRateLimit() throws IOException {
+        faults.add("429:1");
+        TokenBucket rateLimit = new TokenBucket(10, 10);
+        Map<String, TokenBucket> rateLimits = new HashMap<>();
+        rateLimits.put("127.0.0.1", rateLimit);
+        final List<Long> delays = new ArrayList<>();
+        ResilientHttpClient client = new ResilientHttpClient(new NewsHttpClient(2000, 2000),
+                new RetryPolicy(3, 10, 2000, new Random(42)), 5, TimeUnit.MINUTES.toMillis(1),
+                rateLimits, new ResilientHttpClient.Sleeper() {
+                    @Override
+                    public void sleep(long millis, CancellationToken cancellation) {
+                        delays.add(millis);
+                    }
+                });
+
+        NewsHttpClient.Response response = client.get(new URL(url()), null, null);
+        response.close();
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals(2, requests.get());
+        assertEquals(Arrays.asList(1000L), delays);
+        // The pause emptied the bucket, the next requests resume at its sustained rate
+        assertTrue(rateLimit.tryAcquire(System.nanoTime()) > 0);
+    }
+
+    @Test
+    public void fetchNewsData_openCircuitServesCachedNews() throws IOException {
+        ResilientHttpClient client = newClient(1, 2,
+                Collections.<String, TokenBucket>emptyMap());
+        NewsDiskCache cache = new NewsDiskCache(directory, 1024 * 1024);
+        assertEquals("Fresh", QueryUtils.fetchNewsData(url(), cache, null, client)
+                .get(0).getTitle());
+        faults.addAll(Arrays.asList("500", "500", "500"));
+        long staleBefore = Metrics.HTTP_STALE_SERVED.get();
+
+        // The server fails twice, which opens the circuit, and is left alone afterwards
+        for (int i = 0; i < 3; i++) {
+            List<News> news = QueryUtils.fetchNewsData(url(), cache, null, client);
+            assertEquals("Fresh", news.get(0).getTitle());
+        }
+
+        assertEquals(3, requests.get());
+        assertEquals(3, Metrics.HTTP_STALE_SERVED.get() - staleBefore);
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState(authority()));
+    }
+
+    @Test
+    public void fetchNewsData_failureWithoutCacheReturnsNull() {
+        faults.add("503");
+        ResilientHttpClient client = newClient(1, 5,
+                Collections.<String, TokenBucket>emptyMap());
+
+        assertNull(QueryUtils.fetchNewsData(url(), null, null, client));
+    }
+
+    @Test
+    public void circuitBreaker_probesOnceAfterTheOpenTime() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 100);
+        breaker.onFailure(0, 0);
+        assertTrue(breaker.allowRequest(1));
+        breaker.onFailure(1, 0);
+        assertFalse(breaker.allowRequest(50));
+
+        // A single probe is let through, and failing it opens the circuit again
+        assertTrue(breaker.allowRequest(101));
+        assertFalse(breaker.allowRequest(102));
+        breaker.onFailure(103, 0);
+        assertFalse(breaker.allowRequest(150));
+        assertTrue(breaker.allowRequest(203));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // Retry-After keeps the circuit open longer
+        breaker.onFailure(300, 1000);
+        assertFalse(breaker.allowRequest(1200));
+        assertTrue(breaker.allowRequest(1300));
+    }
+
+    @Test
+    public void tokenBucket_spacesRequestsAfterTheBurst() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        TokenBucket bucket = new TokenBucket(2, 1);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertWaits(second, bucket.tryAcquire(0));
+        assertWaits(second / 2, bucket.tryAcquire(second / 2));
+        assertEquals(0, bucket.tryAcquire(second + 1000));
+
+        bucket.pauseUntil(5 * second);
+        assertEquals(second, bucket.tryAcquire(4 * second));
+        assertWaits(second, bucket.tryAcquire(5 * second));
+        assertEquals(0, bucket.tryAcquire(6 * second + 1000));
+    }
+
+    private static void assertWaits(long expectedNanos, long actualNanos) {
+        assertTrue("Waits " + actualNanos, Math.abs(expectedNanos - actualNanos) <= 1000);
+    }
+
+    @Test
+    public void parseRetryAfterMillis_readsSecondsAndDates() {
+        assertEquals(120000, RetryPolicy.parseRetryAfterMillis("120", 0));
+        assertEquals(30000, RetryPolicy.parseRetryAfterMillis(
+                "Thu, 01 Jan 1970 00:01:00 GMT", 30000));
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis(
+                "Thu, 01 Jan 1970 00:01:00 GMT", 90000));
+        assertEquals(-1, RetryPolicy.parseRetryAfterMillis("soon", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfterMillis(null, 0));
+    }
+
+    @Test
+    public void backoffMillis_growsAndStaysUnderTheCap() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(1));
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long delay = policy.backoffMillis(attempt);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1000, 100 << attempt));
+        }
+    }
+
+    private String authority() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,99 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM benchmark of the time a cold start takes to have the news of its first frame: reading
+ * the {@link FeedSnapshot} saved by the previous run, compared with reading the same news from
+ * {@link NewsDiskCache} and with parsing them from a recorded response, which is what a start
+ * costs on top of the network without a snapshot. The results are written by {@link Benchmark}.
+ */
+public class StartupBenchmarkTest {
+
+    private static final String[] FIXTURES = {"search_50_fields.json", "search_200_fields.json"};
+
+    /** Articles saved in a snapshot, as feed_snapshot_articles */
+    private static final int SNAPSHOT_ARTICLES = 40;
+
+    private static final String QUERY = "https://content.guardianapis.com/search?q=all";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("news-startup").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void firstContent_benchmark() throws Exception {
+        Benchmark benchmark = new Benchmark("startup");
+        final NewsDiskCache cache = new NewsDiskCache(directory, 16 * 1024 * 1024);
+
+        for (final String fixture : FIXTURES) {
+            final byte[] body = Benchmark.readFixture(fixture);
+            NewsList news = QueryUtils.extractNews(new ByteArrayInputStream(body));
+            final List<News> head = NewsList.copyOf(news.subList(0,
+                    Math.min(SNAPSHOT_ARTICLES, news.size())));
+            final File file = new File(directory, fixture + ".snapshot");
+            final long savedAt = System.currentTimeMillis();
+            assertTrue(FeedSnapshot.write(file, QUERY, savedAt, head));
+            cache.put(QUERY + "&fixture=" + fixture, new NewsDiskCache.Entry(null, null, news));
+
+            benchmark.measure("snapshotRead", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() {
+                    return FeedSnapshot.read(file, QUERY, savedAt, TimeUnit.DAYS.toMillis(1))
+                            .size();
+                }
+            });
+
+            benchmark.measure("snapshotWrite", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() {
+                    return FeedSnapshot.write(file, QUERY, savedAt, head) ? 1 : 0;
+                }
+            });
+
+            // What the loader read before showing anything, without a snapshot
+            benchmark.measure("diskCacheRead", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() {
+                    return cache.get(QUERY + "&fixture=" + fixture).getNews().size();
+                }
+            });
+
+            benchmark.measure("extractNews", fixture, new Benchmark.Operation() {
+                @Override
+                public long run() throws IOException {
+                    return QueryUtils.extractNews(new ByteArrayInputStream(body)).size();
+                }
+            });
+        }
+
+        assertTrue(benchmark.writeResults().isFile());
+        List<String> regressions = benchmark.checkRegressions();
+        assertTrue("Slower than the baseline: " + regressions, regressions.isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link StoryClusters}.
+ */
+public class StoryClustersTest {
+
+    private static final String LIVE = "Brexit talks: live updates from Brussels";
+    private static final String REPORT = "Brexit talks in Brussels - live updates as deal nears";
+    private static final String UPDATE = "Live updates: Brexit talks resume in Brussels";
+
+    private static News news(String title, String path) {
+        return new News(title, "Politics", 1497952800000L,
+                "https://www.theguardian.com/politics/" + path);
+    }
+
+    private static float similarity(String title, String otherTitle) {
+        return StoryClusters.similarity(StoryClusters.sign(title),
+                StoryClusters.sign(otherTitle));
+    }
+
+    @Test
+    public void sign_estimatesTheWordsTitlesShare() {
+        assertEquals(1f, similarity(LIVE, "BREXIT TALKS - Live updates, from Brussels!"), 0);
+        assertTrue(similarity(LIVE, REPORT) >= StoryClusters.SIMILARITY_THRESHOLD);
+        assertTrue(similarity(LIVE, "Football results from the weekend") < 0.25f);
+    }
+
+    @Test
+    public void add_hidesTheArticlesOfAStoryBehindItsFirstOne() {
+        StoryClusters clusters = new StoryClusters();
+
+        NewsList shown = clusters.add(NewsList.copyOf(Arrays.asList(news(LIVE, "a"),
+                news(REPORT, "b"), news("Police review of the inquiry", "c"),
+                news(UPDATE, "d"), news(LIVE, "a"))), null);
+
+        assertEquals(2, shown.size());
+        assertEquals(LIVE, shown.getTitle(0));
+        assertEquals("Police review of the inquiry", shown.getTitle(1));
+        assertEquals(2, clusters.getHiddenCount(shown.getCompactUrl(0)));
+        assertArrayEquals(new int[] {2, 0}, clusters.getHiddenCounts(shown));
+    }
+
+    @Test
+    public void add_joinsTheStoriesOfThePreviousPages() {
+        StoryClusters clusters = new StoryClusters();
+        clusters.add(NewsList.copyOf(Arrays.asList(news(LIVE, "a"),
+                news("Police review of the inquiry", "c"))), null);
+        List<String> grownStoryUrls = new ArrayList<>();
+
+        NewsList shown = clusters.add(NewsList.copyOf(Arrays.asList(news(REPORT, "b"),
+                news("Markets rally after the vote", "e"))), grownStoryUrls);
+
+        assertEquals(1, shown.size());
+        assertEquals("Markets rally after the vote", shown.getTitle(0));
+        assertEquals(Arrays.asList("politics/a"), grownStoryUrls);
+        assertTrue(clusters.contains("politics/b"));
+    }
+
+    @Test
+    public void expand_showsTheHiddenArticlesAndTheNextOnes() {
+        StoryClusters clusters = new StoryClusters();
+        clusters.add(NewsList.copyOf(Arrays.asList(news(LIVE, "a"), news(REPORT, "b"))), null);
+
+        NewsList storyNews = clusters.expand("politics/a");
+
+        assertEquals(1, storyNews.size());
+        assertEquals(REPORT, storyNews.getTitle(0));
+        assertEquals(0, clusters.getHiddenCount("politics/a"));
+        assertEquals(1, clusters.add(NewsList.copyOf(Arrays.asList(news(UPDATE, "d"))), null)
+                .size());
+    }
+
+    @Test
+    public void remove_forgetsTheStoriesNoLongerShown() {
+        StoryClusters clusters = new StoryClusters();
+        NewsList shown = clusters.add(NewsList.copyOf(Arrays.asList(news(LIVE, "a"),
+                news(REPORT, "b"))), null);
+
+        clusters.remove(shown, 0, 1);
+
+        assertFalse(clusters.contains("politics/a"));
+        assertFalse(clusters.contains("politics/b"));
+        assertEquals(1, clusters.add(NewsList.copyOf(Arrays.asList(news(UPDATE, "d"))), null)
+                .size());
+    }
+}
@@ -0,0 +1,75 @@
+package com.kikisnight.newstheguardian;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the downsampling of {@link ThumbnailLoader} and the eviction of the
+ * {@link ThumbnailDiskCache}.
+ */
+public class ThumbnailLoaderTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("thumbnails").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void calculateSampleSize_keepsTheImageAtLeastAsLargeAsTheView() {
+        // The Guardian sends 500x300 thumbnails
+        assertEquals(2, ThumbnailLoader.calculateSampleSize(500, 300, 192, 116));
+        assertEquals(1, ThumbnailLoader.calculateSampleSize(500, 300, 288, 174));
+        assertEquals(4, ThumbnailLoader.calculateSampleSize(2000, 1200, 288, 174));
+        // The dimension closest to the view decides
+        assertEquals(2, ThumbnailLoader.calculateSampleSize(2000, 300, 192, 116));
+        assertEquals(1, ThumbnailLoader.calculateSampleSize(100, 60, 192, 116));
+        assertEquals(1, ThumbnailLoader.calculateSampleSize(500, 300, 0, 0));
+    }
+
+    @Test
+    public void diskCache_evictsTheLeastRecentlyUsedThumbnails() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 3000);
+
+        File first = cache.put("https://media.guim.co.uk/1.jpg", image(1000));
+        File second = cache.put("https://media.guim.co.uk/2.jpg", image(1000));
+        File third = cache.put("https://media.guim.co.uk/3.jpg", image(1000));
+        assertTrue(first.setLastModified(1000));
+        assertTrue(second.setLastModified(2000));
+        assertTrue(third.setLastModified(3000));
+        // Reading the first one makes it the most recently used
+        assertNotNull(cache.get("https://media.guim.co.uk/1.jpg"));
+
+        // Over the limit, the oldest ones go until the cache is under three quarters of it
+        cache.put("https://media.guim.co.uk/4.jpg", image(1000));
+
+        assertNotNull(cache.get("https://media.guim.co.uk/1.jpg"));
+        assertNull(cache.get("https://media.guim.co.uk/2.jpg"));
+        assertNull(cache.get("https://media.guim.co.uk/3.jpg"));
+        assertEquals(1000, cache.get("https://media.guim.co.uk/4.jpg").length());
+    }
+
+    private static ByteArrayInputStream image(int length) {
+        return new ByteArrayInputStream(new byte[length]);
+    }
+}